@@ -0,0 +1,37 @@
+package com.lifevault.config;
+
+import com.lifevault.scheduler.InactivitySweepJob;
+import org.quartz.CronScheduleBuilder;
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.Trigger;
+import org.quartz.TriggerBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class QuartzConfig {
+    
+    @Value("${inactivity.sweep.cron:0 */5 * * * ?}")
+    private String sweepCron;
+    
+    @Bean
+    public JobDetail inactivitySweepJobDetail() {
+        return JobBuilder.newJob(InactivitySweepJob.class)
+                .withIdentity("inactivitySweep")
+                .storeDurably()
+                .build();
+    }
+    
+    @Bean
+    public Trigger inactivitySweepTrigger(JobDetail inactivitySweepJobDetail) {
+        // A run missed while every node was down fires once on the next start
+        return TriggerBuilder.newTrigger()
+                .forJob(inactivitySweepJobDetail)
+                .withIdentity("inactivitySweepTrigger")
+                .withSchedule(CronScheduleBuilder.cronSchedule(sweepCron)
+                        .withMisfireHandlingInstructionFireAndProceed())
+                .build();
+    }
+}
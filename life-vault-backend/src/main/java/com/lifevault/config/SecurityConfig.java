@@ -68,6 +68,8 @@ public class SecurityConfig {
                 .requestMatchers("/api/public/**").permitAll()
                 .requestMatchers("/swagger-ui/**", "/v3/api-docs/**").permitAll()
                 .requestMatchers("/actuator/health").permitAll()
+                // Metrics and the rest describe the whole deployment, not the caller's own data
+                .requestMatchers("/actuator/**").hasRole("ADMIN")
                 .requestMatchers("/", "/health").permitAll()
                 .anyRequest().authenticated()
             )
@@ -0,0 +1,66 @@
+package com.lifevault.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sns.SnsAsyncClient;
+import software.amazon.awssdk.services.sns.SnsAsyncClientBuilder;
+
+import java.net.URI;
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(name = "aws.sns.enabled", havingValue = "true")
+public class SnsConfig {
+    
+    @Value("${aws.region:us-east-1}")
+    private String region;
+    
+    // Only set to point the client at a local SNS stand-in
+    @Value("${aws.sns.endpoint:}")
+    private String endpoint;
+    
+    @Value("${aws.sns.access-key:}")
+    private String accessKey;
+    
+    @Value("${aws.sns.secret-key:}")
+    private String secretKey;
+    
+    @Value("${aws.sns.max-in-flight:20}")
+    private int maxInFlight;
+    
+    @Value("${aws.sns.timeout-seconds:10}")
+    private int timeoutSeconds;
+    
+    /**
+     * One async client for the whole application; its connection pool is sized to the in-flight cap
+     * that SmsService enforces.
+     */
+    @Bean(destroyMethod = "close")
+    public SnsAsyncClient snsAsyncClient() {
+        SnsAsyncClientBuilder builder = SnsAsyncClient.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentialsProvider())
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(maxInFlight))
+                .overrideConfiguration(config -> config.apiCallTimeout(Duration.ofSeconds(timeoutSeconds)));
+        if (StringUtils.hasText(endpoint)) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        return builder.build();
+    }
+    
+    private AwsCredentialsProvider credentialsProvider() {
+        if (StringUtils.hasText(accessKey) && StringUtils.hasText(secretKey)) {
+            return StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+        }
+        return DefaultCredentialsProvider.create();
+    }
+}
@@ -1,12 +1,13 @@
 package com.lifevault.controller;
 
 import com.lifevault.dto.AssetDto;
+import com.lifevault.security.UserPrincipal;
 import com.lifevault.service.AssetService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -20,30 +21,30 @@ public class AssetController {
     private AssetService assetService;
     
     @GetMapping
-    public ResponseEntity<List<AssetDto>> getUserAssets(Authentication authentication) {
-        List<AssetDto> assets = assetService.getUserAssets(authentication.getName());
+    public ResponseEntity<List<AssetDto>> getUserAssets(@AuthenticationPrincipal UserPrincipal principal) {
+        List<AssetDto> assets = assetService.getUserAssets(principal.getId());
         return ResponseEntity.ok(assets);
     }
     
     @PostMapping
-    public ResponseEntity<AssetDto> createAsset(Authentication authentication,
+    public ResponseEntity<AssetDto> createAsset(@AuthenticationPrincipal UserPrincipal principal,
                                                @Valid @RequestBody AssetDto assetDto) {
-        AssetDto createdAsset = assetService.createAsset(authentication.getName(), assetDto);
+        AssetDto createdAsset = assetService.createAsset(principal.getId(), assetDto);
         return ResponseEntity.status(HttpStatus.CREATED).body(createdAsset);
     }
     
     @PutMapping("/{id}")
-    public ResponseEntity<AssetDto> updateAsset(Authentication authentication,
+    public ResponseEntity<AssetDto> updateAsset(@AuthenticationPrincipal UserPrincipal principal,
                                                @PathVariable Long id,
                                                @Valid @RequestBody AssetDto assetDto) {
-        AssetDto updatedAsset = assetService.updateAsset(authentication.getName(), id, assetDto);
+        AssetDto updatedAsset = assetService.updateAsset(principal.getId(), id, assetDto);
         return ResponseEntity.ok(updatedAsset);
     }
     
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteAsset(Authentication authentication,
+    public ResponseEntity<Void> deleteAsset(@AuthenticationPrincipal UserPrincipal principal,
                                            @PathVariable Long id) {
-        assetService.deleteAsset(authentication.getName(), id);
+        assetService.deleteAsset(principal.getId(), id);
         return ResponseEntity.noContent().build();
     }
 }
\ No newline at end of file
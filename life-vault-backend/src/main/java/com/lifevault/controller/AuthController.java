@@ -6,7 +6,10 @@ import com.lifevault.dto.SignupRequest;
 import com.lifevault.entity.User;
 import com.lifevault.repository.UserRepository;
 import com.lifevault.security.JwtUtils;
+import com.lifevault.security.PrincipalCache;
+import com.lifevault.security.UserPrincipal;
 import com.lifevault.service.ActivityLogService;
+import com.lifevault.service.InactivityPolicy;
 import com.lifevault.service.UserService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,6 +21,8 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
+
 @RestController
 @RequestMapping("/api/auth")
 @CrossOrigin
@@ -35,12 +40,18 @@ public class AuthController {
     @Autowired
     private JwtUtils jwtUtils;
     
+    @Autowired
+    private PrincipalCache principalCache;
+    
     @Autowired
     private UserService userService;
     
     @Autowired
     private ActivityLogService activityLogService;
     
+    @Autowired
+    private InactivityPolicy inactivityPolicy;
+    
     @PostMapping("/login")
     public ResponseEntity<?> authenticateUser(@Valid @RequestBody LoginRequest loginRequest) {
         Authentication authentication = authenticationManager.authenticate(
@@ -49,10 +60,12 @@ public class AuthController {
         SecurityContextHolder.getContext().setAuthentication(authentication);
         String jwt = jwtUtils.generateJwtToken(authentication);
         
-        User userDetails = (User) authentication.getPrincipal();
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+        // Freshly loaded by the authentication, so the token's first requests need not load it again
+        principalCache.put(principal);
         
         // Update last activity
-        userService.updateLastActivity(userDetails.getEmail());
+        User userDetails = userService.updateLastActivity(principal.getId());
         activityLogService.logActivity(userDetails, "LOGIN", "User logged in");
         
         return ResponseEntity.ok(new JwtResponse(jwt,
@@ -75,6 +88,10 @@ public class AuthController {
         user.setLastName(signUpRequest.getLastName());
         user.setPhoneNumber(signUpRequest.getPhoneNumber());
         
+        LocalDateTime now = LocalDateTime.now();
+        user.setLastActivityAt(now);
+        inactivityPolicy.schedule(user, now);
+        
         userRepository.save(user);
         
         return ResponseEntity.ok("User registered successfully!");
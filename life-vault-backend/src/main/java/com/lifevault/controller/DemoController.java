@@ -2,6 +2,7 @@ package com.lifevault.controller;
 
 import com.lifevault.entity.User;
 import com.lifevault.repository.UserRepository;
+import com.lifevault.service.InactivityPolicy;
 import com.lifevault.service.UserService;
 import com.lifevault.scheduler.DemoInactivityCheckScheduler;
 import lombok.RequiredArgsConstructor;
@@ -23,6 +24,7 @@ public class DemoController {
     
     private final UserService userService;
     private final UserRepository userRepository;
+    private final InactivityPolicy inactivityPolicy;
     
     @Autowired(required = false)
     private DemoInactivityCheckScheduler demoScheduler;
@@ -35,6 +37,7 @@ public class DemoController {
         User user = userService.getUserByEmail(auth.getName());
         LocalDateTime newDate = LocalDateTime.now().minusDays(daysInactive);
         user.setLastActivityAt(newDate);
+        inactivityPolicy.schedule(user, LocalDateTime.now());
         userRepository.save(user);
         
         Map<String, String> response = new HashMap<>();
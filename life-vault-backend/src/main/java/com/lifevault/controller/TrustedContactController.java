@@ -1,12 +1,13 @@
 package com.lifevault.controller;
 
 import com.lifevault.dto.TrustedContactDto;
+import com.lifevault.security.UserPrincipal;
 import com.lifevault.service.TrustedContactService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -20,22 +21,22 @@ public class TrustedContactController {
     private TrustedContactService trustedContactService;
     
     @GetMapping
-    public ResponseEntity<List<TrustedContactDto>> getUserContacts(Authentication authentication) {
-        List<TrustedContactDto> contacts = trustedContactService.getUserContacts(authentication.getName());
+    public ResponseEntity<List<TrustedContactDto>> getUserContacts(@AuthenticationPrincipal UserPrincipal principal) {
+        List<TrustedContactDto> contacts = trustedContactService.getUserContacts(principal.getId());
         return ResponseEntity.ok(contacts);
     }
     
     @PostMapping
-    public ResponseEntity<TrustedContactDto> addContact(Authentication authentication,
+    public ResponseEntity<TrustedContactDto> addContact(@AuthenticationPrincipal UserPrincipal principal,
                                                        @Valid @RequestBody TrustedContactDto contactDto) {
-        TrustedContactDto createdContact = trustedContactService.addContact(authentication.getName(), contactDto);
+        TrustedContactDto createdContact = trustedContactService.addContact(principal.getId(), contactDto);
         return ResponseEntity.status(HttpStatus.CREATED).body(createdContact);
     }
     
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> removeContact(Authentication authentication,
+    public ResponseEntity<Void> removeContact(@AuthenticationPrincipal UserPrincipal principal,
                                              @PathVariable Long id) {
-        trustedContactService.removeContact(authentication.getName(), id);
+        trustedContactService.removeContact(principal.getId(), id);
         return ResponseEntity.noContent().build();
     }
     
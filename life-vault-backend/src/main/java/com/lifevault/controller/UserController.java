@@ -1,16 +1,20 @@
 package com.lifevault.controller;
 
 import com.lifevault.dto.ChangePasswordRequest;
+import com.lifevault.dto.NotificationPreferencesRequest;
 import com.lifevault.dto.UpdateProfileRequest;
 import com.lifevault.dto.UserSettingsRequest;
 import com.lifevault.entity.ActivityLog;
+import com.lifevault.entity.NotificationPreference;
 import com.lifevault.entity.User;
 import com.lifevault.repository.ActivityLogRepository;
+import com.lifevault.security.UserPrincipal;
 import com.lifevault.service.UserService;
+import com.lifevault.service.WebhookService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
@@ -29,9 +33,12 @@ public class UserController {
     @Autowired
     private ActivityLogRepository activityLogRepository;
     
+    @Autowired
+    private WebhookService webhookService;
+    
     @GetMapping("/profile")
-    public ResponseEntity<Map<String, Object>> getUserProfile(Authentication authentication) {
-        User user = userService.getUserByEmail(authentication.getName());
+    public ResponseEntity<Map<String, Object>> getUserProfile(@AuthenticationPrincipal UserPrincipal principal) {
+        User user = userService.getUser(principal.getId());
         
         Map<String, Object> profile = new HashMap<>();
         profile.put("id", user.getId());
@@ -47,9 +54,9 @@ public class UserController {
     
     @PutMapping("/profile")
     public ResponseEntity<Map<String, String>> updateProfile(
-            Authentication authentication,
+            @AuthenticationPrincipal UserPrincipal principal,
             @Valid @RequestBody UpdateProfileRequest request) {
-        userService.updateProfile(authentication.getName(), request);
+        userService.updateProfile(principal.getId(), request);
         
         Map<String, String> response = new HashMap<>();
         response.put("message", "Profile updated successfully");
@@ -58,9 +65,9 @@ public class UserController {
     
     @PostMapping("/change-password")
     public ResponseEntity<Map<String, String>> changePassword(
-            Authentication authentication,
+            @AuthenticationPrincipal UserPrincipal principal,
             @Valid @RequestBody ChangePasswordRequest request) {
-        userService.changePassword(authentication.getName(), request);
+        userService.changePassword(principal.getId(), request);
         
         Map<String, String> response = new HashMap<>();
         response.put("message", "Password changed successfully");
@@ -69,19 +76,42 @@ public class UserController {
     
     @PutMapping("/settings")
     public ResponseEntity<Map<String, String>> updateSettings(
-            Authentication authentication,
+            @AuthenticationPrincipal UserPrincipal principal,
             @Valid @RequestBody UserSettingsRequest request) {
-        userService.updateSettings(authentication.getName(), request);
+        userService.updateSettings(principal.getId(), request);
         
         Map<String, String> response = new HashMap<>();
         response.put("message", "Settings updated successfully");
         return ResponseEntity.ok(response);
     }
     
+    @GetMapping("/notification-preferences")
+    public ResponseEntity<Map<String, Object>> getNotificationPreferences(@AuthenticationPrincipal UserPrincipal principal) {
+        NotificationPreference preference = userService.getNotificationPreferences(principal.getId());
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("email", preference.getEmail());
+        response.put("sms", preference.getSms());
+        response.put("webhookUrl", preference.getWebhookUrl());
+        // The owner's key for verifying X-LifeVault-Signature
+        response.put("webhookSecret", webhookService.signingSecret(preference));
+        return ResponseEntity.ok(response);
+    }
+    
+    @PutMapping("/notification-preferences")
+    public ResponseEntity<Map<String, String>> updateNotificationPreferences(
+            @AuthenticationPrincipal UserPrincipal principal,
+            @Valid @RequestBody NotificationPreferencesRequest request) {
+        userService.updateNotificationPreferences(principal.getId(), request);
+        
+        Map<String, String> response = new HashMap<>();
+        response.put("message", "Notification preferences updated successfully");
+        return ResponseEntity.ok(response);
+    }
+    
     @GetMapping("/activity-logs")
-    public ResponseEntity<List<Map<String, Object>>> getActivityLogs(Authentication authentication) {
-        User user = userService.getUserByEmail(authentication.getName());
-        List<ActivityLog> logs = activityLogRepository.findByUserOrderByCreatedAtDesc(user);
+    public ResponseEntity<List<Map<String, Object>>> getActivityLogs(@AuthenticationPrincipal UserPrincipal principal) {
+        List<ActivityLog> logs = activityLogRepository.findByUserIdOrderByCreatedAtDesc(principal.getId());
         
         List<Map<String, Object>> response = logs.stream()
             .map(log -> {
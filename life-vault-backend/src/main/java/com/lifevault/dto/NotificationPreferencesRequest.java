@@ -0,0 +1,19 @@
+package com.lifevault.dto;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+import org.hibernate.validator.constraints.URL;
+
+@Data
+public class NotificationPreferencesRequest {
+    @NotNull
+    private Boolean email;
+    
+    @NotNull
+    private Boolean sms;
+    
+    @URL(protocol = "https")
+    @Size(max = 255)
+    private String webhookUrl;
+}
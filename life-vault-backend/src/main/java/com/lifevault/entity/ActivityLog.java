@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import lombok.ToString;
 
 import java.time.LocalDateTime;
 
@@ -14,12 +15,15 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 public class ActivityLog {
     
+    // Sequence ids let Hibernate batch inserts; IDENTITY needs a round-trip per row
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "activity_logs_seq")
+    @SequenceGenerator(name = "activity_logs_seq", sequenceName = "activity_logs_seq", allocationSize = 50)
     private Long id;
     
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
+    @ToString.Exclude
     private User user;
     
     @Enumerated(EnumType.STRING)
@@ -40,6 +44,20 @@ public class ActivityLog {
         createdAt = LocalDateTime.now();
     }
     
+    // Same id-only identity as User
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof ActivityLog other && id != null && id.equals(other.getId());
+    }
+    
+    @Override
+    public int hashCode() {
+        return ActivityLog.class.hashCode();
+    }
+    
     public enum ActivityType {
         LOGIN,
         LOGOUT,
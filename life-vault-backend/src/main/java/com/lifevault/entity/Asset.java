@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import lombok.ToString;
 
 import java.time.LocalDateTime;
 
@@ -20,6 +21,7 @@ public class Asset {
     
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
+    @ToString.Exclude
     private User user;
     
     @Column(nullable = false)
@@ -39,6 +41,7 @@ public class Asset {
     private String location;
     
     @Column(columnDefinition = "TEXT")
+    @ToString.Exclude
     private String encryptedNotes;
     
     @Column(nullable = false)
@@ -61,6 +64,20 @@ public class Asset {
         updatedAt = LocalDateTime.now();
     }
     
+    // Same id-only identity as User
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof Asset other && id != null && id.equals(other.getId());
+    }
+    
+    @Override
+    public int hashCode() {
+        return Asset.class.hashCode();
+    }
+    
     public enum AssetType {
         BANK_ACCOUNT,
         INVESTMENT,
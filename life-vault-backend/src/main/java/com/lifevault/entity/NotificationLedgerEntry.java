@@ -0,0 +1,48 @@
+package com.lifevault.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Record of a milestone notification the sweep has queued. An inactivity cycle is identified by the
+ * lastActivityAt it started from; since the final-week and grace-period milestones repeat, the day
+ * of the cycle is part of the key too. Rows are only ever written through
+ * NotificationLedgerRepository#insertAllIfAbsent, so a second run over the same user finds the entry
+ * and sends nothing. Entries are purged after inactivity.ledger.retention-days.
+ */
+@Entity
+@Table(name = "notification_ledger", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_notification_ledger_user_milestone_cycle",
+            columnNames = {"user_id", "milestone", "cycle_start", "cycle_day"})
+}, indexes = {
+    @Index(name = "idx_notification_ledger_created_at", columnList = "created_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationLedgerEntry {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false)
+    private Long userId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 30)
+    private User.InactivityMilestone milestone;
+    
+    @Column(nullable = false)
+    private LocalDateTime cycleStart;
+    
+    @Column(nullable = false)
+    private Integer cycleDay;
+    
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,52 @@
+package com.lifevault.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Which channels a user's inactivity notifications go out on. Users without a row get the defaults:
+ * email always, SMS for the grace period and reveals when a phone number is known, no webhook.
+ */
+@Entity
+@Table(name = "notification_preferences")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationPreference {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false, unique = true)
+    private Long userId;
+    
+    @Column(nullable = false)
+    private Boolean email = true;
+    
+    @Column(nullable = false)
+    private Boolean sms = true;
+    
+    // Receives a JSON event for every warning and for the reveal
+    @Column
+    private String webhookUrl;
+    
+    // HMAC key the webhook requests are signed with, encrypted; replaced whenever the URL changes
+    @Column
+    @ToString.Exclude
+    private String webhookSecret;
+    
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+    
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,134 @@
+package com.lifevault.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A notification written in the same transaction as the state change that caused it and sent
+ * afterwards by NotificationOutboxWorker, so a slow mail server never holds up that transaction.
+ */
+@Entity
+@Table(name = "notification_outbox", indexes = {
+    @Index(name = "idx_notification_outbox_status_lane_next_attempt", columnList = "status, lane, next_attempt_at"),
+    @Index(name = "idx_notification_outbox_recipient_status", columnList = "recipient, status"),
+    @Index(name = "idx_notification_outbox_status_created_at", columnList = "status, created_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxNotification {
+    
+    // Sequence ids so a shard's notifications are inserted as one JDBC batch
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "notification_outbox_seq")
+    @SequenceGenerator(name = "notification_outbox_seq", sequenceName = "notification_outbox_seq", allocationSize = 50)
+    private Long id;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Type type;
+    
+    // Defaults let ddl-auto add these columns to a table that already has rows
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, columnDefinition = "varchar(20) default 'EMAIL'")
+    private Channel channel = Channel.EMAIL;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, columnDefinition = "varchar(20) default 'ROUTINE'")
+    private Lane lane = Lane.ROUTINE;
+    
+    // User the notification is about; the recipient may be one of their trusted contacts
+    @Column(nullable = false)
+    private Long userId;
+    
+    // Email address, or E.164 phone number for SMS
+    @Column(nullable = false)
+    private String recipient;
+    
+    @Column(nullable = false)
+    private String subject;
+    
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String body;
+    
+    // Optional HTML alternative to body
+    @Column(columnDefinition = "TEXT")
+    private String htmlBody;
+    
+    // Contact token of a reveal, encrypted by VaultLinks; the bodies hold a placeholder for its link.
+    // Cleared once the row is sent or dead
+    @Column(length = 512)
+    @ToString.Exclude
+    private String linkToken;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status = Status.PENDING;
+    
+    @Column(nullable = false)
+    private Integer attempts = 0;
+    
+    // Earliest time a worker may claim the row: retry backoff, or the lease of the current claim
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt;
+    
+    @Column(length = 1000)
+    private String lastError;
+    
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+    
+    @Column
+    private LocalDateTime sentAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        if (nextAttemptAt == null) {
+            nextAttemptAt = createdAt;
+        }
+    }
+    
+    public enum Type {
+        INACTIVITY_WARNING,
+        VAULT_REVEAL
+    }
+    
+    public enum Channel {
+        EMAIL,
+        SMS,
+        WEBHOOK
+    }
+    
+    /**
+     * Delivery priority, most urgent first. Each lane has its own consumers in NotificationOutboxWorker.
+     */
+    public enum Lane {
+        REVEAL,
+        GRACE,
+        FINAL_WEEK,
+        ROUTINE;
+        
+        public static Lane forMilestone(User.InactivityMilestone milestone) {
+            if (milestone == User.InactivityMilestone.GRACE_PERIOD_WARNING) {
+                return GRACE;
+            } else if (milestone == User.InactivityMilestone.FINAL_WEEK_WARNING) {
+                return FINAL_WEEK;
+            } else if (milestone == User.InactivityMilestone.VAULT_REVEAL) {
+                return REVEAL;
+            }
+            return ROUTINE;
+        }
+    }
+    
+    public enum Status {
+        PENDING,
+        SENT,
+        DEAD
+    }
+}
@@ -0,0 +1,74 @@
+package com.lifevault.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One inactivity sweep run. Created when the run is planned; every shard adds its counts and
+ * keeps the worst shard's p99 per phase seen so far, so finishedAt is the end of the last shard. The
+ * shard that completes the run fills in the run-level wall clock and throughput.
+ */
+@Entity
+@Table(name = "sweep_runs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SweepRun {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false)
+    private LocalDateTime startedAt;
+    
+    @Column
+    private LocalDateTime finishedAt;
+    
+    @Column(nullable = false)
+    private Integer dueUsers = 0;
+    
+    @Column(nullable = false)
+    private Integer shards = 0;
+    
+    @Column(nullable = false)
+    private Integer completedShards = 0;
+    
+    @Column(nullable = false)
+    private Integer usersProcessed = 0;
+    
+    @Column(nullable = false)
+    private Integer warningsSent = 0;
+    
+    @Column(nullable = false)
+    private Integer reveals = 0;
+    
+    // Per phase, the highest p99 any one shard reported, in milliseconds. Not the run's p99: shards run
+    // on different nodes and only their own p99s are combined here; use the inactivity.sweep.phase
+    // histograms for run-wide percentiles
+    @Column
+    private Double worstShardDbReadP99Ms;
+    
+    @Column
+    private Double worstShardTokenP99Ms;
+    
+    @Column
+    private Double worstShardNotifyP99Ms;
+    
+    @Column
+    private Double worstShardActivityLogP99Ms;
+    
+    @Column
+    private Double worstShardDbWriteP99Ms;
+    
+    // Set by the last shard: planning to end of the last shard, and usersProcessed over that time
+    @Column
+    private Long wallClockMs;
+    
+    @Column
+    private Double usersPerSecond;
+}
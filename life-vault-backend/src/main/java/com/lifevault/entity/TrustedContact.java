@@ -4,11 +4,14 @@ import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import lombok.ToString;
 
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "trusted_contacts")
+@Table(name = "trusted_contacts", indexes = {
+    @Index(name = "uk_trusted_contacts_verification_token_hash", columnList = "verification_token_hash", unique = true)
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -20,6 +23,7 @@ public class TrustedContact {
     
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
+    @ToString.Exclude
     private User user;
     
     @Column(nullable = false)
@@ -43,7 +47,17 @@ public class TrustedContact {
     @Column
     private LocalDateTime notifiedAt;
     
-    @Column(nullable = false)
+    // SHA-256 of the token in the contact's links, see ContactTokenService; null once purged
+    @Column(columnDefinition = "char(64)")
+    @ToString.Exclude
+    private String verificationTokenHash;
+    
+    @Column
+    private LocalDateTime verificationTokenExpiresAt;
+    
+    // The plain token, only known in the transaction that issued it
+    @Transient
+    @ToString.Exclude
     private String verificationToken;
     
     @Column(nullable = false)
@@ -58,6 +72,19 @@ public class TrustedContact {
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
-        verificationToken = java.util.UUID.randomUUID().toString();
     }
-}
\ No newline at end of file
+    
+    // Same id-only identity as User
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof TrustedContact other && id != null && id.equals(other.getId());
+    }
+    
+    @Override
+    public int hashCode() {
+        return TrustedContact.class.hashCode();
+    }
+}
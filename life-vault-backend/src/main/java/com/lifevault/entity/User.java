@@ -1,23 +1,30 @@
 package com.lifevault.entity;
 
+import com.lifevault.security.UserAccessListener;
 import jakarta.persistence.*;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.userdetails.UserDetails;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.time.LocalDateTime;
-import java.util.Collection;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 
 @Entity
-@Table(name = "users")
+@EntityListeners(UserAccessListener.class)
+@Table(name = "users", indexes = {
+    @Index(name = "idx_users_next_action_at", columnList = "next_action_at")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-public class User implements UserDetails {
+public class User {
     
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -27,6 +34,7 @@ public class User implements UserDetails {
     private String email;
     
     @Column(nullable = false)
+    @ToString.Exclude
     private String password;
     
     @Column(nullable = false)
@@ -50,55 +58,116 @@ public class User implements UserDetails {
     @Column(nullable = false)
     private Boolean isActive = true;
     
+    // Operators only, e.g. for /actuator; granted directly in the database, never through the API
+    @Column
+    private Boolean isAdmin = false;
+    
+    // isActive and isAdmin as last loaded or written, so a change to either can be told apart
+    @Transient
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Boolean storedIsActive;
+    
+    @Transient
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Boolean storedIsAdmin;
+    
     @Column(nullable = false)
     private Integer inactivityPeriodDays = 180; // Default 6 months
     
+    // Nonce of the one live activity-verification link; see ActivityTokenService
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private Integer activityTokenVersion = 0;
+    
+    // When the inactivity sweep next has work for this user; null once the cycle is finished
     @Column
-    private String activityVerificationToken;
+    private LocalDateTime nextActionAt;
     
+    @Enumerated(EnumType.STRING)
     @Column
-    private LocalDateTime tokenExpiryDate;
+    private InactivityMilestone nextActionType;
     
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, orphanRemoval = true)
+    @ToString.Exclude
     private Set<Asset> assets = new HashSet<>();
     
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, orphanRemoval = true)
+    @ToString.Exclude
     private Set<TrustedContact> trustedContacts = new HashSet<>();
     
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
-        lastActivityAt = LocalDateTime.now();
+        // Signup sets it up front so the inactivity schedule is computed from the same instant
+        if (lastActivityAt == null) {
+            lastActivityAt = createdAt;
+        }
         lastNotificationCheckAt = LocalDateTime.now();
     }
     
-    @Override
-    public Collection<? extends GrantedAuthority> getAuthorities() {
-        return new HashSet<>();
-    }
-    
-    @Override
-    public String getUsername() {
-        return email;
+    @PostLoad
+    @PostPersist
+    @PostUpdate
+    protected void onStored() {
+        storedIsActive = isActive;
+        storedIsAdmin = isAdmin;
     }
     
-    @Override
-    public boolean isAccountNonExpired() {
-        return true;
+    /**
+     * Whether isActive or isAdmin differs from the stored row, which is what cached principals carry.
+     */
+    public boolean accessChanged() {
+        return !Objects.equals(isActive, storedIsActive) || !Objects.equals(isAdmin, storedIsAdmin);
     }
     
+    // Identity is the database id alone: an unsaved entity only equals itself, and neither method
+    // touches a lazy association
     @Override
-    public boolean isAccountNonLocked() {
-        return isActive;
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        // instanceof and the getter, so a Hibernate proxy compares equal to the entity it stands for
+        return o instanceof User other && id != null && id.equals(other.getId());
     }
     
     @Override
-    public boolean isCredentialsNonExpired() {
-        return true;
+    public int hashCode() {
+        // Fixed per class, so the hash does not change when persist assigns the id
+        return User.class.hashCode();
     }
     
-    @Override
-    public boolean isEnabled() {
-        return isActive;
+    public enum InactivityMilestone {
+        HALF_WARNING("50% warning"),
+        THREE_QUARTERS_WARNING("75% warning"),
+        FINAL_WEEK_WARNING("final week warning"),
+        GRACE_PERIOD_WARNING("grace period warning"),
+        VAULT_REVEAL("vault reveal");
+        
+        private final String label;
+        
+        InactivityMilestone(String label) {
+            this.label = label;
+        }
+        
+        public String getLabel() {
+            return label;
+        }
+        
+        /**
+         * Milestone with the given label, or null if none matches.
+         */
+        public static InactivityMilestone fromLabel(String label) {
+            for (InactivityMilestone milestone : values()) {
+                if (milestone.label.equals(label)) {
+                    return milestone;
+                }
+            }
+            return null;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package com.lifevault.exception;
+
+import java.time.Duration;
+
+/**
+ * A notification could not be handed to its channel at all: the channel's circuit is open, its
+ * bulkhead is full, it did not answer in time, or the connection to the provider failed. The message
+ * itself may be perfectly deliverable. Unlike a recipient the provider rejected, these count toward
+ * the channel's circuit breaker.
+ */
+public class ChannelUnavailableException extends RuntimeException {
+    
+    private final Duration retryAfter;
+    
+    public ChannelUnavailableException(String message) {
+        this(message, (Duration) null);
+    }
+    
+    public ChannelUnavailableException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+    
+    public ChannelUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+        this.retryAfter = null;
+    }
+    
+    /**
+     * Whether the send was refused before reaching the provider, so it should not count as an attempt.
+     */
+    public boolean isDeferred() {
+        return retryAfter != null;
+    }
+    
+    /**
+     * When the channel is expected to accept sends again; only set for deferred sends.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -1,7 +1,6 @@
 package com.lifevault.repository;
 
 import com.lifevault.entity.ActivityLog;
-import com.lifevault.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -14,5 +13,5 @@ public interface ActivityLogRepository extends JpaRepository<ActivityLog, Long>
     
     Page<ActivityLog> findByUserIdOrderByCreatedAtDesc(Long userId, Pageable pageable);
     
-    List<ActivityLog> findByUserOrderByCreatedAtDesc(User user);
+    List<ActivityLog> findByUserIdOrderByCreatedAtDesc(Long userId);
 }
\ No newline at end of file
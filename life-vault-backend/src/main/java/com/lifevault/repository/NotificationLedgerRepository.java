@@ -0,0 +1,18 @@
+package com.lifevault.repository;
+
+import com.lifevault.entity.NotificationLedgerEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface NotificationLedgerRepository extends JpaRepository<NotificationLedgerEntry, Long>,
+        NotificationLedgerRepositoryCustom {
+    
+    @Modifying
+    @Query("DELETE FROM NotificationLedgerEntry e WHERE e.createdAt < :cutoff")
+    int purgeCreatedBefore(LocalDateTime cutoff);
+}
@@ -0,0 +1,17 @@
+package com.lifevault.repository;
+
+import com.lifevault.entity.NotificationLedgerEntry;
+
+import java.util.List;
+import java.util.Set;
+
+public interface NotificationLedgerRepositoryCustom {
+    
+    /**
+     * Records every entry that is not recorded yet. A concurrent run inserting the same entry waits on
+     * the unique constraint until the first transaction ends, then sees the conflict. Does not flush the
+     * session, so the sweep's own changes still go out as one batch at commit.
+     * @return ids of the users whose entry this call recorded; the others were already there
+     */
+    Set<Long> insertAllIfAbsent(List<NotificationLedgerEntry> entries);
+}
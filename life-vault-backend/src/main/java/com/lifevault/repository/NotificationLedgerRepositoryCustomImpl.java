@@ -0,0 +1,83 @@
+package com.lifevault.repository;
+
+import com.lifevault.entity.NotificationLedgerEntry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.FlushModeType;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * One multi-row INSERT ... ON CONFLICT DO NOTHING RETURNING user_id per chunk on PostgreSQL, so a shard
+ * records all its milestones in a round trip or two. Databases without RETURNING on INSERT (H2 in the
+ * tests) fall back to one statement per entry and its update count.
+ */
+public class NotificationLedgerRepositoryCustomImpl implements NotificationLedgerRepositoryCustom {
+    
+    // Five parameters a row, well under PostgreSQL's limit of 32767 per statement
+    static final int CHUNK_SIZE = 1000;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    private volatile Boolean returningSupported;
+    
+    @Override
+    public Set<Long> insertAllIfAbsent(List<NotificationLedgerEntry> entries) {
+        Set<Long> recorded = new HashSet<>();
+        if (supportsReturning()) {
+            for (int from = 0; from < entries.size(); from += CHUNK_SIZE) {
+                List<NotificationLedgerEntry> chunk = entries.subList(from, Math.min(from + CHUNK_SIZE, entries.size()));
+                for (Object userId : insert(chunk, " RETURNING user_id").getResultList()) {
+                    recorded.add(((Number) userId).longValue());
+                }
+            }
+        } else {
+            for (NotificationLedgerEntry entry : entries) {
+                if (insert(List.of(entry), "").executeUpdate() > 0) {
+                    recorded.add(entry.getUserId());
+                }
+            }
+        }
+        return recorded;
+    }
+    
+    private Query insert(List<NotificationLedgerEntry> rows, String returning) {
+        Query query = entityManager.createNativeQuery(insertSql(rows.size()) + returning)
+                .setFlushMode(FlushModeType.COMMIT);
+        int position = 1;
+        for (NotificationLedgerEntry row : rows) {
+            query.setParameter(position++, row.getUserId());
+            query.setParameter(position++, row.getMilestone().name());
+            query.setParameter(position++, row.getCycleStart());
+            query.setParameter(position++, row.getCycleDay());
+            query.setParameter(position++, row.getCreatedAt());
+        }
+        return query;
+    }
+    
+    static String insertSql(int rows) {
+        StringBuilder sql = new StringBuilder(
+                "INSERT INTO notification_ledger (user_id, milestone, cycle_start, cycle_day, created_at) VALUES ");
+        for (int row = 0; row < rows; row++) {
+            int first = row * 5 + 1;
+            sql.append(row == 0 ? "" : ", ")
+                    .append("(?").append(first).append(", ?").append(first + 1).append(", ?").append(first + 2)
+                    .append(", ?").append(first + 3).append(", ?").append(first + 4).append(')');
+        }
+        return sql.append(" ON CONFLICT DO NOTHING").toString();
+    }
+    
+    private boolean supportsReturning() {
+        if (returningSupported == null) {
+            returningSupported = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                    .getJdbcServices().getDialect() instanceof PostgreSQLDialect;
+        }
+        return returningSupported;
+    }
+}
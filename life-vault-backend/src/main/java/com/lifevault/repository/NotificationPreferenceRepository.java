@@ -0,0 +1,17 @@
+package com.lifevault.repository;
+
+import com.lifevault.entity.NotificationPreference;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface NotificationPreferenceRepository extends JpaRepository<NotificationPreference, Long> {
+    
+    Optional<NotificationPreference> findByUserId(Long userId);
+    
+    List<NotificationPreference> findByUserIdIn(Collection<Long> userIds);
+}
@@ -0,0 +1,55 @@
+package com.lifevault.repository;
+
+import com.lifevault.entity.OutboxNotification;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxNotificationRepository extends JpaRepository<OutboxNotification, Long> {
+    
+    // FOR UPDATE SKIP LOCKED (lock timeout -2): concurrent workers claim disjoint rows without waiting
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT o FROM OutboxNotification o WHERE o.status = :status AND o.lane = :lane " +
+           "AND o.nextAttemptAt <= :now ORDER BY o.nextAttemptAt")
+    List<OutboxNotification> findClaimable(OutboxNotification.Status status, OutboxNotification.Lane lane,
+                                           LocalDateTime now, Pageable pageable);
+    
+    /**
+     * Never-attempted rows of the type and channel for the given recipients, including those still
+     * waiting out their coalescing window, locked like {@link #findClaimable}. Leased and retrying
+     * rows have attempts &gt; 0 and are left alone.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT o FROM OutboxNotification o WHERE o.status = :status AND o.type = :type " +
+           "AND o.channel = :channel AND o.attempts = 0 AND o.recipient IN :recipients AND o.id NOT IN :excludeIds " +
+           "ORDER BY o.id")
+    List<OutboxNotification> findCoalescible(OutboxNotification.Status status, OutboxNotification.Type type,
+                                             OutboxNotification.Channel channel, Collection<String> recipients,
+                                             Collection<Long> excludeIds, Pageable pageable);
+    
+    @Modifying
+    @Query("UPDATE OutboxNotification o SET o.status = com.lifevault.entity.OutboxNotification$Status.SENT, " +
+           "o.sentAt = :sentAt, o.lastError = null, o.linkToken = null WHERE o.id IN :ids")
+    int markSent(Collection<Long> ids, LocalDateTime sentAt);
+    
+    // Sent and dead rows only; pending ones are kept however old they are
+    @Modifying
+    @Query("DELETE FROM OutboxNotification o WHERE o.status <> com.lifevault.entity.OutboxNotification$Status.PENDING " +
+           "AND o.createdAt < :cutoff")
+    int purgeFinishedBefore(LocalDateTime cutoff);
+    
+    long countByStatus(OutboxNotification.Status status);
+}
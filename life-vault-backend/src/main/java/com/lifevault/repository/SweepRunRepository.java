@@ -0,0 +1,19 @@
+package com.lifevault.repository;
+
+import com.lifevault.entity.SweepRun;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface SweepRunRepository extends JpaRepository<SweepRun, Long> {
+    
+    // Shards on different nodes finish concurrently and add to the same row
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM SweepRun r WHERE r.id = :id")
+    Optional<SweepRun> findByIdForUpdate(Long id);
+}
@@ -2,10 +2,15 @@ package com.lifevault.repository;
 
 import com.lifevault.entity.TrustedContact;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @Repository
 public interface TrustedContactRepository extends JpaRepository<TrustedContact, Long> {
@@ -14,9 +19,30 @@ public interface TrustedContactRepository extends JpaRepository<TrustedContact,
     
     Optional<TrustedContact> findByIdAndUserId(Long id, Long userId);
     
-    Optional<TrustedContact> findByVerificationToken(String token);
+    // Served by uk_trusted_contacts_verification_token_hash
+    Optional<TrustedContact> findByVerificationTokenHash(String verificationTokenHash);
     
     boolean existsByUserIdAndEmail(Long userId, String email);
     
     List<TrustedContact> findByUserIdAndIsVerifiedTrue(Long userId);
+    
+    // Set-based lookups for the inactivity sweep: one query per shard instead of one per user
+    @Query("SELECT DISTINCT c.user.id FROM TrustedContact c WHERE c.user.id IN :userIds AND c.isNotified = true")
+    Set<Long> findUserIdsWithNotifiedContacts(Collection<Long> userIds);
+    
+    @Query("SELECT c FROM TrustedContact c WHERE c.user.id IN :userIds AND c.isVerified = true ORDER BY c.id")
+    List<TrustedContact> findVerifiedByUserIds(Collection<Long> userIds);
+    
+    // Contacts and vault owners behind the reveal emails coalesced into digests
+    @Query("SELECT c FROM TrustedContact c JOIN FETCH c.user WHERE c.email IN :emails AND c.user.id IN :userIds")
+    List<TrustedContact> findWithUserByEmailsAndUserIds(Collection<String> emails, Collection<Long> userIds);
+    
+    @Modifying
+    @Query("UPDATE TrustedContact c SET c.isNotified = true, c.notifiedAt = :notifiedAt WHERE c.id IN :ids")
+    int markNotified(Collection<Long> ids, LocalDateTime notifiedAt);
+    
+    @Modifying
+    @Query("UPDATE TrustedContact c SET c.verificationTokenHash = null, c.verificationTokenExpiresAt = null " +
+           "WHERE c.verificationTokenExpiresAt < :now")
+    int purgeExpiredTokens(LocalDateTime now);
 }
\ No newline at end of file
@@ -1,11 +1,14 @@
 package com.lifevault.repository;
 
 import com.lifevault.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,4 +24,27 @@ public interface UserRepository extends JpaRepository<User, Long> {
     
     @Query("SELECT u FROM User u WHERE u.isActive = true AND u.lastNotificationCheckAt < :checkThreshold")
     List<User> findUsersForNotificationCheck(LocalDateTime checkThreshold);
-}
\ No newline at end of file
+    
+    // Keyset page of active users: pass the last id of the previous page (0 for the first)
+    @Query("SELECT u FROM User u WHERE u.isActive = true AND u.id > :lastId ORDER BY u.id")
+    List<User> findActiveUsersAfterId(Long lastId, Pageable pageable);
+    
+    // Served by idx_users_next_action_at; only ids are read so the sweep can plan its chunks
+    @Query("SELECT u.id FROM User u WHERE u.isActive = true AND u.nextActionAt <= :now ORDER BY u.id")
+    List<Long> findDueUserIds(LocalDateTime now);
+    
+    @Query("SELECT u FROM User u WHERE u.isActive = true AND u.nextActionAt <= :now " +
+           "AND u.id BETWEEN :fromId AND :toId ORDER BY u.id")
+    List<User> findDueUsersInIdRange(LocalDateTime now, Long fromId, Long toId);
+    
+    @Query("SELECT u FROM User u WHERE u.isActive = true AND u.id > :lastId AND (u.nextActionType IS NULL " +
+           "OR (u.nextActionType IN :types AND u.nextActionAt > :now)) ORDER BY u.id")
+    List<User> findSchedulesToResync(Collection<User.InactivityMilestone> types, LocalDateTime now,
+                                     Long lastId, Pageable pageable);
+    
+    // Consumes an activity token: only one of several concurrent clicks on the same link can match
+    @Modifying
+    @Query("UPDATE User u SET u.activityTokenVersion = u.activityTokenVersion + 1 " +
+           "WHERE u.id = :id AND u.activityTokenVersion = :version AND u.isActive = true")
+    int consumeActivityToken(Long id, int version);
+}
@@ -0,0 +1,32 @@
+package com.lifevault.scheduler;
+
+import com.lifevault.repository.TrustedContactRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+/**
+ * Clears expired trusted-contact token hashes, so dead links stop resolving and the unique index
+ * only holds live tokens. A single idempotent UPDATE, so it needs no cluster coordination: every
+ * node may run it.
+ */
+@Component
+@Slf4j
+public class ContactTokenPurgeScheduler {
+    
+    @Autowired
+    private TrustedContactRepository trustedContactRepository;
+    
+    @Scheduled(cron = "${inactivity.contact-token.purge-cron:0 30 3 * * ?}")
+    @Transactional
+    public void purgeExpiredTokens() {
+        int purged = trustedContactRepository.purgeExpiredTokens(LocalDateTime.now());
+        if (purged > 0) {
+            log.info("Purged {} expired trusted contact tokens", purged);
+        }
+    }
+}
@@ -3,13 +3,16 @@ package com.lifevault.scheduler;
 import com.lifevault.entity.User;
 import com.lifevault.repository.UserRepository;
 import com.lifevault.service.ActivityLogService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
@@ -26,21 +29,42 @@ public class DemoInactivityCheckScheduler {
     @Autowired
     private ActivityLogService activityLogService;
     
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
     @Value("${inactivity.grace-period-days:14}")
     private int gracePeriodDays;
     
+    @Value("${inactivity.sweep.page-size:500}")
+    private int pageSize;
+    
     // Removed @Scheduled annotation - this will only run when manually triggered
-    @Transactional
     public void checkInactiveUsers() {
         log.info("DEMO MODE: Running manually triggered inactivity check (emails disabled for demo)");
         LocalDateTime now = LocalDateTime.now();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        
+        // Same keyset paging as the real scheduler: one page per transaction
+        long lastId = 0L;
+        List<User> page;
+        do {
+            long afterId = lastId;
+            page = transactionTemplate.execute(status -> processPage(afterId, now));
+            if (!page.isEmpty()) {
+                lastId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == pageSize);
         
-        // Get all active users
-        List<User> activeUsers = userRepository.findAll().stream()
-                .filter(User::getIsActive)
-                .toList();
+        log.info("DEMO MODE: Inactivity check completed. Check activity logs for demo notifications.");
+    }
+    
+    private List<User> processPage(long afterId, LocalDateTime now) {
+        List<User> users = userRepository.findActiveUsersAfterId(afterId, PageRequest.of(0, pageSize));
         
-        for (User user : activeUsers) {
+        for (User user : users) {
             LocalDateTime lastActivity = user.getLastActivityAt();
             if (lastActivity == null) {
                 continue;
@@ -92,6 +116,8 @@ public class DemoInactivityCheckScheduler {
             }
         }
         
-        log.info("DEMO MODE: Inactivity check completed. Check activity logs for demo notifications.");
+        entityManager.flush();
+        entityManager.clear();
+        return users;
     }
 }
\ No newline at end of file
@@ -1,23 +1,49 @@
 package com.lifevault.scheduler;
 
+import com.lifevault.entity.NotificationLedgerEntry;
+import com.lifevault.entity.SweepRun;
 import com.lifevault.entity.TrustedContact;
 import com.lifevault.entity.User;
+import com.lifevault.entity.User.InactivityMilestone;
+import com.lifevault.repository.NotificationLedgerRepository;
+import com.lifevault.repository.SweepRunRepository;
 import com.lifevault.repository.TrustedContactRepository;
 import com.lifevault.repository.UserRepository;
+import com.lifevault.scheduler.SweepMetrics.Phase;
 import com.lifevault.service.ActivityLogService;
-import com.lifevault.service.EmailService;
+import com.lifevault.service.ContactTokenService;
+import com.lifevault.service.InactivityPolicy;
+import com.lifevault.service.NotificationRouter;
+import com.lifevault.service.NotificationRouter.ChannelPreferences;
 import com.lifevault.service.UserService;
+import lombok.extern.slf4j.Slf4j;
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.TriggerBuilder;
+import org.quartz.impl.matchers.GroupMatcher;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Component
+@Slf4j
 public class InactivityCheckScheduler {
     
     @Autowired
@@ -27,7 +53,7 @@ public class InactivityCheckScheduler {
     private TrustedContactRepository trustedContactRepository;
     
     @Autowired
-    private EmailService emailService;
+    private NotificationRouter notificationRouter;
     
     @Autowired
     private ActivityLogService activityLogService;
@@ -35,98 +61,328 @@ public class InactivityCheckScheduler {
     @Autowired
     private UserService userService;
     
-    @Value("${inactivity.grace-period-days:14}")
-    private int gracePeriodDays;
+    @Autowired
+    private ContactTokenService contactTokenService;
+    
+    @Autowired
+    private InactivityPolicy inactivityPolicy;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Autowired
+    private Scheduler quartzScheduler;
+    
+    @Autowired
+    private SweepRunRepository sweepRunRepository;
+    
+    @Autowired
+    private SweepMetrics sweepMetrics;
+    
+    @Autowired
+    private NotificationOutboxWorker notificationOutboxWorker;
+    
+    @Autowired
+    private NotificationLedgerRepository notificationLedgerRepository;
+    
+    @Value("${inactivity.sweep.page-size:500}")
+    private int pageSize;
     
-    @Scheduled(cron = "0 0 2 * * ?") // Run daily at 2 AM
-    @Transactional
+    @Value("${inactivity.sweep.shard-size:500}")
+    private int shardSize;
+    
+    /**
+     * Plans a sweep run on the node the cluster-wide trigger fired on: splits the due users into
+     * id ranges of shardSize users and queues each range as an {@link InactivitySweepShardJob}.
+     */
     public void checkInactiveUsers() {
+        try {
+            int pendingShards = quartzScheduler.getJobKeys(
+                    GroupMatcher.jobGroupEquals(InactivitySweepShardJob.GROUP)).size();
+            if (pendingShards > 0) {
+                // Ranges of the previous run may still overlap; its leftovers are picked up next run
+                log.warn("Previous inactivity sweep still has {} shards pending; skipping this run", pendingShards);
+                return;
+            }
+            
+            SweepRun run = new SweepRun();
+            run.setStartedAt(LocalDateTime.now());
+            List<Long> dueIds = userRepository.findDueUserIds(run.getStartedAt());
+            if (dueIds.isEmpty()) {
+                // Nothing to record: sweep_runs only keeps runs that had users to process
+                log.debug("Inactivity sweep found no due users");
+                return;
+            }
+            run.setDueUsers(dueIds.size());
+            run.setShards((dueIds.size() + shardSize - 1) / shardSize);
+            long runId = sweepRunRepository.save(run).getId();
+            
+            for (int from = 0; from < dueIds.size(); from += shardSize) {
+                long fromId = dueIds.get(from);
+                long toId = dueIds.get(Math.min(from + shardSize, dueIds.size()) - 1);
+                String name = "shard-" + fromId + "-" + toId;
+                JobDetail shard = JobBuilder.newJob(InactivitySweepShardJob.class)
+                        .withIdentity(name, InactivitySweepShardJob.GROUP)
+                        .usingJobData(InactivitySweepShardJob.RUN_ID, runId)
+                        .usingJobData(InactivitySweepShardJob.FROM_ID, fromId)
+                        .usingJobData(InactivitySweepShardJob.TO_ID, toId)
+                        .requestRecovery()
+                        .build();
+                quartzScheduler.scheduleJob(shard, TriggerBuilder.newTrigger()
+                        .withIdentity(name, InactivitySweepShardJob.GROUP)
+                        .startNow()
+                        .build());
+            }
+            log.info("Inactivity sweep run {} queued {} due users in {} shards", runId, dueIds.size(), run.getShards());
+        } catch (SchedulerException e) {
+            throw new RuntimeException("Failed to queue inactivity sweep shards", e);
+        }
+    }
+    
+    /**
+     * Processes the due users of one id range in a single transaction. Safe to re-run after a
+     * crash: users handled by a committed run are no longer due. User changes are left to dirty
+     * checking and activity logs take sequence ids, so the flush sends both as JDBC batches.
+     * Waits first while the outbox backlog is over its limit. Every milestone is recorded in the
+     * notification ledger before anything is queued, so a concurrent or repeated run over the same
+     * users queues nothing twice.
+     */
+    public void processShard(long runId, long fromId, long toId) {
+        notificationOutboxWorker.awaitCapacity();
         LocalDateTime now = LocalDateTime.now();
+        SweepMetrics.ShardStats stats = sweepMetrics.newShard();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        SweepRun finishedRun = transactionTemplate.execute(status -> {
+            List<User> users = stats.time(Phase.DB_READ,
+                    () -> userRepository.findDueUsersInIdRange(now, fromId, toId));
+            RevealContacts revealContacts = stats.time(Phase.DB_READ, () -> loadRevealContacts(users, now));
+            ChannelPreferences preferences = stats.time(Phase.DB_READ,
+                    () -> notificationRouter.resolvePreferences(users.stream().map(User::getId).toList()));
+            Set<Long> alreadyNotified = stats.time(Phase.DB_WRITE, () -> recordMilestones(users, now));
+            for (User user : users) {
+                processUserInactivityCheck(user, now, revealContacts, preferences,
+                        alreadyNotified.contains(user.getId()), stats);
+            }
+            stats.time(Phase.DB_WRITE, () -> {
+                // Flushed first: the contacts given new tokens would otherwise be written back after
+                // the UPDATE below, with their stale isNotified
+                userRepository.flush();
+                if (!revealContacts.notifiedContactIds.isEmpty()) {
+                    trustedContactRepository.markNotified(revealContacts.notifiedContactIds, now);
+                }
+            });
+            stats.usersProcessed(users.size());
+            return sweepRunRepository.findByIdForUpdate(runId)
+                    .filter(run -> recordShard(run, stats))
+                    .orElse(null);
+        });
         
-        // Get all active users
-        List<User> activeUsers = userRepository.findAll().stream()
-                .filter(User::getIsActive)
-                .toList();
-        
-        for (User user : activeUsers) {
-            processUserInactivityCheck(user, now);
+        long elapsedMs = stats.finish();
+        log.info("Inactivity sweep shard {}-{} processed {} due users in {} ms ({} users/sec)",
+                fromId, toId, stats.getUsersProcessed(), elapsedMs,
+                String.format("%.1f", stats.getUsersProcessed() * 1000.0 / elapsedMs));
+        if (finishedRun != null) {
+            log.info("Inactivity sweep run {} finished: {} users in {} shards, {} ms wall clock ({} users/sec)",
+                    finishedRun.getId(), finishedRun.getUsersProcessed(), finishedRun.getShards(),
+                    finishedRun.getWallClockMs(), String.format("%.1f", finishedRun.getUsersPerSecond()));
+        }
+    }
+    
+    /**
+     * Adds the shard's counts to its run. The shard that completes the run also stamps the run's
+     * wall-clock time, from planning to the end of its last shard, and its overall throughput.
+     * @return whether this was the run's last shard
+     */
+    private boolean recordShard(SweepRun run, SweepMetrics.ShardStats stats) {
+        run.setCompletedShards(run.getCompletedShards() + 1);
+        run.setUsersProcessed(run.getUsersProcessed() + stats.getUsersProcessed());
+        run.setWarningsSent(run.getWarningsSent() + stats.getWarningsSent());
+        run.setReveals(run.getReveals() + stats.getReveals());
+        run.setFinishedAt(LocalDateTime.now());
+        run.setWorstShardDbReadP99Ms(worst(run.getWorstShardDbReadP99Ms(), stats.p99Millis(Phase.DB_READ)));
+        run.setWorstShardTokenP99Ms(worst(run.getWorstShardTokenP99Ms(), stats.p99Millis(Phase.TOKEN)));
+        run.setWorstShardNotifyP99Ms(worst(run.getWorstShardNotifyP99Ms(), stats.p99Millis(Phase.NOTIFY)));
+        run.setWorstShardActivityLogP99Ms(worst(run.getWorstShardActivityLogP99Ms(), stats.p99Millis(Phase.ACTIVITY_LOG)));
+        run.setWorstShardDbWriteP99Ms(worst(run.getWorstShardDbWriteP99Ms(), stats.p99Millis(Phase.DB_WRITE)));
+        if (run.getCompletedShards() < run.getShards()) {
+            return false;
         }
+        long wallClockMs = Math.max(1, Duration.between(run.getStartedAt(), run.getFinishedAt()).toMillis());
+        run.setWallClockMs(wallClockMs);
+        run.setUsersPerSecond(run.getUsersProcessed() * 1000.0 / wallClockMs);
+        return true;
     }
     
-    private void processUserInactivityCheck(User user, LocalDateTime now) {
-        long daysSinceLastActivity = ChronoUnit.DAYS.between(user.getLastActivityAt(), now);
-        int inactivityPeriod = user.getInactivityPeriodDays();
+    private static Double worst(Double recorded, Double shard) {
+        if (recorded == null || shard == null) {
+            return recorded != null ? recorded : shard;
+        }
+        return Math.max(recorded, shard);
+    }
+    
+    /**
+     * Backfills schedules for users that never had one and re-plans grace-period and reveal
+     * actions against the configured grace period, which may have changed since the last deploy.
+     * Users already due are left to the next sweep so their pending action is not skipped.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resyncSchedules() {
+        LocalDateTime now = LocalDateTime.now();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        EnumSet<InactivityMilestone> graceDependent =
+                EnumSet.of(InactivityMilestone.GRACE_PERIOD_WARNING, InactivityMilestone.VAULT_REVEAL);
         
-        // Calculate check points
-        int halfPeriod = inactivityPeriod / 2;
-        int threeQuartersPeriod = (inactivityPeriod * 3) / 4;
-        int lastWeekStart = inactivityPeriod - 7;
-        int finalPeriod = inactivityPeriod + gracePeriodDays;
+        long lastId = 0L;
+        List<User> page;
+        do {
+            long afterId = lastId;
+            page = transactionTemplate.execute(status -> {
+                List<User> users = userRepository.findSchedulesToResync(graceDependent, now, afterId,
+                        PageRequest.of(0, pageSize));
+                users.forEach(user -> inactivityPolicy.schedule(user, now));
+                return users;
+            });
+            if (!page.isEmpty()) {
+                lastId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == pageSize);
+    }
+    
+    /**
+     * The action stored on the user, if it is due. The sweep acts on what was scheduled rather than on
+     * a milestone recomputed from now: a slot late in the day, swept after midnight, would otherwise
+     * land on the next day and lose a single-day milestone.
+     */
+    private InactivityMilestone dueMilestone(User user, LocalDateTime now) {
+        if (user.getNextActionAt() == null || user.getNextActionAt().isAfter(now)) {
+            return null;
+        }
+        return user.getNextActionType();
+    }
+    
+    /**
+     * Inserts the ledger entries of every user's due milestone, a chunk of users per statement.
+     * @return ids of the users whose entry already existed, whose notification is already queued
+     */
+    private Set<Long> recordMilestones(List<User> users, LocalDateTime now) {
+        List<NotificationLedgerEntry> entries = new ArrayList<>();
+        for (User user : users) {
+            InactivityMilestone milestone = dueMilestone(user, now);
+            if (milestone != null) {
+                entries.add(new NotificationLedgerEntry(null, user.getId(), milestone, user.getLastActivityAt(),
+                        (int) inactivityPolicy.scheduledDay(user), now));
+            }
+        }
+        Set<Long> recorded = entries.isEmpty() ? Set.of() : notificationLedgerRepository.insertAllIfAbsent(entries);
+        Set<Long> alreadyNotified = new HashSet<>();
+        for (NotificationLedgerEntry entry : entries) {
+            if (!recorded.contains(entry.getUserId())) {
+                alreadyNotified.add(entry.getUserId());
+            }
+        }
+        if (!alreadyNotified.isEmpty()) {
+            log.info("Skipping {} users whose milestone notification was already queued", alreadyNotified.size());
+            sweepMetrics.duplicatesSkipped(alreadyNotified.size());
+        }
+        return alreadyNotified;
+    }
+    
+    /**
+     * Loads the contact state of every reveal-due user in the shard with two queries, so the
+     * query count per shard stays constant however many users and contacts it holds.
+     */
+    private RevealContacts loadRevealContacts(List<User> users, LocalDateTime now) {
+        List<Long> revealUserIds = users.stream()
+                .filter(user -> dueMilestone(user, now) == InactivityMilestone.VAULT_REVEAL)
+                .map(User::getId)
+                .toList();
+        if (revealUserIds.isEmpty()) {
+            return new RevealContacts(Set.of(), Map.of());
+        }
         
-        // Determine if we should send a notification
-        boolean shouldNotify = false;
-        String notificationType = "";
+        Map<Long, List<TrustedContact>> verifiedByUserId = trustedContactRepository
+                .findVerifiedByUserIds(revealUserIds).stream()
+                .collect(Collectors.groupingBy(contact -> contact.getUser().getId()));
+        return new RevealContacts(trustedContactRepository.findUserIdsWithNotifiedContacts(revealUserIds),
+                verifiedByUserId);
+    }
+    
+    private void processUserInactivityCheck(User user, LocalDateTime now, RevealContacts revealContacts,
+                                            ChannelPreferences preferences, boolean alreadyNotified,
+                                            SweepMetrics.ShardStats stats) {
+        InactivityMilestone milestone = dueMilestone(user, now);
+        if (milestone == null) {
+            return;
+        }
+        if (alreadyNotified) {
+            // Another run already queued this notification; only move the schedule on
+            inactivityPolicy.schedule(user, now);
+            return;
+        }
+        long scheduledDay = inactivityPolicy.scheduledDay(user);
         
-        if (daysSinceLastActivity == halfPeriod) {
-            // First check at 50% of inactivity period
-            shouldNotify = true;
-            notificationType = "50% warning";
-        } else if (daysSinceLastActivity == threeQuartersPeriod) {
-            // Second check at 75% of inactivity period
-            shouldNotify = true;
-            notificationType = "75% warning";
-        } else if (daysSinceLastActivity >= lastWeekStart && daysSinceLastActivity < inactivityPeriod) {
-            // Daily checks in the last week
-            shouldNotify = true;
-            notificationType = "final week warning";
-        } else if (daysSinceLastActivity >= inactivityPeriod && daysSinceLastActivity < finalPeriod) {
-            // Check every 2 days during grace period
-            if ((daysSinceLastActivity - inactivityPeriod) % 2 == 0) {
-                shouldNotify = true;
-                notificationType = "grace period warning";
-            }
-        } else if (daysSinceLastActivity >= finalPeriod) {
+        if (milestone == InactivityMilestone.VAULT_REVEAL) {
             // Time to reveal vault
-            if (!hasNotifiedContacts(user)) {
-                revealVaultToContacts(user);
+            if (revealContacts.alreadyNotifiedUserIds.contains(user.getId())
+                    || revealVaultToContacts(user, revealContacts, preferences, stats)) {
+                inactivityPolicy.complete(user);
                 return;
             }
+        } else {
+            sendWarningNotification(user, milestone, scheduledDay, preferences, stats);
         }
         
-        if (shouldNotify) {
-            sendWarningNotification(user, notificationType, daysSinceLastActivity);
-        }
+        inactivityPolicy.schedule(user, now);
     }
     
-    private void sendWarningNotification(User user, String type, long daysInactive) {
+    private void sendWarningNotification(User user, InactivityMilestone milestone, long daysInactive,
+                                         ChannelPreferences preferences, SweepMetrics.ShardStats stats) {
+        String type = milestone.getLabel();
         // Generate activity token for one-click verification
-        String activityToken = userService.generateActivityToken(user);
+        String activityToken = stats.time(Phase.TOKEN, () -> userService.generateActivityToken(user));
         
-        emailService.sendInactivityWarningEmail(user, type, daysInactive, activityToken);
+        stats.time(Phase.NOTIFY, () -> notificationRouter.queueInactivityWarning(user, milestone, daysInactive,
+                activityToken, preferences.forUser(user.getId())));
         user.setLastNotificationCheckAt(LocalDateTime.now());
-        userRepository.save(user);
         
-        activityLogService.logActivity(user, "INACTIVITY_CHECK", 
-                String.format("Inactivity %s sent after %d days", type, daysInactive));
+        stats.time(Phase.ACTIVITY_LOG, () -> activityLogService.logActivity(user, "INACTIVITY_CHECK",
+                String.format("Inactivity %s sent after %d days", type, daysInactive)));
+        stats.warningSent(milestone);
     }
     
-    private boolean hasNotifiedContacts(User user) {
-        List<TrustedContact> contacts = trustedContactRepository.findByUserId(user.getId());
-        return contacts.stream().anyMatch(TrustedContact::getIsNotified);
+    /**
+     * Queues the reveal notifications in the outbox and the contacts for the shard's single "mark notified" UPDATE.
+     * @return whether at least one contact was notified; if none was, the reveal is retried daily
+     */
+    private boolean revealVaultToContacts(User user, RevealContacts revealContacts, ChannelPreferences preferences,
+                                          SweepMetrics.ShardStats stats) {
+        List<TrustedContact> verifiedContacts = revealContacts.verifiedByUserId
+                .getOrDefault(user.getId(), List.of());
+        
+        // Vault-access links carry a fresh token; only its hash is written back with the shard
+        LocalDateTime now = LocalDateTime.now();
+        verifiedContacts.forEach(contact -> contactTokenService.issue(contact, now));
+        stats.time(Phase.NOTIFY, () -> notificationRouter.queueVaultReveal(user, verifiedContacts,
+                preferences.forUser(user.getId())));
+        verifiedContacts.forEach(contact -> revealContacts.notifiedContactIds.add(contact.getId()));
+        
+        stats.time(Phase.ACTIVITY_LOG, () -> activityLogService.logActivity(user, "VAULT_REVEALED",
+                "Vault information revealed to trusted contacts due to extended inactivity"));
+        if (verifiedContacts.isEmpty()) {
+            return false;
+        }
+        stats.vaultRevealed();
+        return true;
     }
     
-    private void revealVaultToContacts(User user) {
-        List<TrustedContact> verifiedContacts = trustedContactRepository
-                .findByUserIdAndIsVerifiedTrue(user.getId());
+    private static class RevealContacts {
+        private final Set<Long> alreadyNotifiedUserIds;
+        private final Map<Long, List<TrustedContact>> verifiedByUserId;
+        private final List<Long> notifiedContactIds = new ArrayList<>();
         
-        for (TrustedContact contact : verifiedContacts) {
-            emailService.sendVaultRevealNotification(contact, user);
-            contact.setIsNotified(true);
-            contact.setNotifiedAt(LocalDateTime.now());
-            trustedContactRepository.save(contact);
+        private RevealContacts(Set<Long> alreadyNotifiedUserIds, Map<Long, List<TrustedContact>> verifiedByUserId) {
+            this.alreadyNotifiedUserIds = alreadyNotifiedUserIds;
+            this.verifiedByUserId = verifiedByUserId;
         }
-        
-        activityLogService.logActivity(user, "VAULT_REVEALED", 
-                "Vault information revealed to trusted contacts due to extended inactivity");
     }
-}
\ No newline at end of file
+}
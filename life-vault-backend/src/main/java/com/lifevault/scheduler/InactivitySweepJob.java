@@ -0,0 +1,22 @@
+package com.lifevault.scheduler;
+
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.JobExecutionContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.quartz.QuartzJobBean;
+
+/**
+ * Cron-triggered start of an inactivity sweep. The clustered job store fires it on exactly one
+ * node, which only plans the run; the work itself is done by {@link InactivitySweepShardJob}s.
+ */
+@DisallowConcurrentExecution
+public class InactivitySweepJob extends QuartzJobBean {
+    
+    @Autowired
+    private InactivityCheckScheduler inactivityCheckScheduler;
+    
+    @Override
+    protected void executeInternal(JobExecutionContext context) {
+        inactivityCheckScheduler.checkInactiveUsers();
+    }
+}
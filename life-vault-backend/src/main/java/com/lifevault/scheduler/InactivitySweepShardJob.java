@@ -0,0 +1,29 @@
+package com.lifevault.scheduler;
+
+import org.quartz.JobDataMap;
+import org.quartz.JobExecutionContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.quartz.QuartzJobBean;
+
+/**
+ * One id-range shard of an inactivity sweep. Shards live in the Quartz job store, so whichever
+ * node has a free worker thread leases the next one. Shards request recovery: if a node dies
+ * mid-shard, another node re-runs it once the dead node misses its cluster check-in.
+ */
+public class InactivitySweepShardJob extends QuartzJobBean {
+    
+    public static final String GROUP = "inactivity-sweep-shards";
+    public static final String RUN_ID = "runId";
+    public static final String FROM_ID = "fromId";
+    public static final String TO_ID = "toId";
+    
+    @Autowired
+    private InactivityCheckScheduler inactivityCheckScheduler;
+    
+    @Override
+    protected void executeInternal(JobExecutionContext context) {
+        JobDataMap data = context.getMergedJobDataMap();
+        inactivityCheckScheduler.processShard(data.getLong(RUN_ID), data.getLong(FROM_ID),
+                data.getLong(TO_ID));
+    }
+}
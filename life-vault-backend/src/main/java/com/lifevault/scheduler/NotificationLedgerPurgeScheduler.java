@@ -0,0 +1,35 @@
+package com.lifevault.scheduler;
+
+import com.lifevault.repository.NotificationLedgerRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+/**
+ * Deletes notification ledger entries past their retention, so the ledger holds days of sweeps instead
+ * of every milestone ever sent. A single idempotent DELETE, so every node may run it.
+ */
+@Component
+@Slf4j
+public class NotificationLedgerPurgeScheduler {
+    
+    @Autowired
+    private NotificationLedgerRepository notificationLedgerRepository;
+    
+    @Value("${inactivity.ledger.retention-days:30}")
+    private int retentionDays;
+    
+    @Scheduled(cron = "${inactivity.ledger.purge-cron:0 45 3 * * ?}")
+    @Transactional
+    public void purgeExpiredEntries() {
+        int purged = notificationLedgerRepository.purgeCreatedBefore(LocalDateTime.now().minusDays(retentionDays));
+        if (purged > 0) {
+            log.info("Purged {} notification ledger entries older than {} days", purged, retentionDays);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.lifevault.scheduler;
+
+import com.lifevault.repository.OutboxNotificationRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+/**
+ * Deletes sent and dead outbox notifications past their retention, so rendered messages, with the
+ * activity links they contain, are not kept forever. A single idempotent DELETE, so every node may run it.
+ */
+@Component
+@Slf4j
+public class NotificationOutboxPurgeScheduler {
+    
+    @Autowired
+    private OutboxNotificationRepository outboxRepository;
+    
+    @Value("${inactivity.outbox.retention-days:7}")
+    private int retentionDays;
+    
+    @Scheduled(cron = "${inactivity.outbox.purge-cron:0 50 3 * * ?}")
+    @Transactional
+    public void purgeFinishedNotifications() {
+        int purged = outboxRepository.purgeFinishedBefore(LocalDateTime.now().minusDays(retentionDays));
+        if (purged > 0) {
+            log.info("Purged {} sent or dead outbox notifications older than {} days", purged, retentionDays);
+        }
+    }
+}
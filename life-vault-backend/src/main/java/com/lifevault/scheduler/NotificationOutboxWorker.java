@@ -0,0 +1,340 @@
+package com.lifevault.scheduler;
+
+import com.lifevault.entity.OutboxNotification;
+import com.lifevault.exception.ChannelUnavailableException;
+import com.lifevault.repository.OutboxNotificationRepository;
+import com.lifevault.service.EmailService;
+import com.lifevault.service.NotificationRouter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Sends the notification outbox. Every node runs a pool of consumers split across the priority lanes
+ * (inactivity.outbox.lanes.*); each claims a batch of due rows with SKIP LOCKED and leases them by
+ * pushing nextAttemptAt forward, then sends outside any transaction. A consumer that dies mid-batch simply lets its lease run out.
+ */
+@Component
+@Slf4j
+public class NotificationOutboxWorker {
+    
+    @Autowired
+    private OutboxNotificationRepository outboxRepository;
+    
+    @Autowired
+    private NotificationRouter notificationRouter;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${inactivity.outbox.lanes.reveal:2}")
+    private int revealWorkers;
+    
+    @Value("${inactivity.outbox.lanes.grace:1}")
+    private int graceWorkers;
+    
+    @Value("${inactivity.outbox.lanes.final-week:1}")
+    private int finalWeekWorkers;
+    
+    @Value("${inactivity.outbox.lanes.routine:1}")
+    private int routineWorkers;
+    
+    @Value("${inactivity.outbox.batch-size:20}")
+    private int batchSize;
+    
+    @Value("${inactivity.outbox.lease-seconds:300}")
+    private int leaseSeconds;
+    
+    @Value("${inactivity.outbox.max-attempts:8}")
+    private int maxAttempts;
+    
+    @Value("${inactivity.outbox.backoff-seconds:30}")
+    private int backoffSeconds;
+    
+    @Value("${inactivity.outbox.max-backoff-seconds:3600}")
+    private int maxBackoffSeconds;
+    
+    @Value("${inactivity.outbox.max-pending:5000}")
+    private long maxPending;
+    
+    @Value("${inactivity.outbox.backpressure-max-wait-seconds:600}")
+    private int backpressureMaxWaitSeconds;
+    
+    @Value("${inactivity.outbox.poll-interval-ms:5000}")
+    private long pollIntervalMs;
+    
+    private final AtomicLong pendingDepth = new AtomicLong();
+    
+    private final Map<OutboxNotification.Lane, Integer> laneWorkers = new EnumMap<>(OutboxNotification.Lane.class);
+    
+    private ExecutorService executor;
+    
+    @PostConstruct
+    void start() {
+        // Every lane keeps at least one consumer of its own, so no lane can be starved by another
+        laneWorkers.put(OutboxNotification.Lane.REVEAL, Math.max(revealWorkers, 1));
+        laneWorkers.put(OutboxNotification.Lane.GRACE, Math.max(graceWorkers, 1));
+        laneWorkers.put(OutboxNotification.Lane.FINAL_WEEK, Math.max(finalWeekWorkers, 1));
+        laneWorkers.put(OutboxNotification.Lane.ROUTINE, Math.max(routineWorkers, 1));
+        int workers = laneWorkers.values().stream().mapToInt(Integer::intValue).sum();
+        executor = Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("outbox-worker-"));
+        meterRegistry.gauge("notification.outbox.depth", pendingDepth);
+    }
+    
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+    
+    @Scheduled(fixedDelayString = "${inactivity.outbox.poll-interval-ms:5000}")
+    public void drain() {
+        refreshDepth();
+        List<Future<Integer>> consumers = new ArrayList<>();
+        laneWorkers.forEach((lane, count) -> {
+            for (int i = 0; i < count; i++) {
+                consumers.add(executor.submit(() -> drainLane(lane)));
+            }
+        });
+        
+        int sent = 0;
+        for (Future<Integer> consumer : consumers) {
+            try {
+                sent += consumer.get();
+            } catch (ExecutionException e) {
+                log.error("Outbox consumer failed", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (sent > 0) {
+            log.info("Outbox sent {} notifications", sent);
+        }
+    }
+    
+    /**
+     * Backpressure for the sweep: blocks the caller while maxPending or more notifications are waiting
+     * to be sent, so a large sweep cannot run further ahead of the rate-limited senders. Gives up after
+     * backpressureMaxWaitSeconds so a stuck outbox cannot stall the sweep forever.
+     */
+    public void awaitCapacity() {
+        if (maxPending <= 0) {
+            return;
+        }
+        long depth = refreshDepth();
+        if (depth < maxPending) {
+            return;
+        }
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(backpressureMaxWaitSeconds);
+        log.info("Outbox holds {} pending notifications, holding the sweep back", depth);
+        while (depth >= maxPending) {
+            if (System.nanoTime() >= deadline) {
+                log.warn("Outbox still holds {} pending notifications after {}s, continuing the sweep",
+                        depth, backpressureMaxWaitSeconds);
+                break;
+            }
+            try {
+                Thread.sleep(pollIntervalMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            depth = refreshDepth();
+        }
+        meterRegistry.timer("inactivity.sweep.backpressure").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+    
+    private long refreshDepth() {
+        long depth = outboxRepository.countByStatus(OutboxNotification.Status.PENDING);
+        pendingDepth.set(depth);
+        return depth;
+    }
+    
+    /**
+     * A consumer works its own lane first and, only when that is empty, takes one batch from the most
+     * urgent other lane that has work before checking its own lane again. So spare capacity goes to
+     * reveals ahead of routine warnings without any lane losing its own consumers.
+     */
+    int drainLane(OutboxNotification.Lane lane) {
+        int sent = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            List<OutboxNotification> batch = claimBatch(lane);
+            if (batch.isEmpty()) {
+                batch = claimFromOtherLanes(lane);
+            }
+            if (batch.isEmpty()) {
+                break;
+            }
+            sent += deliver(batch);
+        }
+        return sent;
+    }
+    
+    private List<OutboxNotification> claimFromOtherLanes(OutboxNotification.Lane ownLane) {
+        for (OutboxNotification.Lane lane : OutboxNotification.Lane.values()) {
+            if (lane != ownLane) {
+                List<OutboxNotification> batch = claimBatch(lane);
+                if (!batch.isEmpty()) {
+                    return batch;
+                }
+            }
+        }
+        return List.of();
+    }
+    
+    /**
+     * Claims up to batchSize due rows of the lane in a short transaction and leases them for leaseSeconds,
+     * together with any rows that can be coalesced with them.
+     */
+    public List<OutboxNotification> claimBatch(OutboxNotification.Lane lane) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        return transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<OutboxNotification> batch = new ArrayList<>(outboxRepository.findClaimable(
+                    OutboxNotification.Status.PENDING, lane, now, PageRequest.of(0, batchSize)));
+            batch.addAll(claimCoalescible(batch));
+            for (OutboxNotification notification : batch) {
+                notification.setAttempts(notification.getAttempts() + 1);
+                notification.setNextAttemptAt(now.plusSeconds(leaseSeconds));
+            }
+            return batch;
+        });
+    }
+    
+    /**
+     * Coalescing stage: also claims the unsent reveal emails, due or still in their coalescing window,
+     * to the recipients of the batch's reveal emails, so each contact gets one digest.
+     */
+    private List<OutboxNotification> claimCoalescible(List<OutboxNotification> batch) {
+        Set<String> recipients = batch.stream()
+                .filter(EmailService::isCoalescible)
+                .map(OutboxNotification::getRecipient)
+                .collect(Collectors.toSet());
+        if (recipients.isEmpty()) {
+            return List.of();
+        }
+        List<OutboxNotification> siblings = outboxRepository.findCoalescible(OutboxNotification.Status.PENDING,
+                OutboxNotification.Type.VAULT_REVEAL, OutboxNotification.Channel.EMAIL, recipients,
+                batch.stream().map(OutboxNotification::getId).toList(), PageRequest.of(0, batchSize));
+        meterRegistry.counter("notification.outbox.coalesced").increment(siblings.size());
+        return siblings;
+    }
+    
+    /**
+     * Sends a claimed batch through the channel bulkheads of {@link NotificationRouter}, then records
+     * the outcome: one UPDATE for everything sent, and a retry with exponential backoff, or the DEAD
+     * state once maxAttempts is used up, for each failure. Notifications a channel refused without
+     * trying, typically because its circuit is open, are put back without using up an attempt.
+     * @return number of notifications sent
+     */
+    public int deliver(List<OutboxNotification> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        Timer sendTimer = meterRegistry.timer("notification.outbox.send");
+        Map<Long, Exception> failures = sendTimer.record(() -> notificationRouter.deliver(batch));
+        
+        List<Long> sentIds = new ArrayList<>();
+        List<OutboxNotification> failed = new ArrayList<>();
+        Map<Long, ChannelUnavailableException> deferred = new HashMap<>();
+        for (OutboxNotification notification : batch) {
+            Exception failure = failures.get(notification.getId());
+            if (failure == null) {
+                sentIds.add(notification.getId());
+                recordLatency(notification);
+            } else if (failure instanceof ChannelUnavailableException unavailable && unavailable.isDeferred()) {
+                deferred.put(notification.getId(), unavailable);
+            } else {
+                log.warn("Outbox notification {} failed on attempt {}: {}", notification.getId(),
+                        notification.getAttempts(), failure.getMessage());
+                notification.setLastError(failure.getMessage());
+                failed.add(notification);
+            }
+        }
+        
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            if (!sentIds.isEmpty()) {
+                outboxRepository.markSent(sentIds, now);
+            }
+            for (OutboxNotification notification : failed) {
+                outboxRepository.findById(notification.getId()).ifPresent(row -> scheduleRetry(row,
+                        notification.getLastError(), now));
+            }
+            deferred.forEach((id, unavailable) -> outboxRepository.findById(id)
+                    .ifPresent(row -> defer(row, unavailable, now)));
+        });
+        if (!deferred.isEmpty()) {
+            log.info("Deferred {} outbox notifications: {}", deferred.size(),
+                    deferred.values().iterator().next().getMessage());
+        }
+        meterRegistry.counter("notification.outbox.sent").increment(sentIds.size());
+        return sentIds.size();
+    }
+    
+    // Queue-to-sent time per lane, the number that shows whether reveals really overtake routine mail
+    private void recordLatency(OutboxNotification notification) {
+        if (notification.getCreatedAt() != null) {
+            meterRegistry.timer("notification.outbox.latency", "lane", notification.getLane().name().toLowerCase())
+                    .record(Duration.between(notification.getCreatedAt(), LocalDateTime.now()));
+        }
+    }
+    
+    /**
+     * Hands back the attempt the claim took and waits until the channel is expected back, but at
+     * least backoffSeconds so the deferred rows are not claimed again straight away.
+     */
+    private void defer(OutboxNotification row, ChannelUnavailableException unavailable, LocalDateTime now) {
+        row.setAttempts(Math.max(row.getAttempts() - 1, 0));
+        row.setLastError(unavailable.getMessage());
+        row.setNextAttemptAt(now.plusSeconds(Math.max(unavailable.getRetryAfter().toSeconds() + 1, backoffSeconds)));
+        meterRegistry.counter("notification.outbox.deferred").increment();
+    }
+    
+    private void scheduleRetry(OutboxNotification row, String error, LocalDateTime now) {
+        row.setLastError(error != null && error.length() > 1000 ? error.substring(0, 1000) : error);
+        if (row.getAttempts() >= maxAttempts) {
+            row.setStatus(OutboxNotification.Status.DEAD);
+            row.setLinkToken(null);
+            meterRegistry.counter("notification.outbox.dead").increment();
+            log.error("Outbox notification {} to {} moved to dead letter after {} attempts",
+                    row.getId(), row.getRecipient(), row.getAttempts());
+            return;
+        }
+        // 30s, 1m, 2m, 4m, ... capped at maxBackoffSeconds
+        long backoff = Math.min((long) backoffSeconds << Math.min(row.getAttempts() - 1, 20), maxBackoffSeconds);
+        row.setNextAttemptAt(now.plusSeconds(backoff));
+        meterRegistry.counter("notification.outbox.retried").increment();
+    }
+}
@@ -0,0 +1,142 @@
+package com.lifevault.scheduler;
+
+import com.lifevault.entity.User.InactivityMilestone;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer meters of the inactivity sweep, exposed under /actuator/metrics/inactivity.sweep.*.
+ */
+@Component
+public class SweepMetrics {
+    
+    public enum Phase {
+        DB_READ, TOKEN, NOTIFY, ACTIVITY_LOG, DB_WRITE
+    }
+    
+    private final MeterRegistry registry;
+    private final Map<Phase, Timer> phaseTimers = new EnumMap<>(Phase.class);
+    private final Counter usersScanned;
+    private final Counter reveals;
+    private final Counter duplicatesSkipped;
+    private final Timer shardTimer;
+    
+    public SweepMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Phase phase : Phase.values()) {
+            phaseTimers.put(phase, Timer.builder("inactivity.sweep.phase")
+                    .tag("phase", phase.name().toLowerCase())
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        usersScanned = registry.counter("inactivity.sweep.users.scanned");
+        reveals = registry.counter("inactivity.sweep.reveals");
+        duplicatesSkipped = registry.counter("inactivity.sweep.duplicates.skipped");
+        shardTimer = registry.timer("inactivity.sweep.shard");
+    }
+    
+    /**
+     * Users left alone because the notification ledger showed their milestone was already queued.
+     */
+    public void duplicatesSkipped(int count) {
+        duplicatesSkipped.increment(count);
+    }
+    
+    public ShardStats newShard() {
+        return new ShardStats();
+    }
+    
+    /**
+     * Samples of one shard. Each sample also goes to the shared timers; the shard keeps its own
+     * copy to compute the p99 values stored in sweep_runs.
+     */
+    public class ShardStats {
+        
+        private final long startedAt = System.nanoTime();
+        private final Map<Phase, List<Long>> samples = new EnumMap<>(Phase.class);
+        private int usersProcessed;
+        private int warningsSent;
+        private int reveals;
+        
+        public <T> T time(Phase phase, Supplier<T> action) {
+            long start = System.nanoTime();
+            try {
+                return action.get();
+            } finally {
+                record(phase, System.nanoTime() - start);
+            }
+        }
+        
+        public void time(Phase phase, Runnable action) {
+            time(phase, () -> {
+                action.run();
+                return null;
+            });
+        }
+        
+        private void record(Phase phase, long nanos) {
+            phaseTimers.get(phase).record(nanos, TimeUnit.NANOSECONDS);
+            samples.computeIfAbsent(phase, p -> new ArrayList<>()).add(nanos);
+        }
+        
+        public void usersProcessed(int count) {
+            usersProcessed += count;
+            usersScanned.increment(count);
+        }
+        
+        public void warningSent(InactivityMilestone milestone) {
+            warningsSent++;
+            registry.counter("inactivity.sweep.notifications", "type", milestone.name().toLowerCase()).increment();
+        }
+        
+        public void vaultRevealed() {
+            reveals++;
+            SweepMetrics.this.reveals.increment();
+        }
+        
+        /**
+         * Stops the shard clock.
+         * @return elapsed milliseconds, at least 1
+         */
+        public long finish() {
+            long elapsedNanos = System.nanoTime() - startedAt;
+            shardTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+            return Math.max(1, elapsedNanos / 1_000_000);
+        }
+        
+        /**
+         * @return the shard's p99 for the phase in milliseconds, or null if the phase never ran
+         */
+        public Double p99Millis(Phase phase) {
+            List<Long> phaseSamples = samples.get(phase);
+            if (phaseSamples == null || phaseSamples.isEmpty()) {
+                return null;
+            }
+            Collections.sort(phaseSamples);
+            int rank = (int) Math.ceil(phaseSamples.size() * 0.99) - 1;
+            return phaseSamples.get(rank) / 1_000_000.0;
+        }
+        
+        public int getUsersProcessed() {
+            return usersProcessed;
+        }
+        
+        public int getWarningsSent() {
+            return warningsSent;
+        }
+        
+        public int getReveals() {
+            return reveals;
+        }
+    }
+}
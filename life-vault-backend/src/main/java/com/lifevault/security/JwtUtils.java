@@ -2,65 +2,170 @@ package com.lifevault.security;
 
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
+@Slf4j
 public class JwtUtils {
     
+    // Primary key of the user the token was issued to, next to the email in the subject
+    public static final String USER_ID_CLAIM = "uid";
+    
     @Value("${jwt.secret}")
     private String jwtSecret;
     
     @Value("${jwt.expiration}")
     private int jwtExpirationMs;
     
-    private Key getSigningKey() {
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes());
+    // Verified tokens remembered so a client's repeated requests skip the HS512 check; 0 disables
+    @Value("${jwt.verified-cache-size:10000}")
+    private int verifiedCacheSize;
+    
+    private Key signingKey;
+    
+    // Immutable and thread-safe, so one instance serves every request
+    private JwtParser parser;
+    
+    // SHA-256 of the token -> what it says; read on every authenticated request, so lock-free
+    private final Map<ByteBuffer, VerifiedToken> verifiedTokens = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    void init() {
+        signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        parser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
     }
     
     public String generateJwtToken(Authentication authentication) {
         String username = authentication.getName();
         
-        return Jwts.builder()
-                .setSubject(username)
+        JwtBuilder builder = Jwts.builder()
+                .setSubject(username);
+        if (authentication.getPrincipal() instanceof UserPrincipal principal) {
+            builder.claim(USER_ID_CLAIM, principal.getId());
+        }
+        return builder
                 .setIssuedAt(new Date())
                 .setExpiration(new Date((new Date()).getTime() + jwtExpirationMs))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS512)
+                .signWith(signingKey, SignatureAlgorithm.HS512)
                 .compact();
     }
     
-    public String getUserNameFromJwtToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
-    }
-    
-    public boolean validateJwtToken(String authToken) {
+    /**
+     * Verifies the token and returns what it says, or null if it is invalid or expired. A token
+     * verified before is recognised by its digest and only has its expiry re-checked.
+     */
+    public VerifiedToken parse(String token) {
+        if (token == null || token.isEmpty()) {
+            log.debug("JWT claims string is empty");
+            return null;
+        }
+        ByteBuffer digest = digest(token);
+        VerifiedToken cached = verifiedTokens.get(digest);
+        if (cached != null) {
+            if (cached.getExpiresAt().isAfter(Instant.now())) {
+                return cached;
+            }
+            verifiedTokens.remove(digest);
+            log.debug("JWT token is expired: {}", cached.getExpiresAt());
+            return null;
+        }
+        
         try {
-            Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(authToken);
-            return true;
-        } catch (SecurityException e) {
-            System.err.println("Invalid JWT signature: " + e.getMessage());
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            Date expiration = claims.getExpiration();
+            VerifiedToken verified = new VerifiedToken(claims.getSubject(), claims.get(USER_ID_CLAIM, Long.class),
+                    expiration != null ? expiration.toInstant() : null);
+            // Only tokens that expire are cached, so an entry can never outlive its token
+            if (expiration != null && verifiedCacheSize > 0) {
+                if (verifiedTokens.size() >= verifiedCacheSize) {
+                    evict();
+                }
+                verifiedTokens.put(digest, verified);
+            }
+            return verified;
+        } catch (io.jsonwebtoken.security.SecurityException e) {
+            log.warn("Invalid JWT signature: {}", e.getMessage());
         } catch (MalformedJwtException e) {
-            System.err.println("Invalid JWT token: " + e.getMessage());
+            log.warn("Invalid JWT token: {}", e.getMessage());
         } catch (ExpiredJwtException e) {
-            System.err.println("JWT token is expired: " + e.getMessage());
+            log.debug("JWT token is expired: {}", e.getMessage());
         } catch (UnsupportedJwtException e) {
-            System.err.println("JWT token is unsupported: " + e.getMessage());
+            log.warn("JWT token is unsupported: {}", e.getMessage());
         } catch (IllegalArgumentException e) {
-            System.err.println("JWT claims string is empty: " + e.getMessage());
+            log.debug("JWT claims string is empty: {}", e.getMessage());
         }
         
-        return false;
+        return null;
+    }
+    
+    public String getUserNameFromJwtToken(String token) {
+        VerifiedToken verified = parse(token);
+        if (verified == null) {
+            throw new JwtException("Invalid JWT token");
+        }
+        return verified.getSubject();
+    }
+    
+    public boolean validateJwtToken(String authToken) {
+        return parse(authToken) != null;
+    }
+    
+    /**
+     * The fields of a verified token the application reads. Immutable, unlike the parser's Claims, so
+     * one cached instance can be handed to every request presenting the token.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class VerifiedToken {
+        private final String subject;
+        // Null for tokens issued before the claim was added
+        private final Long userId;
+        // Null for a token without expiry, which is never cached
+        private final Instant expiresAt;
+    }
+    
+    /**
+     * Makes room once the cache is full: expired tokens go first and, if that frees too little, an
+     * arbitrary tenth of the rest. Approximate, as concurrent requests may overshoot the size a little,
+     * but without a lock that every request would have to take.
+     */
+    private void evict() {
+        Instant now = Instant.now();
+        verifiedTokens.values().removeIf(verified -> !verified.getExpiresAt().isAfter(now));
+        Iterator<ByteBuffer> keys = verifiedTokens.keySet().iterator();
+        int excess = verifiedTokens.size() - verifiedCacheSize * 9 / 10;
+        while (excess-- > 0 && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+    
+    private static ByteBuffer digest(String token) {
+        try {
+            // UTF-8, so that no two distinct strings share a key
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256")
+                    .digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,96 @@
+package com.lifevault.security;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Principals of recently authenticated users, keyed by email (the JWT subject), so a request with
+ * a valid token needs no database round trip. Entries live for at most ttl-seconds and the least
+ * recently used are evicted beyond max-size. A user's entry is invalidated whenever something the
+ * principal carries changes: by UserService for the email and password, by {@link UserAccessListener}
+ * for the active and admin flags. The TTL bounds how long other nodes keep serving the old one.
+ */
+@Component
+public class PrincipalCache {
+    
+    @Autowired
+    private UserDetailsService userDetailsService;
+    
+    @Value("${security.principal-cache.ttl-seconds:60}")
+    private int ttlSeconds;
+    
+    @Value("${security.principal-cache.max-size:10000}")
+    private int maxSize;
+    
+    private Map<String, CachedPrincipal> principals;
+    
+    @PostConstruct
+    void init() {
+        principals = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPrincipal> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+    
+    /**
+     * The cached principal for the email, loading it through the UserDetailsService when absent or stale.
+     */
+    public UserPrincipal get(String email) {
+        long now = System.nanoTime();
+        CachedPrincipal cached = principals.get(email);
+        if (cached != null && now - cached.loadedAt < ttlSeconds * 1_000_000_000L) {
+            return cached.principal;
+        }
+        UserPrincipal principal = (UserPrincipal) userDetailsService.loadUserByUsername(email);
+        if (maxSize > 0) {
+            principals.put(email, new CachedPrincipal(principal, now));
+        }
+        return principal;
+    }
+    
+    /**
+     * Caches a principal that was just loaded elsewhere, such as by the login's authentication.
+     */
+    public void put(UserPrincipal principal) {
+        if (maxSize > 0) {
+            principals.put(principal.getEmail(), new CachedPrincipal(principal, System.nanoTime()));
+        }
+    }
+    
+    /**
+     * Drops the user's entry now and, inside a transaction, again once it commits, so a request
+     * racing the change cannot re-cache the row as it was before the commit.
+     */
+    public void invalidate(String email) {
+        principals.remove(email);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    principals.remove(email);
+                }
+            });
+        }
+    }
+    
+    private static class CachedPrincipal {
+        private final UserPrincipal principal;
+        private final long loadedAt;
+        
+        private CachedPrincipal(UserPrincipal principal, long loadedAt) {
+            this.principal = principal;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.lifevault.security;
+
+import com.lifevault.entity.User;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Evicts a user's cached principal whenever the account's access changes through JPA: isActive or
+ * isAdmin updated, or the user deleted. Changes made directly in the database bypass this; the
+ * principal cache's TTL bounds how long those take to apply.
+ */
+@Component
+public class UserAccessListener {
+    
+    // Looked up on use: the cache's UserDetailsService needs the repositories, which need this
+    // listener, and JPA-only contexts have no cache at all
+    @Autowired
+    private ObjectProvider<PrincipalCache> principalCache;
+    
+    @PostUpdate
+    void onUpdate(User user) {
+        if (user.accessChanged()) {
+            principalCache.ifAvailable(cache -> cache.invalidate(user.getEmail()));
+        }
+    }
+    
+    @PostRemove
+    void onRemove(User user) {
+        principalCache.ifAvailable(cache -> cache.invalidate(user.getEmail()));
+    }
+}
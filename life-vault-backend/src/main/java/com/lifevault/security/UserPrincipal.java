@@ -0,0 +1,87 @@
+package com.lifevault.security;
+
+import com.lifevault.entity.User;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * What an authenticated request knows about its user: a detached, immutable snapshot, so it can be
+ * cached and shared between requests without holding on to the JPA entity and its collections.
+ */
+public final class UserPrincipal implements UserDetails {
+    
+    private static final Set<GrantedAuthority> ADMIN_AUTHORITIES = Set.of(new SimpleGrantedAuthority("ROLE_ADMIN"));
+    
+    private final Long id;
+    private final String email;
+    private final String password;
+    private final boolean active;
+    private final boolean admin;
+    
+    public UserPrincipal(Long id, String email, String password, boolean active, boolean admin) {
+        this.id = id;
+        this.email = email;
+        this.password = password;
+        this.active = active;
+        this.admin = admin;
+    }
+    
+    public static UserPrincipal from(User user) {
+        return new UserPrincipal(user.getId(), user.getEmail(), user.getPassword(),
+                Boolean.TRUE.equals(user.getIsActive()), Boolean.TRUE.equals(user.getIsAdmin()));
+    }
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public String getEmail() {
+        return email;
+    }
+    
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return admin ? ADMIN_AUTHORITIES : Collections.emptySet();
+    }
+    
+    @Override
+    public String getPassword() {
+        return password;
+    }
+    
+    @Override
+    public String getUsername() {
+        return email;
+    }
+    
+    @Override
+    public boolean isAccountNonExpired() {
+        return true;
+    }
+    
+    @Override
+    public boolean isAccountNonLocked() {
+        return active;
+    }
+    
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return true;
+    }
+    
+    @Override
+    public boolean isEnabled() {
+        return active;
+    }
+    
+    @Override
+    public String toString() {
+        // Never the password hash
+        return "UserPrincipal[id=" + id + ", email=" + email + ", active=" + active + ", admin=" + admin + "]";
+    }
+}
@@ -0,0 +1,142 @@
+package com.lifevault.service;
+
+import com.lifevault.entity.User;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Stateless one-click activity tokens: userId.version.issuedAt.signature, signed with HMAC-SHA256.
+ * Checking one needs no lookup at all, so a forged or expired link is rejected before the database
+ * is touched. The version is the per-user nonce: issuing a token bumps it, which retires the
+ * previous link, and UserService bumps it again when the link is used.
+ * <p>
+ * The HMAC key is never the configured secret itself but an HKDF-SHA256 sub-key of it under its own
+ * label, so it differs from the JWT signing key even where the secret falls back to jwt.secret.
+ */
+@Service
+public class ActivityTokenService {
+    
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    private static final String KEY_LABEL = "lifevault activity-token v1";
+    
+    @Value("${inactivity.activity-token.secret:${jwt.secret}}")
+    private String secret;
+    
+    @Value("${inactivity.activity-token.validity-days:7}")
+    private int validityDays;
+    
+    private SecretKeySpec key;
+    
+    @PostConstruct
+    void init() {
+        key = new SecretKeySpec(deriveKey(secret.getBytes(StandardCharsets.UTF_8), KEY_LABEL, 32), ALGORITHM);
+    }
+    
+    /**
+     * HKDF-SHA256 (RFC 5869) without salt: the label separates this key from anything else derived
+     * from, or signed with, the same secret.
+     */
+    static byte[] deriveKey(byte[] secret, String label, int length) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            // Extract; an absent salt is a hash length of zeros
+            mac.init(new SecretKeySpec(new byte[32], ALGORITHM));
+            byte[] pseudoRandomKey = mac.doFinal(secret);
+            // Expand
+            mac.init(new SecretKeySpec(pseudoRandomKey, ALGORITHM));
+            byte[] info = label.getBytes(StandardCharsets.UTF_8);
+            byte[] derived = new byte[length];
+            byte[] block = new byte[0];
+            for (int offset = 0, counter = 1; offset < length; offset += block.length, counter++) {
+                mac.update(block);
+                mac.update(info);
+                mac.update((byte) counter);
+                block = mac.doFinal();
+                System.arraycopy(block, 0, derived, offset, Math.min(block.length, length - offset));
+            }
+            return derived;
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Failed to derive activity token key", e);
+        }
+    }
+    
+    /**
+     * Bumps the user's token version and returns a token for the new one. The user is not saved here.
+     */
+    public String issue(User user, Instant now) {
+        int version = user.getActivityTokenVersion() + 1;
+        user.setActivityTokenVersion(version);
+        String payload = user.getId() + "." + version + "." + now.getEpochSecond();
+        return payload + "." + ENCODER.encodeToString(sign(payload));
+    }
+    
+    /**
+     * Claims of the token, or null if it is malformed, not signed with our key or older than the validity period.
+     */
+    public Claims verify(String token, Instant now) {
+        if (token == null) {
+            return null;
+        }
+        int signatureStart = token.lastIndexOf('.');
+        if (signatureStart < 0) {
+            return null;
+        }
+        String payload = token.substring(0, signatureStart);
+        String[] parts = payload.split("\\.");
+        if (parts.length != 3) {
+            return null;
+        }
+        
+        try {
+            byte[] signature = DECODER.decode(token.substring(signatureStart + 1));
+            // Constant-time, so response timing says nothing about how much of a forged signature was right
+            if (!MessageDigest.isEqual(sign(payload), signature)) {
+                return null;
+            }
+            Claims claims = new Claims(Long.parseLong(parts[0]), Integer.parseInt(parts[1]),
+                    Instant.ofEpochSecond(Long.parseLong(parts[2])));
+            if (!now.isBefore(claims.getIssuedAt().plus(Duration.ofDays(validityDays)))) {
+                return null;
+            }
+            return claims;
+        } catch (IllegalArgumentException e) {
+            // Bad Base64 or numbers; NumberFormatException is a subclass
+            return null;
+        }
+    }
+    
+    private byte[] sign(String payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Failed to sign activity token", e);
+        }
+    }
+    
+    /**
+     * Claims of a token whose signature and age have been checked; the version still has to match the user's.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class Claims {
+        private final long userId;
+        private final int version;
+        private final Instant issuedAt;
+    }
+}
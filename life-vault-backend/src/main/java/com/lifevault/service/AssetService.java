@@ -30,17 +30,16 @@ public class AssetService {
     @Autowired
     private ActivityLogService activityLogService;
     
-    public List<AssetDto> getUserAssets(String userEmail) {
-        User user = getUserByEmail(userEmail);
-        List<Asset> assets = assetRepository.findByUserIdAndIsActiveTrue(user.getId());
+    public List<AssetDto> getUserAssets(Long userId) {
+        List<Asset> assets = assetRepository.findByUserIdAndIsActiveTrue(userId);
         
         return assets.stream()
                 .map(this::convertToDto)
                 .collect(Collectors.toList());
     }
     
-    public AssetDto createAsset(String userEmail, AssetDto assetDto) {
-        User user = getUserByEmail(userEmail);
+    public AssetDto createAsset(Long userId, AssetDto assetDto) {
+        User user = userReference(userId);
         
         Asset asset = new Asset();
         asset.setUser(user);
@@ -60,9 +59,8 @@ public class AssetService {
         return convertToDto(savedAsset);
     }
     
-    public AssetDto updateAsset(String userEmail, Long assetId, AssetDto assetDto) {
-        User user = getUserByEmail(userEmail);
-        Asset asset = assetRepository.findByIdAndUserId(assetId, user.getId())
+    public AssetDto updateAsset(Long userId, Long assetId, AssetDto assetDto) {
+        Asset asset = assetRepository.findByIdAndUserId(assetId, userId)
                 .orElseThrow(() -> new RuntimeException("Asset not found"));
         
         asset.setName(assetDto.getName());
@@ -76,20 +74,19 @@ public class AssetService {
         }
         
         Asset savedAsset = assetRepository.save(asset);
-        activityLogService.logActivity(user, "ASSET_UPDATED", "Updated asset: " + asset.getName());
+        activityLogService.logActivity(asset.getUser(), "ASSET_UPDATED", "Updated asset: " + asset.getName());
         
         return convertToDto(savedAsset);
     }
     
-    public void deleteAsset(String userEmail, Long assetId) {
-        User user = getUserByEmail(userEmail);
-        Asset asset = assetRepository.findByIdAndUserId(assetId, user.getId())
+    public void deleteAsset(Long userId, Long assetId) {
+        Asset asset = assetRepository.findByIdAndUserId(assetId, userId)
                 .orElseThrow(() -> new RuntimeException("Asset not found"));
         
         asset.setIsActive(false);
         assetRepository.save(asset);
         
-        activityLogService.logActivity(user, "ASSET_DELETED", "Deleted asset: " + asset.getName());
+        activityLogService.logActivity(asset.getUser(), "ASSET_DELETED", "Deleted asset: " + asset.getName());
     }
     
     private AssetDto convertToDto(Asset asset) {
@@ -112,8 +109,12 @@ public class AssetService {
         return dto;
     }
     
-    private User getUserByEmail(String email) {
-        return userRepository.findByEmail(email)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+    // A reference spares loading the user; the existence check keeps a deleted account from ending
+    // in a foreign-key violation at insert, answering "User not found" as a full load would
+    private User userReference(Long userId) {
+        if (!userRepository.existsById(userId)) {
+            throw new UsernameNotFoundException("User not found");
+        }
+        return userRepository.getReferenceById(userId);
     }
-}
\ No newline at end of file
+}
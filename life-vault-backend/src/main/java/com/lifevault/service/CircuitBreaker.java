@@ -0,0 +1,89 @@
+package com.lifevault.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Consecutive-failure circuit breaker. After failureThreshold failures in a row the circuit opens and
+ * calls are refused for openDuration; then a single trial call is let through, which closes the
+ * circuit on success or opens it again on failure.
+ */
+public class CircuitBreaker {
+    
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+    
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier nanoTime;
+    
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+    
+    public CircuitBreaker(int failureThreshold, long openDuration, TimeUnit unit) {
+        this(failureThreshold, openDuration, unit, System::nanoTime);
+    }
+    
+    CircuitBreaker(int failureThreshold, long openDuration, TimeUnit unit, LongSupplier nanoTime) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = unit.toNanos(openDuration);
+        this.nanoTime = nanoTime;
+    }
+    
+    /**
+     * Whether a call may go ahead. Every permitted call must be followed by onSuccess or onFailure.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && nanoTime.getAsLong() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.OPEN || (state == State.HALF_OPEN && trialInFlight)) {
+            return false;
+        }
+        if (state == State.HALF_OPEN) {
+            trialInFlight = true;
+        }
+        return true;
+    }
+    
+    /**
+     * Gives back a permitted call that was never made, so a trial call can still be let through.
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+    
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+    
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = nanoTime.getAsLong();
+            trialInFlight = false;
+        }
+    }
+    
+    public synchronized State getState() {
+        return state;
+    }
+    
+    /**
+     * Time left until the open circuit lets a trial call through, or zero if it is not open.
+     */
+    public synchronized long remainingOpenNanos() {
+        return state == State.OPEN ? Math.max(openNanos - (nanoTime.getAsLong() - openedAt), 0) : 0;
+    }
+}
@@ -0,0 +1,54 @@
+package com.lifevault.service;
+
+import com.lifevault.entity.TrustedContact;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HexFormat;
+
+/**
+ * Tokens in the links sent to trusted contacts (contact verification, vault access). Only the
+ * SHA-256 of a token is stored, in a unique fixed-width column, so a lookup is one index probe and
+ * a leaked table holds no usable links. The plain token exists only in the transaction that
+ * issued it, long enough to render the links.
+ */
+@Service
+public class ContactTokenService {
+    
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    
+    @Value("${inactivity.contact-token.validity-days:30}")
+    private int validityDays;
+    
+    /**
+     * Gives the contact a fresh token, replacing any earlier one, and returns it. The contact is not saved here.
+     */
+    public String issue(TrustedContact contact, LocalDateTime now) {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        String token = ENCODER.encodeToString(bytes);
+        contact.setVerificationToken(token);
+        contact.setVerificationTokenHash(hash(token));
+        contact.setVerificationTokenExpiresAt(now.plusDays(validityDays));
+        return token;
+    }
+    
+    /**
+     * Hex-encoded SHA-256 of the token, as stored in trusted_contacts.verification_token_hash.
+     */
+    public static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+    }
+}
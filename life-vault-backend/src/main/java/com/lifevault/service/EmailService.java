@@ -1,9 +1,16 @@
 package com.lifevault.service;
 
+import com.lifevault.entity.OutboxNotification;
 import com.lifevault.entity.TrustedContact;
 import com.lifevault.entity.User;
+import com.lifevault.entity.User.InactivityMilestone;
+import com.lifevault.repository.OutboxNotificationRepository;
+import com.lifevault.repository.TrustedContactRepository;
+import com.lifevault.service.NotificationTemplates.RenderedEmail;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
@@ -11,35 +18,69 @@ import org.springframework.stereotype.Service;
 
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
-public class EmailService {
+public class EmailService implements NotificationChannel {
+    
+    private static final String INACTIVITY_WARNING_SUBJECT = "Life Vault - Activity Check Required";
+    private static final String VAULT_REVEAL_SUBJECT = "Life Vault - Important Information";
+    private static final String VAULT_REVEAL_DIGEST_SUBJECT = "Life Vault - Important Information about several people";
     
     @Autowired
     private JavaMailSender mailSender;
     
+    @Autowired
+    private OutboxNotificationRepository outboxRepository;
+    
+    @Autowired
+    private MailTransportPool mailTransportPool;
+    
+    @Autowired
+    private NotificationTemplates notificationTemplates;
+    
+    @Autowired
+    private SendRateLimiter sendRateLimiter;
+    
+    @Autowired
+    private InactivityPolicy inactivityPolicy;
+    
+    @Autowired
+    private TrustedContactRepository trustedContactRepository;
+    
+    @Autowired
+    private VaultLinks vaultLinks;
+    
     @Value("${spring.mail.username}")
     private String fromEmail;
     
     @Value("${cors.allowed-origins}")
     private String appUrl;
     
+    @Value("${inactivity.outbox.coalesce-window-seconds:120}")
+    private int coalesceWindowSeconds;
+    
+    @Override
+    public OutboxNotification.Channel getChannel() {
+        return OutboxNotification.Channel.EMAIL;
+    }
+    
     public void sendContactVerificationEmail(TrustedContact contact) {
         String subject = "Life Vault - Verify Your Email";
         String verificationUrl = appUrl + "/verify-contact/" + contact.getVerificationToken();
-        String message = String.format(
-            "Hello %s,\n\n" +
-            "%s %s has added you as a trusted contact in their Life Vault.\n\n" +
-            "Please click the link below to verify your email address:\n%s\n\n" +
-            "This link will expire in 7 days.\n\n" +
-            "Best regards,\nLife Vault Team",
-            contact.getName(),
-            contact.getUser().getFirstName(),
-            contact.getUser().getLastName(),
-            verificationUrl
-        );
+        RenderedEmail email = notificationTemplates.render(NotificationTemplates.Kind.CONTACT_VERIFICATION,
+                contact.getName(), contact.getUser().getFirstName(), contact.getUser().getLastName(), verificationUrl);
         
-        sendSimpleEmail(contact.getEmail(), subject, message);
+        sendSimpleEmail(contact.getEmail(), subject, email.getText());
     }
     
     public void sendInactivityWarningEmail(User user) {
@@ -47,85 +88,211 @@ public class EmailService {
     }
     
     public void sendInactivityWarningEmail(User user, String type, long daysInactive, String activityToken) {
+        sendSimpleEmail(user.getEmail(), INACTIVITY_WARNING_SUBJECT,
+                renderInactivityWarning(user, type, daysInactive, activityToken).getText());
+    }
+    
+    /**
+     * Writes the warning to the notification outbox in the caller's transaction; it is sent by
+     * NotificationOutboxWorker once that transaction commits.
+     */
+    public void queueInactivityWarningEmail(User user, String type, long daysInactive, String activityToken) {
+        OutboxNotification.Lane lane = OutboxNotification.Lane.forMilestone(InactivityMilestone.fromLabel(type));
+        queue(OutboxNotification.Type.INACTIVITY_WARNING, lane, user.getId(), user.getEmail(),
+                INACTIVITY_WARNING_SUBJECT, renderInactivityWarning(user, type, daysInactive, activityToken), null, null);
+    }
+    
+    private RenderedEmail renderInactivityWarning(User user, String type, long daysInactive, String activityToken) {
         String verificationUrl = appUrl + "/api/activity/verify/" + activityToken;
-        
-        String subject = "Life Vault - Activity Check Required";
-        String urgency = "";
-        String timeRemaining = "";
-        
         int totalPeriod = user.getInactivityPeriodDays();
+        int gracePeriod = inactivityPolicy.getGracePeriodDays();
         long daysRemaining = totalPeriod - daysInactive;
+        long graceDaysLeft = gracePeriod - (daysInactive - totalPeriod);
+        
+        return notificationTemplates.renderWarning(InactivityMilestone.fromLabel(type),
+                user.getFirstName(), daysInactive, daysRemaining, graceDaysLeft, verificationUrl, appUrl,
+                totalPeriod, gracePeriod);
+    }
+    
+    public void sendVaultRevealNotification(TrustedContact contact, User user) {
+        sendSimpleEmail(contact.getEmail(), VAULT_REVEAL_SUBJECT,
+                renderVaultReveal(contact, user, vaultUrl(contact)).getText());
+    }
+    
+    /**
+     * Outbox counterpart of {@link #sendVaultRevealNotification}, see {@link #queueInactivityWarningEmail}.
+     * Held back for coalesceWindowSeconds, so reveals to the same contact from the rest of the sweep
+     * can still join it in one digest. The row holds the contact's token encrypted, see {@link VaultLinks}.
+     */
+    public void queueVaultRevealNotification(TrustedContact contact, User user) {
+        queue(OutboxNotification.Type.VAULT_REVEAL, OutboxNotification.Lane.REVEAL, user.getId(),
+                contact.getEmail(), VAULT_REVEAL_SUBJECT, renderVaultReveal(contact, user, VaultLinks.PLACEHOLDER),
+                vaultLinks.seal(contact), LocalDateTime.now().plusSeconds(coalesceWindowSeconds));
+    }
+    
+    /**
+     * Whether the notification may be merged with others to the same recipient: reveal emails are,
+     * since one contact can be trusted by several vault owners.
+     */
+    public static boolean isCoalescible(OutboxNotification notification) {
+        return notification.getType() == OutboxNotification.Type.VAULT_REVEAL
+                && notification.getChannel() == OutboxNotification.Channel.EMAIL;
+    }
+    
+    /**
+     * Takes one send-rate permit per message the batch becomes. Reveals sharing a recipient are counted
+     * as the one digest they normally make; a digest split up because a contact was removed meanwhile
+     * sends a message more than was counted.
+     */
+    @Override
+    public boolean throttle(List<OutboxNotification> notifications) {
+        Set<String> digestRecipients = new HashSet<>();
+        int messages = 0;
+        for (OutboxNotification notification : notifications) {
+            if (!isCoalescible(notification) || digestRecipients.add(notification.getRecipient())) {
+                messages++;
+            }
+        }
+        return sendRateLimiter.acquire(messages);
+    }
+    
+    /**
+     * Sends a batch claimed from the outbox over one pooled SMTP connection; the send rate limit was
+     * already waited on in {@link #throttle}. Reveal emails to the same contact go out as a single
+     * digest listing every vault.
+     * @return the exception for each notification that could not be sent, keyed by outbox id
+     */
+    @Override
+    public Map<Long, Exception> deliver(List<OutboxNotification> notifications, Handover handover) {
+        Map<Long, Exception> failures = new HashMap<>();
+        Map<Long, TrustedContact> digestContacts = new HashMap<>();
+        Map<MimeMessage, List<OutboxNotification>> sources = new IdentityHashMap<>();
+        List<MimeMessage> messages = new ArrayList<>();
+        for (List<OutboxNotification> group : coalesce(notifications, digestContacts)) {
+            try {
+                OutboxNotification first = group.get(0);
+                MimeMessage message = group.size() == 1
+                        ? createMessage(first.getRecipient(), first.getSubject(), vaultLinks.fill(first.getBody(), first),
+                                vaultLinks.fill(first.getHtmlBody(), first))
+                        : createDigest(group, digestContacts);
+                messages.add(message);
+                sources.put(message, group);
+            } catch (MessagingException e) {
+                group.forEach(notification -> failures.put(notification.getId(), e));
+            }
+        }
         
-        switch (type) {
-            case "50% warning":
-                urgency = "Routine Check-In";
-                timeRemaining = String.format("You have %d days remaining before the next check.", daysRemaining);
-                break;
-            case "75% warning":
-                urgency = "Important Reminder";
-                timeRemaining = String.format("Only %d days remaining before final notifications begin.", daysRemaining);
-                break;
-            case "final week warning":
-                urgency = "URGENT: Final Week Notice";
-                timeRemaining = String.format("Only %d days left! Daily reminders will be sent.", daysRemaining);
-                break;
-            case "grace period warning":
-                urgency = "CRITICAL: Grace Period Active";
-                long graceDaysLeft = 14 - (daysInactive - totalPeriod);
-                timeRemaining = String.format("Your trusted contacts will be notified in %d days if you don't respond!", graceDaysLeft);
-                break;
-            default:
-                urgency = "Activity Check";
-                timeRemaining = "Please log in to confirm you're okay.";
+        try {
+            mailTransportPool.send(messages, message -> handover.begin(sources.get(message).stream()
+                    .map(OutboxNotification::getId)
+                    .toList()));
+        } catch (MailSendException e) {
+            if (e.getFailedMessages().isEmpty()) {
+                messages.forEach(message -> fail(sources.get(message), e, failures));
+            }
+            e.getFailedMessages().forEach((message, cause) -> fail(sources.get(message), cause, failures));
+        } catch (MailException e) {
+            messages.forEach(message -> fail(sources.get(message), e, failures));
+        }
+        return failures;
+    }
+    
+    /**
+     * Splits the batch into messages: every notification on its own, except reveal emails sharing a
+     * recipient, which are grouped once their contact rows are found (one query for the batch). A
+     * reveal whose contact has been removed since it was queued, or that was queued without its
+     * link token, is sent as queued.
+     */
+    private List<List<OutboxNotification>> coalesce(List<OutboxNotification> notifications,
+                                                    Map<Long, TrustedContact> digestContacts) {
+        List<List<OutboxNotification>> groups = new ArrayList<>();
+        Map<String, List<OutboxNotification>> byRecipient = new LinkedHashMap<>();
+        for (OutboxNotification notification : notifications) {
+            if (isCoalescible(notification)) {
+                byRecipient.computeIfAbsent(notification.getRecipient(), recipient -> new ArrayList<>()).add(notification);
+            } else {
+                groups.add(List.of(notification));
+            }
+        }
+        Map<String, List<OutboxNotification>> shared = new LinkedHashMap<>();
+        byRecipient.forEach((recipient, group) -> {
+            if (group.size() == 1) {
+                groups.add(group);
+            } else {
+                shared.put(recipient, group);
+            }
+        });
+        if (shared.isEmpty()) {
+            return groups;
         }
         
-        String message = String.format(
-            "Hello %s,\n\n" +
-            "[%s]\n\n" +
-            "It's been %d days since your last activity on Life Vault.\n\n" +
-            "%s\n\n" +
-            "━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━\n" +
-            "CLICK HERE TO CONFIRM YOU'RE ACTIVE:\n" +
-            "%s\n" +
-            "━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━\n\n" +
-            "This one-click link will:\n" +
-            "✓ Instantly reset your activity timer\n" +
-            "✓ No login required\n" +
-            "✓ Valid for 7 days\n\n" +
-            "Alternative: You can also log in at: %s\n\n" +
-            "Remember: Your trusted contacts will only be notified if you don't respond " +
-            "for your full inactivity period (%d days) plus a %d-day grace period.\n\n" +
-            "Best regards,\nLife Vault Team",
-            user.getFirstName(),
-            urgency,
-            daysInactive,
-            timeRemaining,
-            verificationUrl,
-            appUrl,
-            totalPeriod,
-            14
-        );
+        Set<Long> userIds = shared.values().stream()
+                .flatMap(List::stream)
+                .map(OutboxNotification::getUserId)
+                .collect(Collectors.toSet());
+        Map<String, Map<Long, TrustedContact>> contacts = new HashMap<>();
+        for (TrustedContact contact : trustedContactRepository.findWithUserByEmailsAndUserIds(shared.keySet(), userIds)) {
+            contacts.computeIfAbsent(contact.getEmail(), email -> new HashMap<>()).put(contact.getUser().getId(), contact);
+        }
         
-        sendSimpleEmail(user.getEmail(), subject, message);
+        for (List<OutboxNotification> group : shared.values()) {
+            List<OutboxNotification> digest = new ArrayList<>();
+            for (OutboxNotification notification : group) {
+                TrustedContact contact = contacts.getOrDefault(notification.getRecipient(), Map.of())
+                        .get(notification.getUserId());
+                if (contact == null || notification.getLinkToken() == null) {
+                    groups.add(List.of(notification));
+                } else {
+                    digestContacts.put(notification.getId(), contact);
+                    digest.add(notification);
+                }
+            }
+            if (!digest.isEmpty()) {
+                groups.add(digest);
+            }
+        }
+        return groups;
     }
     
-    public void sendVaultRevealNotification(TrustedContact contact, User user) {
-        String subject = "Life Vault - Important Information";
-        String vaultUrl = appUrl + "/vault-access/" + contact.getVerificationToken();
-        String message = String.format(
-            "Hello %s,\n\n" +
-            "%s %s has not responded to our activity checks for an extended period.\n\n" +
-            "As a trusted contact, you now have access to their asset information.\n\n" +
-            "Access the vault here: %s\n\n" +
-            "Please handle this information with care.\n\n" +
-            "Best regards,\nLife Vault Team",
-            contact.getName(),
-            user.getFirstName(),
-            user.getLastName(),
-            vaultUrl
-        );
-        
-        sendSimpleEmail(contact.getEmail(), subject, message);
+    private MimeMessage createDigest(List<OutboxNotification> group, Map<Long, TrustedContact> digestContacts)
+            throws MessagingException {
+        List<Object[]> vaults = new ArrayList<>(group.size());
+        for (OutboxNotification notification : group) {
+            TrustedContact contact = digestContacts.get(notification.getId());
+            vaults.add(new Object[]{contact.getUser().getFirstName(), contact.getUser().getLastName(),
+                    vaultLinks.url(notification)});
+        }
+        RenderedEmail email = notificationTemplates.renderVaultRevealDigest(
+                digestContacts.get(group.get(0).getId()).getName(), vaults);
+        return createMessage(group.get(0).getRecipient(), VAULT_REVEAL_DIGEST_SUBJECT, email.getText(), email.getHtml());
+    }
+    
+    private static void fail(List<OutboxNotification> group, Exception cause, Map<Long, Exception> failures) {
+        group.forEach(notification -> failures.put(notification.getId(), cause));
+    }
+    
+    private RenderedEmail renderVaultReveal(TrustedContact contact, User user, String vaultUrl) {
+        return notificationTemplates.render(NotificationTemplates.Kind.VAULT_REVEAL,
+                contact.getName(), user.getFirstName(), user.getLastName(), vaultUrl);
+    }
+    
+    private String vaultUrl(TrustedContact contact) {
+        return appUrl + "/vault-access/" + contact.getVerificationToken();
+    }
+    
+    private void queue(OutboxNotification.Type type, OutboxNotification.Lane lane, Long userId, String recipient,
+                       String subject, RenderedEmail email, String linkToken, LocalDateTime nextAttemptAt) {
+        OutboxNotification notification = new OutboxNotification();
+        notification.setType(type);
+        notification.setLane(lane);
+        notification.setUserId(userId);
+        notification.setRecipient(recipient);
+        notification.setSubject(subject);
+        notification.setBody(email.getText());
+        notification.setHtmlBody(email.getHtml());
+        notification.setLinkToken(linkToken);
+        notification.setNextAttemptAt(nextAttemptAt);
+        outboxRepository.save(notification);
     }
     
     private void sendSimpleEmail(String to, String subject, String text) {
@@ -135,18 +302,25 @@ public class EmailService {
         message.setSubject(subject);
         message.setText(text);
         
+        sendRateLimiter.acquire(1);
         mailSender.send(message);
     }
     
-    private void sendHtmlEmail(String to, String subject, String htmlContent) throws MessagingException {
+    /**
+     * Builds a message with the plain text, plus the HTML as a multipart/alternative part when given.
+     */
+    private MimeMessage createMessage(String to, String subject, String text, String html) throws MessagingException {
         MimeMessage message = mailSender.createMimeMessage();
-        MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+        MimeMessageHelper helper = new MimeMessageHelper(message, html != null, "UTF-8");
         
         helper.setFrom(fromEmail);
         helper.setTo(to);
         helper.setSubject(subject);
-        helper.setText(htmlContent, true);
-        
-        mailSender.send(message);
+        if (html != null) {
+            helper.setText(text, html);
+        } else {
+            helper.setText(text);
+        }
+        return message;
     }
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+package com.lifevault.service;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The notifications of a batch that a channel has handed to its provider. NotificationRouter closes it
+ * when the channel misses its timeout: from then on nothing more may be handed over, and exactly the
+ * notifications handed over so far are the ones the provider may have sent.
+ */
+public class Handover {
+    
+    private final Set<Long> handedOver = new HashSet<>();
+    private boolean closed;
+    
+    /**
+     * Records the notifications, all of them or none, as handed to the provider.
+     * @return false once closed, when they must not be sent
+     */
+    public synchronized boolean begin(Collection<Long> ids) {
+        if (closed || Thread.currentThread().isInterrupted()) {
+            return false;
+        }
+        handedOver.addAll(ids);
+        return true;
+    }
+    
+    public boolean begin(Long id) {
+        return begin(Set.of(id));
+    }
+    
+    /**
+     * Refuses every later {@link #begin}.
+     * @return the ids handed over before
+     */
+    public synchronized Set<Long> close() {
+        closed = true;
+        return Set.copyOf(handedOver);
+    }
+}
@@ -0,0 +1,108 @@
+package com.lifevault.service;
+
+import com.lifevault.entity.User;
+import com.lifevault.entity.User.InactivityMilestone;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+@Service
+public class InactivityPolicy {
+    
+    // Offsets stay under a day, so the milestone day can always be read back from lastActivityAt and
+    // nextActionAt (see scheduledDay), however late the sweep gets to the user
+    static final int MAX_SPREAD_MINUTES = 23 * 60;
+    
+    @Value("${inactivity.grace-period-days:14}")
+    private int gracePeriodDays;
+    
+    @Value("${inactivity.sweep.spread-minutes:0}")
+    private int spreadMinutes;
+    
+    public int getGracePeriodDays() {
+        return gracePeriodDays;
+    }
+    
+    /**
+     * Milestone a user reaches on the given day of inactivity, or null if nothing is due that day.
+     */
+    public InactivityMilestone milestoneOn(long daysSinceLastActivity, int inactivityPeriod) {
+        int halfPeriod = inactivityPeriod / 2;
+        int threeQuartersPeriod = (inactivityPeriod * 3) / 4;
+        int lastWeekStart = inactivityPeriod - 7;
+        int finalPeriod = inactivityPeriod + gracePeriodDays;
+        
+        if (daysSinceLastActivity == halfPeriod) {
+            return InactivityMilestone.HALF_WARNING;
+        } else if (daysSinceLastActivity == threeQuartersPeriod) {
+            return InactivityMilestone.THREE_QUARTERS_WARNING;
+        } else if (daysSinceLastActivity >= lastWeekStart && daysSinceLastActivity < inactivityPeriod) {
+            // Daily checks in the last week
+            return InactivityMilestone.FINAL_WEEK_WARNING;
+        } else if (daysSinceLastActivity >= inactivityPeriod && daysSinceLastActivity < finalPeriod) {
+            // Every 2 days during grace period
+            return (daysSinceLastActivity - inactivityPeriod) % 2 == 0
+                    ? InactivityMilestone.GRACE_PERIOD_WARNING
+                    : null;
+        } else if (daysSinceLastActivity >= finalPeriod) {
+            return InactivityMilestone.VAULT_REVEAL;
+        }
+        return null;
+    }
+    
+    /**
+     * Points nextActionAt/nextActionType at the first milestone strictly after now.
+     * Call whenever lastActivityAt, inactivityPeriodDays or the grace period changes.
+     */
+    public void schedule(User user, LocalDateTime now) {
+        LocalDateTime lastActivity = user.getLastActivityAt() != null ? user.getLastActivityAt() : now;
+        int inactivityPeriod = user.getInactivityPeriodDays();
+        
+        // Days are counted from the user's slot, so a milestone still waiting for its slot today is kept.
+        // Every day from the end of the grace period on is a reveal day, so this always terminates
+        LocalDateTime slot = lastActivity.plusMinutes(slotOffsetMinutes(user.getId()));
+        long day = Math.max(ChronoUnit.DAYS.between(slot, now), 0) + 1;
+        InactivityMilestone milestone = milestoneOn(day, inactivityPeriod);
+        while (milestone == null) {
+            day++;
+            milestone = milestoneOn(day, inactivityPeriod);
+        }
+        
+        user.setNextActionAt(slot.plusDays(day));
+        user.setNextActionType(milestone);
+    }
+    
+    /**
+     * Day of inactivity the pending nextActionType was scheduled for. nextActionAt is the user's slot
+     * plus that many days and the slot is less than a day after lastActivityAt, so the whole days
+     * between the two are the milestone day, whatever the spread is configured to now.
+     */
+    public long scheduledDay(User user) {
+        return ChronoUnit.DAYS.between(user.getLastActivityAt(), user.getNextActionAt());
+    }
+    
+    /**
+     * Fixed per-user delay added to every milestone, derived from a hash of the user id so that users
+     * whose last activity fell in the same minute (a bulk import, a demo reset) land in different
+     * sweeps. Users not yet saved have no id and get no offset; they are spread on their next reschedule.
+     */
+    public long slotOffsetMinutes(Long userId) {
+        int spread = Math.min(spreadMinutes, MAX_SPREAD_MINUTES);
+        if (userId == null || spread <= 0) {
+            return 0;
+        }
+        // Fibonacci hashing, so consecutive ids scatter across the window instead of filling it in order
+        long hash = userId * 0x9E3779B97F4A7C15L;
+        return Math.floorMod(hash ^ (hash >>> 32), spread);
+    }
+    
+    /**
+     * Marks the inactivity cycle as finished: nothing further is due until the user is active again.
+     */
+    public void complete(User user) {
+        user.setNextActionAt(null);
+        user.setNextActionType(InactivityMilestone.VAULT_REVEAL);
+    }
+}
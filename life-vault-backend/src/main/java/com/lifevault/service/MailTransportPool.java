@@ -0,0 +1,254 @@
+package com.lifevault.service;
+
+import com.lifevault.exception.ChannelUnavailableException;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.stereotype.Component;
+
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Predicate;
+
+/**
+ * Bounded pool of connected, authenticated SMTP transports shared by the notification senders.
+ * JavaMailSenderImpl opens a fresh connection (TCP, STARTTLS, AUTH) for every send call; here a
+ * connection is kept open and reused for many messages until it has sent maxMessagesPerConnection
+ * or the server drops it.
+ */
+@Component
+@Slf4j
+public class MailTransportPool {
+    
+    @Autowired
+    private JavaMailSender mailSender;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${inactivity.mail.pool-size:4}")
+    private int poolSize;
+    
+    @Value("${inactivity.mail.max-messages-per-connection:500}")
+    private int maxMessagesPerConnection;
+    
+    private final BlockingQueue<PooledTransport> idle = new LinkedBlockingQueue<>();
+    
+    private Semaphore permits;
+    
+    @PostConstruct
+    void init() {
+        permits = new Semaphore(poolSize, true);
+    }
+    
+    public void send(List<MimeMessage> messages) {
+        send(messages, message -> true);
+    }
+    
+    /**
+     * Sends the messages in order over a single pooled connection, blocking while all connections
+     * are busy. Like {@link JavaMailSenderImpl#send(MimeMessage...)} every message is attempted; the
+     * ones that failed are reported together in a {@link MailSendException} keyed by message. The
+     * exception is a connection that cannot be opened or stops answering within the mail.smtp.*
+     * timeouts: then the rest of the batch fails at once instead of waiting out a timeout per message,
+     * with a {@link ChannelUnavailableException} since the recipients were never the problem.
+     * <p>
+     * Every message is offered to handOver right before it goes to the server. Once that refuses one,
+     * or the thread is interrupted, the rest of the batch is not sent and fails as deferred.
+     */
+    public void send(List<MimeMessage> messages, Predicate<MimeMessage> handOver) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+        if (!(mailSender instanceof JavaMailSenderImpl)) {
+            sendUnpooled(messages, handOver, failedMessages);
+        } else {
+            sendPooled(messages, handOver, failedMessages);
+        }
+        if (!failedMessages.isEmpty()) {
+            throw new MailSendException(failedMessages);
+        }
+    }
+    
+    private void sendPooled(List<MimeMessage> messages, Predicate<MimeMessage> handOver,
+                            Map<Object, Exception> failedMessages) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            messages.forEach(message -> failedMessages.put(message, stopped()));
+            return;
+        }
+        PooledTransport transport = null;
+        try {
+            for (int i = 0; i < messages.size(); i++) {
+                MimeMessage message = messages.get(i);
+                if (Thread.currentThread().isInterrupted() || !handOver.test(message)) {
+                    ChannelUnavailableException stopped = stopped();
+                    messages.subList(i, messages.size()).forEach(rest -> failedMessages.put(rest, stopped));
+                    break;
+                }
+                try {
+                    if (transport == null) {
+                        transport = borrow();
+                    }
+                    message.saveChanges();
+                    transport.transport.sendMessage(message, message.getAllRecipients());
+                    transport.sent++;
+                } catch (MessagingException | RuntimeException e) {
+                    boolean timedOut = isTimeout(e);
+                    if (timedOut) {
+                        meterRegistry.counter("notification.mail.timeouts").increment();
+                    }
+                    if (transport == null || timedOut) {
+                        if (transport != null) {
+                            close(transport);
+                            transport = null;
+                        }
+                        ChannelUnavailableException unavailable = new ChannelUnavailableException(
+                                (timedOut ? "SMTP server stopped answering: " : "SMTP connection failed: ")
+                                        + e.getMessage(), e);
+                        messages.subList(i, messages.size()).forEach(rest -> failedMessages.put(rest, unavailable));
+                        break;
+                    }
+                    failedMessages.put(message, e);
+                    // A rejected recipient leaves the connection usable; anything else gets a fresh one
+                    if (!isConnected(transport)) {
+                        close(transport);
+                        transport = null;
+                    }
+                }
+            }
+        } finally {
+            release(transport);
+            permits.release();
+        }
+    }
+    
+    private void sendUnpooled(List<MimeMessage> messages, Predicate<MimeMessage> handOver,
+                              Map<Object, Exception> failedMessages) {
+        List<MimeMessage> accepted = new ArrayList<>(messages.size());
+        boolean refused = false;
+        for (MimeMessage message : messages) {
+            refused = refused || Thread.currentThread().isInterrupted() || !handOver.test(message);
+            if (refused) {
+                failedMessages.put(message, stopped());
+            } else {
+                accepted.add(message);
+            }
+        }
+        if (accepted.isEmpty()) {
+            return;
+        }
+        try {
+            mailSender.send(accepted.toArray(new MimeMessage[0]));
+        } catch (MailSendException e) {
+            if (e.getFailedMessages().isEmpty()) {
+                accepted.forEach(message -> failedMessages.put(message, e));
+            }
+            failedMessages.putAll(e.getFailedMessages());
+        }
+    }
+    
+    private static ChannelUnavailableException stopped() {
+        return new ChannelUnavailableException("Send stopped before the message reached the SMTP server",
+                Duration.ZERO);
+    }
+    
+    /**
+     * Number of connections currently open and idle in the pool.
+     */
+    public int idleConnections() {
+        return idle.size();
+    }
+    
+    @PreDestroy
+    void closeAll() {
+        PooledTransport transport;
+        while ((transport = idle.poll()) != null) {
+            close(transport);
+        }
+    }
+    
+    private PooledTransport borrow() throws MessagingException {
+        PooledTransport transport;
+        while ((transport = idle.poll()) != null) {
+            // isConnected() sends a NOOP, which catches connections the server timed out while idle
+            if (transport.sent < maxMessagesPerConnection && isConnected(transport)) {
+                return transport;
+            }
+            close(transport);
+        }
+        
+        JavaMailSenderImpl sender = (JavaMailSenderImpl) mailSender;
+        String protocol = sender.getProtocol();
+        if (protocol == null) {
+            protocol = sender.getSession().getProperty("mail.transport.protocol");
+        }
+        Transport connection = sender.getSession().getTransport(protocol != null ? protocol : "smtp");
+        connection.connect(sender.getHost(), sender.getPort(), sender.getUsername(), sender.getPassword());
+        return new PooledTransport(connection);
+    }
+    
+    private void release(PooledTransport transport) {
+        if (transport == null) {
+            return;
+        }
+        if (transport.sent >= maxMessagesPerConnection) {
+            close(transport);
+        } else {
+            idle.offer(transport);
+        }
+    }
+    
+    private static boolean isTimeout(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private boolean isConnected(PooledTransport transport) {
+        try {
+            return transport.transport.isConnected();
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+    
+    private void close(PooledTransport transport) {
+        try {
+            transport.transport.close();
+        } catch (MessagingException e) {
+            log.debug("Failed to close SMTP connection: {}", e.getMessage());
+        }
+    }
+    
+    private static class PooledTransport {
+        private final Transport transport;
+        private int sent;
+        
+        private PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+    }
+}
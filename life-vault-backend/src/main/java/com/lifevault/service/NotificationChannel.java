@@ -0,0 +1,38 @@
+package com.lifevault.service;
+
+import com.lifevault.entity.OutboxNotification;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A way of delivering outbox notifications. NotificationRouter runs each channel behind its own
+ * bulkhead, so implementations may block but should honour interruption where they can.
+ */
+public interface NotificationChannel {
+    
+    OutboxNotification.Channel getChannel();
+    
+    /**
+     * Waits until the batch may be sent under the provider's rate limit. NotificationRouter calls it
+     * on its own thread before the batch enters the bulkhead, so throttling never counts against the
+     * channel's call timeout.
+     * @return false if interrupted while waiting, in which case the batch must not be sent
+     */
+    default boolean throttle(List<OutboxNotification> notifications) {
+        return true;
+    }
+    
+    /**
+     * Sends a batch of notifications that all belong to this channel. Each notification is registered
+     * with the handover right before it goes to the provider, and is not sent once the handover refuses it.
+     * @return the exception for each notification that could not be sent, keyed by outbox id. Failures of
+     *         the connection to the provider, as opposed to rejected recipients, are reported as
+     *         {@link com.lifevault.exception.ChannelUnavailableException}
+     */
+    Map<Long, Exception> deliver(List<OutboxNotification> notifications, Handover handover);
+    
+    default Map<Long, Exception> deliver(List<OutboxNotification> notifications) {
+        return deliver(notifications, new Handover());
+    }
+}
@@ -0,0 +1,291 @@
+package com.lifevault.service;
+
+import com.lifevault.entity.NotificationPreference;
+import com.lifevault.entity.OutboxNotification;
+import com.lifevault.entity.TrustedContact;
+import com.lifevault.entity.User;
+import com.lifevault.entity.User.InactivityMilestone;
+import com.lifevault.exception.ChannelUnavailableException;
+import com.lifevault.repository.NotificationPreferenceRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Fans notifications out to the email, SMS and webhook channels. On the queueing side it applies
+ * each user's channel preferences; on the sending side every channel runs behind its own bulkhead,
+ * a small bounded thread pool with a call timeout and a circuit breaker, so a slow or failing
+ * provider only holds up its own channel's notifications. Bulkheads are configured per channel
+ * under inactivity.channels.&lt;email|sms|webhook&gt;.
+ */
+@Service
+@Slf4j
+public class NotificationRouter {
+    
+    @Autowired
+    private EmailService emailService;
+    
+    @Autowired
+    private SmsService smsService;
+    
+    @Autowired
+    private WebhookService webhookService;
+    
+    @Autowired
+    private List<NotificationChannel> channels;
+    
+    @Autowired
+    private NotificationPreferenceRepository preferenceRepository;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired
+    private Environment environment;
+    
+    private final Map<OutboxNotification.Channel, Bulkhead> bulkheads = new EnumMap<>(OutboxNotification.Channel.class);
+    
+    @PostConstruct
+    void start() {
+        for (NotificationChannel channel : channels) {
+            String key = channel.getChannel().name().toLowerCase();
+            String prefix = "inactivity.channels." + key + ".";
+            int threads = Math.max(environment.getProperty(prefix + "threads", Integer.class, 2), 1);
+            int queueCapacity = Math.max(environment.getProperty(prefix + "queue-capacity", Integer.class, 8), 1);
+            Bulkhead bulkhead = new Bulkhead(channel,
+                    new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                            new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("notify-" + key + "-")),
+                    new CircuitBreaker(environment.getProperty(prefix + "failure-threshold", Integer.class, 5),
+                            environment.getProperty(prefix + "open-seconds", Long.class, 60L), TimeUnit.SECONDS),
+                    TimeUnit.SECONDS.toNanos(environment.getProperty(prefix + "timeout-seconds", Long.class, 60L)));
+            bulkheads.put(channel.getChannel(), bulkhead);
+            meterRegistry.gauge("notification.channel.circuit", Tags.of("channel", key),
+                    bulkhead.breaker, breaker -> breaker.getState().ordinal());
+        }
+    }
+    
+    @PreDestroy
+    void stop() {
+        bulkheads.values().forEach(bulkhead -> bulkhead.executor.shutdownNow());
+    }
+    
+    /**
+     * Loads the channel preferences of a whole chunk of users with one query.
+     */
+    public ChannelPreferences resolvePreferences(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return new ChannelPreferences(Map.of());
+        }
+        return new ChannelPreferences(preferenceRepository.findByUserIdIn(userIds).stream()
+                .collect(Collectors.toMap(NotificationPreference::getUserId, Function.identity())));
+    }
+    
+    /**
+     * Queues a warning on every channel the user has enabled. Email is the fallback: if the
+     * preferences would leave the warning with no channel at all, it goes out by email anyway.
+     */
+    public void queueInactivityWarning(User user, InactivityMilestone milestone, long daysInactive,
+                                       String activityToken, NotificationPreference preference) {
+        OutboxNotification.Lane lane = OutboxNotification.Lane.forMilestone(milestone);
+        boolean webhook = StringUtils.hasText(preference.getWebhookUrl());
+        // The grace period escalates over SMS too, so the reveal never hinges on email alone
+        boolean sms = milestone == InactivityMilestone.GRACE_PERIOD_WARNING && preference.getSms()
+                && smsService.isEnabled() && StringUtils.hasText(user.getPhoneNumber());
+        
+        if (preference.getEmail() || !(sms || webhook)) {
+            emailService.queueInactivityWarningEmail(user, milestone.getLabel(), daysInactive, activityToken);
+        }
+        if (sms) {
+            smsService.queueGracePeriodWarning(user, daysInactive, activityToken);
+        }
+        if (webhook) {
+            webhookService.queueInactivityWarning(user, preference.getWebhookUrl(), milestone, daysInactive, lane);
+        }
+    }
+    
+    /**
+     * Queues the reveal to the verified contacts. Contacts always get the email, since they never
+     * chose the user's preferences; the SMS copy follows the user's SMS preference and the webhook
+     * receives a single event for the whole reveal.
+     */
+    public void queueVaultReveal(User user, List<TrustedContact> contacts, NotificationPreference preference) {
+        for (TrustedContact contact : contacts) {
+            emailService.queueVaultRevealNotification(contact, user);
+            if (preference.getSms()) {
+                smsService.queueVaultRevealNotification(contact, user);
+            }
+        }
+        if (StringUtils.hasText(preference.getWebhookUrl()) && !contacts.isEmpty()) {
+            webhookService.queueVaultReveal(user, preference.getWebhookUrl(), contacts.size());
+        }
+    }
+    
+    /**
+     * Sends a claimed batch, each channel's share on that channel's bulkhead, all channels in
+     * parallel. A share first waits on the channel's rate limit on this thread, so throttling never
+     * eats into the call timeout. A channel whose circuit is open or whose bulkhead is full refuses
+     * its whole share with a deferred {@link ChannelUnavailableException}, with the time the channel
+     * should be back. A channel that misses its timeout is cut off: what it had already handed to the
+     * provider counts as sent, since it may well have been, and only the rest is deferred. Only
+     * failures of the channel itself count toward its circuit, never recipients the provider rejected.
+     * @return the exception for each notification that could not be sent, keyed by outbox id
+     */
+    public Map<Long, Exception> deliver(List<OutboxNotification> batch) {
+        Map<OutboxNotification.Channel, List<OutboxNotification>> byChannel = new EnumMap<>(OutboxNotification.Channel.class);
+        for (OutboxNotification notification : batch) {
+            byChannel.computeIfAbsent(notification.getChannel(), channel -> new ArrayList<>()).add(notification);
+        }
+        
+        Map<Long, Exception> failures = new HashMap<>();
+        Map<OutboxNotification.Channel, Future<Map<Long, Exception>>> running = new EnumMap<>(OutboxNotification.Channel.class);
+        Map<OutboxNotification.Channel, Handover> handovers = new EnumMap<>(OutboxNotification.Channel.class);
+        byChannel.forEach((channel, notifications) -> {
+            Bulkhead bulkhead = bulkheads.get(channel);
+            if (bulkhead == null) {
+                failAll(notifications, new ChannelUnavailableException("No " + channel + " channel configured"), failures);
+            } else if (!bulkhead.breaker.tryAcquire()) {
+                reject(channel, "circuit_open", Duration.ofNanos(bulkhead.breaker.remainingOpenNanos()),
+                        notifications, failures);
+            } else if (!bulkhead.channel.throttle(notifications)) {
+                bulkhead.breaker.release();
+                reject(channel, "interrupted", Duration.ZERO, notifications, failures);
+            } else {
+                Handover handover = new Handover();
+                try {
+                    running.put(channel, bulkhead.executor.submit(() -> bulkhead.channel.deliver(notifications, handover)));
+                    handovers.put(channel, handover);
+                } catch (RejectedExecutionException e) {
+                    // A full bulkhead means earlier sends are stuck, which is the provider's health too
+                    bulkhead.breaker.onFailure();
+                    reject(channel, "bulkhead_full", Duration.ZERO, notifications, failures);
+                }
+            }
+        });
+        
+        long start = System.nanoTime();
+        running.forEach((channel, future) -> {
+            Bulkhead bulkhead = bulkheads.get(channel);
+            List<OutboxNotification> notifications = byChannel.get(channel);
+            try {
+                Map<Long, Exception> channelFailures = future.get(
+                        Math.max(bulkhead.timeoutNanos - (System.nanoTime() - start), 0), TimeUnit.NANOSECONDS);
+                failures.putAll(channelFailures);
+                if (channelFailures.values().stream().anyMatch(ChannelUnavailableException.class::isInstance)) {
+                    bulkhead.breaker.onFailure();
+                } else {
+                    bulkhead.breaker.onSuccess();
+                }
+            } catch (TimeoutException e) {
+                // Closed before the interrupt, so nothing can slip through between the two
+                List<OutboxNotification> unsent = cutOff(channel, notifications, handovers.get(channel));
+                future.cancel(true);
+                bulkhead.breaker.onFailure();
+                reject(channel, "timeout", Duration.ZERO, unsent, failures);
+            } catch (ExecutionException e) {
+                bulkhead.breaker.onFailure();
+                Exception cause = e.getCause() instanceof Exception exception ? exception : e;
+                log.warn("{} channel failed a batch of {}", channel, notifications.size(), cause);
+                failAll(notifications, cause, failures);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                List<OutboxNotification> unsent = cutOff(channel, notifications, handovers.get(channel));
+                future.cancel(true);
+                bulkhead.breaker.release();
+                reject(channel, "interrupted", Duration.ZERO, unsent, failures);
+            }
+        });
+        return failures;
+    }
+    
+    /**
+     * Stops the channel from handing over any more of the share.
+     * @return the notifications it never handed to the provider
+     */
+    private List<OutboxNotification> cutOff(OutboxNotification.Channel channel, List<OutboxNotification> notifications,
+                                            Handover handover) {
+        Set<Long> handedOver = handover.close();
+        if (!handedOver.isEmpty()) {
+            log.warn("{} channel was cut off after handing {} of {} notifications to the provider; those count as sent",
+                    channel, handedOver.size(), notifications.size());
+        }
+        return notifications.stream()
+                .filter(notification -> !handedOver.contains(notification.getId()))
+                .toList();
+    }
+    
+    public CircuitBreaker.State circuitState(OutboxNotification.Channel channel) {
+        Bulkhead bulkhead = bulkheads.get(channel);
+        return bulkhead != null ? bulkhead.breaker.getState() : null;
+    }
+    
+    private void reject(OutboxNotification.Channel channel, String reason, Duration retryAfter,
+                        List<OutboxNotification> notifications, Map<Long, Exception> failures) {
+        meterRegistry.counter("notification.channel.rejected", "channel", channel.name().toLowerCase(), "reason", reason)
+                .increment(notifications.size());
+        failAll(notifications, new ChannelUnavailableException(channel + " channel unavailable: " + reason, retryAfter),
+                failures);
+    }
+    
+    private static void failAll(List<OutboxNotification> notifications, Exception cause, Map<Long, Exception> failures) {
+        notifications.forEach(notification -> failures.put(notification.getId(), cause));
+    }
+    
+    /**
+     * Preferences of one chunk of users; users without a stored row get the defaults.
+     */
+    public static class ChannelPreferences {
+        
+        // Shared between chunks, so callers must treat returned preferences as read-only
+        private static final NotificationPreference DEFAULTS = new NotificationPreference();
+        
+        private final Map<Long, NotificationPreference> byUserId;
+        
+        private ChannelPreferences(Map<Long, NotificationPreference> byUserId) {
+            this.byUserId = byUserId;
+        }
+        
+        public NotificationPreference forUser(Long userId) {
+            return byUserId.getOrDefault(userId, DEFAULTS);
+        }
+    }
+    
+    private static class Bulkhead {
+        private final NotificationChannel channel;
+        private final ThreadPoolExecutor executor;
+        private final CircuitBreaker breaker;
+        private final long timeoutNanos;
+        
+        private Bulkhead(NotificationChannel channel, ThreadPoolExecutor executor, CircuitBreaker breaker,
+                         long timeoutNanos) {
+            this.channel = channel;
+            this.executor = executor;
+            this.breaker = breaker;
+            this.timeoutNanos = timeoutNanos;
+        }
+    }
+}
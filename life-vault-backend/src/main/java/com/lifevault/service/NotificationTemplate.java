@@ -0,0 +1,94 @@
+package com.lifevault.service;
+
+import org.springframework.web.util.HtmlUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A template compiled once into alternating literal and variable segments. {{name}} placeholders are
+ * resolved to positions at compile time, so rendering is a straight walk over the segments that
+ * appends into the caller's buffer; nothing is parsed per message.
+ */
+public final class NotificationTemplate {
+    
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+    
+    // literals.length == slots.length + 1: literal, slot, literal, slot, ..., literal
+    private final String[] literals;
+    private final int[] slots;
+    private final int variableCount;
+    private final boolean html;
+    
+    private NotificationTemplate(String[] literals, int[] slots, int variableCount, boolean html) {
+        this.literals = literals;
+        this.slots = slots;
+        this.variableCount = variableCount;
+        this.html = html;
+    }
+    
+    /**
+     * @param variables placeholder names, in the order their values are passed to {@link #renderTo}
+     * @param html whether values are HTML-escaped when rendered
+     */
+    public static NotificationTemplate compile(String source, boolean html, String... variables) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        int position = 0;
+        int open;
+        while ((open = source.indexOf(OPEN, position)) >= 0) {
+            int close = source.indexOf(CLOSE, open + OPEN.length());
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed placeholder at offset " + open);
+            }
+            String name = source.substring(open + OPEN.length(), close).trim();
+            int slot = indexOf(variables, name);
+            if (slot < 0) {
+                throw new IllegalArgumentException("Unknown template variable: " + name);
+            }
+            literals.add(source.substring(position, open));
+            slots.add(slot);
+            position = close + CLOSE.length();
+        }
+        literals.add(source.substring(position));
+        
+        return new NotificationTemplate(literals.toArray(new String[0]),
+                slots.stream().mapToInt(Integer::intValue).toArray(), variables.length, html);
+    }
+    
+    /**
+     * Appends the rendered template to out. Values are positional, matching the compile-time variables.
+     */
+    public void renderTo(StringBuilder out, Object... values) {
+        if (values.length != variableCount) {
+            throw new IllegalArgumentException("Expected " + variableCount + " values but got " + values.length);
+        }
+        for (int i = 0; i < slots.length; i++) {
+            out.append(literals[i]);
+            append(out, values[slots[i]]);
+        }
+        out.append(literals[slots.length]);
+    }
+    
+    private void append(StringBuilder out, Object value) {
+        if (value instanceof Long number) {
+            out.append(number.longValue());
+        } else if (value instanceof Integer number) {
+            out.append(number.intValue());
+        } else if (html) {
+            out.append(HtmlUtils.htmlEscape(String.valueOf(value)));
+        } else {
+            out.append(value);
+        }
+    }
+    
+    private static int indexOf(String[] variables, String name) {
+        for (int i = 0; i < variables.length; i++) {
+            if (variables[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
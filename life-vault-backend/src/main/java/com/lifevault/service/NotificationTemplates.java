@@ -0,0 +1,191 @@
+package com.lifevault.service;
+
+import com.lifevault.entity.User.InactivityMilestone;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.util.HtmlUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plain-text and HTML email templates, loaded from classpath:email-templates and compiled once at
+ * startup. Warning templates are compiled per milestone with the urgency line and time-remaining
+ * sentence already folded in, so a warning render is a single pass with no branching on its type.
+ * The reveal digest has a {{#vaults}}...{{/vaults}} section, compiled separately and rendered once
+ * per revealed vault between the parts before and after it.
+ */
+@Component
+public class NotificationTemplates {
+    
+    public enum Kind {
+        VAULT_REVEAL("vault-reveal", "contactName", "firstName", "lastName", "vaultUrl"),
+        CONTACT_VERIFICATION("contact-verification", "contactName", "firstName", "lastName", "verificationUrl");
+        
+        private final String file;
+        private final String[] variables;
+        
+        Kind(String file, String... variables) {
+            this.file = file;
+            this.variables = variables;
+        }
+    }
+    
+    private static final String DIGEST_FILE = "vault-reveal-digest";
+    private static final String[] DIGEST_VARIABLES = {"contactName", "vaultCount"};
+    private static final String[] DIGEST_ENTRY_VARIABLES = {"firstName", "lastName", "vaultUrl"};
+    private static final String SECTION_START = "{{#vaults}}\n";
+    private static final String SECTION_END = "{{/vaults}}\n";
+    
+    private static final String WARNING_FILE = "inactivity-warning";
+    private static final String[] WARNING_VARIABLES = {"firstName", "daysInactive", "daysRemaining",
+            "graceDaysLeft", "verificationUrl", "appUrl", "inactivityPeriod", "gracePeriod"};
+    
+    // Buffers that grew past this (an unusually long render) are not kept for the thread's next render
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+    
+    private final Map<Kind, CompiledEmail> templates = new EnumMap<>(Kind.class);
+    private final Map<InactivityMilestone, CompiledEmail> warningTemplates = new EnumMap<>(InactivityMilestone.class);
+    private CompiledEmail defaultWarningTemplate;
+    private CompiledDigest textDigest;
+    private CompiledDigest htmlDigest;
+    
+    private final ThreadLocal<StringBuilder> buffer = ThreadLocal.withInitial(() -> new StringBuilder(4096));
+    
+    @PostConstruct
+    public void compile() {
+        for (Kind kind : Kind.values()) {
+            templates.put(kind, new CompiledEmail(
+                    NotificationTemplate.compile(load(kind.file + ".txt"), false, kind.variables),
+                    NotificationTemplate.compile(load(kind.file + ".html"), true, kind.variables)));
+        }
+        
+        String warningText = load(WARNING_FILE + ".txt");
+        String warningHtml = load(WARNING_FILE + ".html");
+        warningTemplates.put(InactivityMilestone.HALF_WARNING, compileWarning(warningText, warningHtml,
+                "Routine Check-In", "You have {{daysRemaining}} days remaining before the next check."));
+        warningTemplates.put(InactivityMilestone.THREE_QUARTERS_WARNING, compileWarning(warningText, warningHtml,
+                "Important Reminder", "Only {{daysRemaining}} days remaining before final notifications begin."));
+        warningTemplates.put(InactivityMilestone.FINAL_WEEK_WARNING, compileWarning(warningText, warningHtml,
+                "URGENT: Final Week Notice", "Only {{daysRemaining}} days left! Daily reminders will be sent."));
+        warningTemplates.put(InactivityMilestone.GRACE_PERIOD_WARNING, compileWarning(warningText, warningHtml,
+                "CRITICAL: Grace Period Active",
+                "Your trusted contacts will be notified in {{graceDaysLeft}} days if you don't respond!"));
+        defaultWarningTemplate = compileWarning(warningText, warningHtml,
+                "Activity Check", "Please log in to confirm you're okay.");
+        
+        textDigest = compileDigest(load(DIGEST_FILE + ".txt"), false);
+        htmlDigest = compileDigest(load(DIGEST_FILE + ".html"), true);
+    }
+    
+    /**
+     * Renders both parts of the warning for the given milestone, or the generic activity check if null.
+     */
+    public RenderedEmail renderWarning(InactivityMilestone milestone, Object... values) {
+        CompiledEmail compiled = milestone != null ? warningTemplates.get(milestone) : null;
+        return render(compiled != null ? compiled : defaultWarningTemplate, values);
+    }
+    
+    public RenderedEmail render(Kind kind, Object... values) {
+        return render(templates.get(kind), values);
+    }
+    
+    /**
+     * Renders one reveal email listing several vaults for the same contact.
+     * @param vaults firstName, lastName and vaultUrl of each revealed vault
+     */
+    public RenderedEmail renderVaultRevealDigest(String contactName, List<Object[]> vaults) {
+        return new RenderedEmail(render(textDigest, contactName, vaults), render(htmlDigest, contactName, vaults));
+    }
+    
+    private String render(CompiledDigest digest, String contactName, List<Object[]> vaults) {
+        StringBuilder out = buffer.get();
+        out.setLength(0);
+        digest.head.renderTo(out, contactName, vaults.size());
+        for (Object[] vault : vaults) {
+            digest.entry.renderTo(out, vault);
+        }
+        digest.tail.renderTo(out, contactName, vaults.size());
+        String rendered = out.toString();
+        if (out.capacity() > MAX_RETAINED_BUFFER) {
+            buffer.remove();
+        }
+        return rendered;
+    }
+    
+    private RenderedEmail render(CompiledEmail compiled, Object... values) {
+        return new RenderedEmail(render(compiled.text, values), render(compiled.html, values));
+    }
+    
+    private String render(NotificationTemplate template, Object... values) {
+        StringBuilder out = buffer.get();
+        out.setLength(0);
+        template.renderTo(out, values);
+        String rendered = out.toString();
+        if (out.capacity() > MAX_RETAINED_BUFFER) {
+            buffer.remove();
+        }
+        return rendered;
+    }
+    
+    private CompiledEmail compileWarning(String text, String html, String urgency, String timeRemaining) {
+        return new CompiledEmail(
+                NotificationTemplate.compile(text
+                        .replace("{{urgency}}", urgency)
+                        .replace("{{timeRemaining}}", timeRemaining), false, WARNING_VARIABLES),
+                NotificationTemplate.compile(html
+                        .replace("{{urgency}}", HtmlUtils.htmlEscape(urgency))
+                        .replace("{{timeRemaining}}", HtmlUtils.htmlEscape(timeRemaining)), true, WARNING_VARIABLES));
+    }
+    
+    private CompiledDigest compileDigest(String source, boolean html) {
+        int start = source.indexOf(SECTION_START);
+        int end = source.indexOf(SECTION_END, start);
+        if (start < 0 || end < 0) {
+            throw new IllegalStateException("Digest template has no {{#vaults}} section");
+        }
+        return new CompiledDigest(
+                NotificationTemplate.compile(source.substring(0, start), html, DIGEST_VARIABLES),
+                NotificationTemplate.compile(source.substring(start + SECTION_START.length(), end), html,
+                        DIGEST_ENTRY_VARIABLES),
+                NotificationTemplate.compile(source.substring(end + SECTION_END.length()), html, DIGEST_VARIABLES));
+    }
+    
+    private String load(String file) {
+        try {
+            String source = StreamUtils.copyToString(
+                    new ClassPathResource("email-templates/" + file).getInputStream(), StandardCharsets.UTF_8);
+            // Files end with a newline; the message bodies do not
+            return source.endsWith("\n") ? source.substring(0, source.length() - 1) : source;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to load email template " + file, e);
+        }
+    }
+    
+    @RequiredArgsConstructor
+    private static class CompiledEmail {
+        private final NotificationTemplate text;
+        private final NotificationTemplate html;
+    }
+    
+    @RequiredArgsConstructor
+    private static class CompiledDigest {
+        private final NotificationTemplate head;
+        private final NotificationTemplate entry;
+        private final NotificationTemplate tail;
+    }
+    
+    @Getter
+    @RequiredArgsConstructor
+    public static class RenderedEmail {
+        private final String text;
+        private final String html;
+    }
+}
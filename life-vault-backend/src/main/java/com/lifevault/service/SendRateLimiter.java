@@ -0,0 +1,87 @@
+package com.lifevault.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket that keeps outbound email under the provider's rate limit. The bucket is local to
+ * this node, so the configured account-wide messagesPerSecond and burst are split evenly across the
+ * configured number of sending nodes. Tokens refill at the node's share up to its share of the
+ * burst; a caller asking for more tokens than are available takes them on credit and sleeps until
+ * the debt is paid back, so senders slow down instead of failing. Concurrent connections are
+ * bounded separately by MailTransportPool.
+ */
+@Component
+public class SendRateLimiter {
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${inactivity.mail.rate-limit.messages-per-second:10}")
+    private double messagesPerSecond;
+    
+    @Value("${inactivity.mail.rate-limit.burst:20}")
+    private int burst;
+    
+    @Value("${inactivity.mail.rate-limit.nodes:1}")
+    private int nodes;
+    
+    private double nodeMessagesPerSecond;
+    private double nodeBurst;
+    private double tokens;
+    private long refilledAt;
+    private Timer throttledTimer;
+    
+    @PostConstruct
+    void init() {
+        if (nodes < 1) {
+            throw new IllegalStateException("inactivity.mail.rate-limit.nodes must be at least 1, was " + nodes);
+        }
+        nodeMessagesPerSecond = messagesPerSecond / nodes;
+        nodeBurst = Math.max(1.0, (double) burst / nodes);
+        tokens = nodeBurst;
+        refilledAt = System.nanoTime();
+        throttledTimer = meterRegistry.timer("notification.send.throttled");
+    }
+    
+    /**
+     * Takes permits tokens, blocking while the bucket is in debt. No-op when the limit is disabled.
+     * @return false if the thread was interrupted while waiting; the interrupt flag is set again and
+     *         the caller must not send
+     */
+    public boolean acquire(int permits) {
+        if (messagesPerSecond <= 0 || permits <= 0) {
+            return !Thread.currentThread().isInterrupted();
+        }
+        long waitNanos = reserve(permits, System.nanoTime());
+        if (waitNanos <= 0) {
+            return !Thread.currentThread().isInterrupted();
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            throttledTimer.record(waitNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    /**
+     * @return how long the caller has to wait before its permits are covered
+     */
+    synchronized long reserve(int permits, long now) {
+        tokens = Math.min(nodeBurst,
+                tokens + (now - refilledAt) * nodeMessagesPerSecond / TimeUnit.SECONDS.toNanos(1));
+        refilledAt = now;
+        tokens -= permits;
+        return tokens >= 0 ? 0 : (long) (-tokens / nodeMessagesPerSecond * TimeUnit.SECONDS.toNanos(1));
+    }
+}
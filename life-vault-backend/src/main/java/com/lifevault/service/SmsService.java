@@ -0,0 +1,186 @@
+package com.lifevault.service;
+
+import com.lifevault.entity.OutboxNotification;
+import com.lifevault.entity.TrustedContact;
+import com.lifevault.entity.User;
+import com.lifevault.exception.ChannelUnavailableException;
+import com.lifevault.repository.OutboxNotificationRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.services.sns.SnsAsyncClient;
+import software.amazon.awssdk.services.sns.model.MessageAttributeValue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * SMS channel for the time-critical notifications: grace-period warnings and vault reveals. Like
+ * email, messages are written to the outbox by the sweep and published later by
+ * NotificationOutboxWorker, so SNS latency never reaches the sweep. Disabled unless aws.sns.enabled.
+ */
+@Service
+public class SmsService implements NotificationChannel {
+    
+    private static final String GRACE_PERIOD_SUBJECT = "Life Vault - Grace period SMS";
+    private static final String VAULT_REVEAL_SUBJECT = "Life Vault - Vault reveal SMS";
+    
+    private static final Map<String, MessageAttributeValue> TRANSACTIONAL = Map.of("AWS.SNS.SMS.SMSType",
+            MessageAttributeValue.builder().dataType("String").stringValue("Transactional").build());
+    
+    private static final NotificationTemplate GRACE_PERIOD_TEMPLATE = NotificationTemplate.compile(
+            "Life Vault: your trusted contacts will be notified in {{graceDaysLeft}} days. " +
+            "Confirm you're active: {{verificationUrl}}", false, "graceDaysLeft", "verificationUrl");
+    
+    private static final NotificationTemplate VAULT_REVEAL_TEMPLATE = NotificationTemplate.compile(
+            "Life Vault: {{firstName}} {{lastName}} has not responded to activity checks. " +
+            "As their trusted contact you can now access their vault: {{vaultUrl}}",
+            false, "firstName", "lastName", "vaultUrl");
+    
+    @Autowired(required = false)
+    private SnsAsyncClient snsClient;
+    
+    @Autowired
+    private OutboxNotificationRepository outboxRepository;
+    
+    @Autowired
+    private InactivityPolicy inactivityPolicy;
+    
+    @Autowired
+    private VaultLinks vaultLinks;
+    
+    @Value("${cors.allowed-origins}")
+    private String appUrl;
+    
+    @Value("${aws.sns.max-in-flight:20}")
+    private int maxInFlight;
+    
+    // Shared by all outbox consumers, so the cap holds per node rather than per batch
+    private Semaphore inFlight;
+    
+    @PostConstruct
+    void init() {
+        inFlight = new Semaphore(maxInFlight);
+    }
+    
+    @Override
+    public OutboxNotification.Channel getChannel() {
+        return OutboxNotification.Channel.SMS;
+    }
+    
+    public boolean isEnabled() {
+        return snsClient != null;
+    }
+    
+    /**
+     * Queues the grace-period SMS alongside the warning email, if SMS is enabled and the user has a number.
+     */
+    public void queueGracePeriodWarning(User user, long daysInactive, String activityToken) {
+        if (!isEnabled() || !StringUtils.hasText(user.getPhoneNumber())) {
+            return;
+        }
+        long graceDaysLeft = inactivityPolicy.getGracePeriodDays() - (daysInactive - user.getInactivityPeriodDays());
+        StringBuilder text = new StringBuilder(160);
+        GRACE_PERIOD_TEMPLATE.renderTo(text, graceDaysLeft, appUrl + "/api/activity/verify/" + activityToken);
+        queue(OutboxNotification.Type.INACTIVITY_WARNING, OutboxNotification.Lane.GRACE, user.getId(),
+                user.getPhoneNumber(), GRACE_PERIOD_SUBJECT, text.toString(), null);
+    }
+    
+    /**
+     * Queues the reveal SMS to a trusted contact, if SMS is enabled and the contact has a number.
+     */
+    public void queueVaultRevealNotification(TrustedContact contact, User user) {
+        if (!isEnabled() || !StringUtils.hasText(contact.getPhoneNumber())) {
+            return;
+        }
+        StringBuilder text = new StringBuilder(160);
+        VAULT_REVEAL_TEMPLATE.renderTo(text, user.getFirstName(), user.getLastName(), VaultLinks.PLACEHOLDER);
+        queue(OutboxNotification.Type.VAULT_REVEAL, OutboxNotification.Lane.REVEAL, user.getId(),
+                contact.getPhoneNumber(), VAULT_REVEAL_SUBJECT, text.toString(), vaultLinks.seal(contact));
+    }
+    
+    /**
+     * Publishes a batch claimed from the outbox. SNS has no batch API for direct-to-phone SMS
+     * (PublishBatch only targets topics), so the publishes are pipelined instead: all are issued
+     * on the shared async client, with at most maxInFlight outstanding, and the batch completes when
+     * the last response arrives.
+     * @return the exception for each notification that could not be sent, keyed by outbox id
+     */
+    @Override
+    public Map<Long, Exception> deliver(List<OutboxNotification> notifications, Handover handover) {
+        Map<Long, Exception> failures = new ConcurrentHashMap<>();
+        if (!isEnabled()) {
+            notifications.forEach(notification -> failures.put(notification.getId(),
+                    new IllegalStateException("SMS channel is disabled")));
+            return failures;
+        }
+        
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        for (OutboxNotification notification : notifications) {
+            if (!handover.begin(notification.getId())) {
+                failures.put(notification.getId(), new ChannelUnavailableException(
+                        "Send stopped before the message reached SNS", Duration.ZERO));
+                continue;
+            }
+            inFlight.acquireUninterruptibly();
+            try {
+                pending.add(snsClient.publish(request -> request
+                                .phoneNumber(notification.getRecipient())
+                                .message(vaultLinks.fill(notification.getBody(), notification))
+                                .messageAttributes(TRANSACTIONAL))
+                        .whenComplete((response, error) -> {
+                            inFlight.release();
+                            if (error != null) {
+                                failures.put(notification.getId(), unwrap(error));
+                            }
+                        }));
+            } catch (RuntimeException e) {
+                inFlight.release();
+                failures.put(notification.getId(), e);
+            }
+        }
+        
+        // Outcomes are already recorded per message; the client's call timeout bounds this wait
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).exceptionally(error -> null).join();
+        return failures;
+    }
+    
+    /**
+     * The cause of a failed publish. No response at all (connection failures, timeouts), throttling and
+     * server errors are SNS's problem rather than the number's, and are reported as the channel being
+     * unavailable.
+     */
+    private Exception unwrap(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof SdkClientException
+                || (cause instanceof SdkServiceException service && (service.isThrottlingException()
+                        || service.statusCode() >= 500))) {
+            return new ChannelUnavailableException("SNS unavailable: " + cause.getMessage(), cause);
+        }
+        return cause instanceof Exception exception ? exception : new RuntimeException(cause);
+    }
+    
+    private void queue(OutboxNotification.Type type, OutboxNotification.Lane lane, Long userId, String phoneNumber,
+                       String subject, String text, String linkToken) {
+        OutboxNotification notification = new OutboxNotification();
+        notification.setType(type);
+        notification.setChannel(OutboxNotification.Channel.SMS);
+        notification.setLane(lane);
+        notification.setUserId(userId);
+        notification.setRecipient(phoneNumber);
+        notification.setSubject(subject);
+        notification.setBody(text);
+        notification.setLinkToken(linkToken);
+        outboxRepository.save(notification);
+    }
+}
@@ -30,22 +30,23 @@ public class TrustedContactService {
     @Autowired
     private ActivityLogService activityLogService;
     
-    public List<TrustedContactDto> getUserContacts(String userEmail) {
-        User user = getUserByEmail(userEmail);
-        List<TrustedContact> contacts = trustedContactRepository.findByUserId(user.getId());
+    @Autowired
+    private ContactTokenService contactTokenService;
+    
+    public List<TrustedContactDto> getUserContacts(Long userId) {
+        List<TrustedContact> contacts = trustedContactRepository.findByUserId(userId);
         
         return contacts.stream()
                 .map(this::convertToDto)
                 .collect(Collectors.toList());
     }
     
-    public TrustedContactDto addContact(String userEmail, TrustedContactDto contactDto) {
-        User user = getUserByEmail(userEmail);
-        
-        if (trustedContactRepository.existsByUserIdAndEmail(user.getId(), contactDto.getEmail())) {
+    public TrustedContactDto addContact(Long userId, TrustedContactDto contactDto) {
+        if (trustedContactRepository.existsByUserIdAndEmail(userId, contactDto.getEmail())) {
             throw new RuntimeException("Contact with this email already exists");
         }
         
+        User user = userReference(userId);
         TrustedContact contact = new TrustedContact();
         contact.setUser(user);
         contact.setName(contactDto.getName());
@@ -57,6 +58,7 @@ public class TrustedContactService {
         // Mark as verified immediately since we're not sending verification emails
         contact.setIsVerified(true);
         contact.setVerifiedAt(java.time.LocalDateTime.now());
+        contactTokenService.issue(contact, LocalDateTime.now());
         
         TrustedContact savedContact = trustedContactRepository.save(contact);
         
@@ -66,17 +68,18 @@ public class TrustedContactService {
         return convertToDto(savedContact);
     }
     
-    public void removeContact(String userEmail, Long contactId) {
-        User user = getUserByEmail(userEmail);
-        TrustedContact contact = trustedContactRepository.findByIdAndUserId(contactId, user.getId())
+    public void removeContact(Long userId, Long contactId) {
+        TrustedContact contact = trustedContactRepository.findByIdAndUserId(contactId, userId)
                 .orElseThrow(() -> new RuntimeException("Contact not found"));
         
         trustedContactRepository.delete(contact);
-        activityLogService.logActivity(user, "CONTACT_REMOVED", "Removed trusted contact: " + contact.getName());
+        activityLogService.logActivity(contact.getUser(), "CONTACT_REMOVED", "Removed trusted contact: " + contact.getName());
     }
     
     public boolean verifyContact(String token) {
-        TrustedContact contact = trustedContactRepository.findByVerificationToken(token)
+        TrustedContact contact = trustedContactRepository.findByVerificationTokenHash(ContactTokenService.hash(token))
+                .filter(found -> found.getVerificationTokenExpiresAt() != null
+                        && found.getVerificationTokenExpiresAt().isAfter(LocalDateTime.now()))
                 .orElseThrow(() -> new RuntimeException("Invalid verification token"));
         
         if (contact.getIsVerified()) {
@@ -110,8 +113,11 @@ public class TrustedContactService {
         return dto;
     }
     
-    private User getUserByEmail(String email) {
-        return userRepository.findByEmail(email)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+    // Not found for a deleted account, rather than a foreign-key violation when the contact is saved
+    private User userReference(Long userId) {
+        if (!userRepository.existsById(userId)) {
+            throw new UsernameNotFoundException("User not found");
+        }
+        return userRepository.getReferenceById(userId);
     }
-}
\ No newline at end of file
+}
@@ -2,6 +2,7 @@ package com.lifevault.service;
 
 import com.lifevault.entity.User;
 import com.lifevault.repository.UserRepository;
+import com.lifevault.security.UserPrincipal;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -21,6 +22,6 @@ public class UserDetailsServiceImpl implements UserDetailsService {
         User user = userRepository.findByEmail(email)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found with email: " + email));
         
-        return user;
+        return UserPrincipal.from(user);
     }
 }
\ No newline at end of file
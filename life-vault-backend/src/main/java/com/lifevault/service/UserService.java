@@ -1,18 +1,22 @@
 package com.lifevault.service;
 
 import com.lifevault.dto.ChangePasswordRequest;
+import com.lifevault.dto.NotificationPreferencesRequest;
 import com.lifevault.dto.UpdateProfileRequest;
 import com.lifevault.dto.UserSettingsRequest;
+import com.lifevault.entity.NotificationPreference;
 import com.lifevault.entity.User;
+import com.lifevault.repository.NotificationPreferenceRepository;
 import com.lifevault.repository.UserRepository;
+import com.lifevault.security.PrincipalCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.UUID;
 
 @Service
 @Transactional
@@ -27,24 +31,45 @@ public class UserService {
     @Autowired
     private ActivityLogService activityLogService;
     
+    @Autowired
+    private InactivityPolicy inactivityPolicy;
+    
+    @Autowired
+    private NotificationPreferenceRepository notificationPreferenceRepository;
+    
+    @Autowired
+    private ActivityTokenService activityTokenService;
+    
+    @Autowired
+    private PrincipalCache principalCache;
+    
+    @Autowired
+    private WebhookService webhookService;
+    
     public User getUserByEmail(String email) {
         return userRepository.findByEmail(email)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found"));
     }
     
-    public void updateProfile(String email, UpdateProfileRequest request) {
-        User user = getUserByEmail(email);
+    public User getUser(Long userId) {
+        return userRepository.findById(userId)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+    }
+    
+    public void updateProfile(Long userId, UpdateProfileRequest request) {
+        User user = getUser(userId);
         
         user.setFirstName(request.getFirstName());
         user.setLastName(request.getLastName());
         user.setPhoneNumber(request.getPhoneNumber());
         
         userRepository.save(user);
+        principalCache.invalidate(user.getEmail());
         activityLogService.logActivity(user, "SETTINGS_UPDATED", "Profile information updated");
     }
     
-    public void changePassword(String email, ChangePasswordRequest request) {
-        User user = getUserByEmail(email);
+    public void changePassword(Long userId, ChangePasswordRequest request) {
+        User user = getUser(userId);
         
         // Verify current password
         if (!passwordEncoder.matches(request.getCurrentPassword(), user.getPassword())) {
@@ -54,56 +79,95 @@ public class UserService {
         // Set new password
         user.setPassword(passwordEncoder.encode(request.getNewPassword()));
         userRepository.save(user);
+        principalCache.invalidate(user.getEmail());
         
         activityLogService.logActivity(user, "SETTINGS_UPDATED", "Password changed");
     }
     
-    public void updateSettings(String email, UserSettingsRequest request) {
-        User user = getUserByEmail(email);
+    public void updateSettings(Long userId, UserSettingsRequest request) {
+        User user = getUser(userId);
         
         user.setInactivityPeriodDays(request.getInactivityPeriodDays());
+        inactivityPolicy.schedule(user, LocalDateTime.now());
         userRepository.save(user);
         
         activityLogService.logActivity(user, "SETTINGS_UPDATED", 
                 "Inactivity period updated to " + request.getInactivityPeriodDays() + " days");
     }
     
-    public void updateLastActivity(String email) {
-        User user = getUserByEmail(email);
-        user.setLastActivityAt(LocalDateTime.now());
+    public NotificationPreference getNotificationPreferences(Long userId) {
+        return notificationPreferenceRepository.findByUserId(userId)
+                .orElseGet(() -> newNotificationPreference(userId));
+    }
+    
+    public void updateNotificationPreferences(Long userId, NotificationPreferencesRequest request) {
+        NotificationPreference preference = notificationPreferenceRepository.findByUserId(userId)
+                .orElseGet(() -> newNotificationPreference(userId));
+        
+        preference.setEmail(request.getEmail());
+        preference.setSms(request.getSms());
+        String webhookUrl = request.getWebhookUrl() == null || request.getWebhookUrl().isBlank()
+                ? null : request.getWebhookUrl();
+        if (webhookUrl == null) {
+            preference.setWebhookSecret(null);
+        } else {
+            webhookService.checkReceiver(webhookUrl);
+            if (!webhookUrl.equals(preference.getWebhookUrl()) || preference.getWebhookSecret() == null) {
+                preference.setWebhookSecret(webhookService.newSigningSecret());
+            }
+        }
+        preference.setWebhookUrl(webhookUrl);
+        notificationPreferenceRepository.save(preference);
+        
+        activityLogService.logActivity(userRepository.getReferenceById(userId), "SETTINGS_UPDATED",
+                "Notification channels updated");
+    }
+    
+    private NotificationPreference newNotificationPreference(Long userId) {
+        NotificationPreference preference = new NotificationPreference();
+        preference.setUserId(userId);
+        return preference;
+    }
+    
+    public User updateLastActivity(Long userId) {
+        User user = getUser(userId);
+        LocalDateTime now = LocalDateTime.now();
+        user.setLastActivityAt(now);
+        inactivityPolicy.schedule(user, now);
         userRepository.save(user);
+        return user;
     }
     
+    /**
+     * Issues a fresh activity token, retiring any earlier one, without saving the user: the inactivity
+     * sweep writes each user once, together with its other changes, when the shard's transaction commits.
+     */
     public String generateActivityToken(User user) {
-        String token = UUID.randomUUID().toString();
-        user.setActivityVerificationToken(token);
-        user.setTokenExpiryDate(LocalDateTime.now().plusDays(7)); // Token valid for 7 days
-        userRepository.save(user);
-        return token;
+        return activityTokenService.issue(user, Instant.now());
     }
     
+    /**
+     * Signature and age are checked without touching the database; a valid token then costs one
+     * conditional update and one primary-key read.
+     */
     public boolean verifyUserActivity(String token) {
-        User user = userRepository.findAll().stream()
-                .filter(u -> token.equals(u.getActivityVerificationToken()))
-                .filter(u -> u.getTokenExpiryDate() != null && u.getTokenExpiryDate().isAfter(LocalDateTime.now()))
-                .findFirst()
-                .orElse(null);
-        
-        if (user != null) {
-            // Reset activity timer
-            user.setLastActivityAt(LocalDateTime.now());
-            user.setLastNotificationCheckAt(LocalDateTime.now());
-            // Clear the token after use
-            user.setActivityVerificationToken(null);
-            user.setTokenExpiryDate(null);
-            userRepository.save(user);
-            
-            activityLogService.logActivity(user, "INACTIVITY_CHECK", 
-                    "User confirmed activity via email link");
-            
-            return true;
+        ActivityTokenService.Claims claims = activityTokenService.verify(token, Instant.now());
+        if (claims == null || userRepository.consumeActivityToken(claims.getUserId(), claims.getVersion()) == 0) {
+            return false;
         }
         
-        return false;
+        User user = userRepository.findById(claims.getUserId())
+                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+        // Reset activity timer
+        LocalDateTime now = LocalDateTime.now();
+        user.setLastActivityAt(now);
+        user.setLastNotificationCheckAt(now);
+        inactivityPolicy.schedule(user, now);
+        userRepository.save(user);
+        
+        activityLogService.logActivity(user, "INACTIVITY_CHECK", 
+                "User confirmed activity via email link");
+        
+        return true;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,47 @@
+package com.lifevault.service;
+
+import com.lifevault.entity.OutboxNotification;
+import com.lifevault.entity.TrustedContact;
+import com.lifevault.util.EncryptionUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Vault-access links of queued reveals. The outbox never holds a contact's plain token: the stored
+ * bodies carry {@link #PLACEHOLDER} where the link goes and the token is kept encrypted in the row's
+ * linkToken, so the link only exists in the message being sent.
+ */
+@Component
+public class VaultLinks {
+    
+    public static final String PLACEHOLDER = "{{vaultUrl}}";
+    
+    @Autowired
+    private EncryptionUtil encryptionUtil;
+    
+    @Value("${cors.allowed-origins}")
+    private String appUrl;
+    
+    /**
+     * The contact's plain token, encrypted for the outbox row; only available right after it was issued.
+     */
+    public String seal(TrustedContact contact) {
+        return encryptionUtil.encrypt(contact.getVerificationToken());
+    }
+    
+    public String url(OutboxNotification notification) {
+        return appUrl + "/vault-access/" + encryptionUtil.decrypt(notification.getLinkToken());
+    }
+    
+    /**
+     * The text with the placeholder replaced by the notification's link. Rows without a token, queued
+     * before tokens were kept out of the outbox, already contain the link and are returned unchanged.
+     */
+    public String fill(String text, OutboxNotification notification) {
+        if (text == null || notification.getLinkToken() == null) {
+            return text;
+        }
+        return text.replace(PLACEHOLDER, url(notification));
+    }
+}
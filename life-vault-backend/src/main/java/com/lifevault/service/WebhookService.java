@@ -0,0 +1,342 @@
+package com.lifevault.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lifevault.entity.NotificationPreference;
+import com.lifevault.entity.OutboxNotification;
+import com.lifevault.entity.User;
+import com.lifevault.entity.User.InactivityMilestone;
+import com.lifevault.exception.ChannelUnavailableException;
+import com.lifevault.repository.NotificationPreferenceRepository;
+import com.lifevault.repository.OutboxNotificationRepository;
+import com.lifevault.util.EncryptionUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Outbound webhook channel: POSTs a JSON event to the URL in the user's notification preferences.
+ * The event never contains the activity token, so an automated receiver cannot keep the account
+ * "active" on its own.
+ * <p>
+ * The URL is user input, so its host is resolved and checked when it is saved, and every connection
+ * is made through a resolver that applies the same check to the addresses it connects to, so a DNS
+ * answer that changes after the check (rebinding) is caught too. Every address must be public,
+ * never loopback, private, link-local (cloud metadata at 169.254.169.254 included) or otherwise
+ * internal. Redirects are not followed. Each request is
+ * signed with the user's own secret: X-LifeVault-Signature is "sha256=" and the hex HMAC-SHA256 of
+ * the X-LifeVault-Timestamp value (epoch seconds), a '.' and the body, so a receiver can reject
+ * forged and replayed events.
+ */
+@Service
+public class WebhookService implements NotificationChannel {
+    
+    private static final String INACTIVITY_WARNING_SUBJECT = "Life Vault - Inactivity warning event";
+    private static final String VAULT_REVEAL_SUBJECT = "Life Vault - Vault reveal event";
+    private static final String SIGNATURE_ALGORITHM = "HmacSHA256";
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final byte[] NAT64_PREFIX = {0, 0x64, (byte) 0xff, (byte) 0x9b, 0, 0, 0, 0, 0, 0, 0, 0};
+    
+    @Autowired
+    private OutboxNotificationRepository outboxRepository;
+    
+    @Autowired
+    private NotificationPreferenceRepository notificationPreferenceRepository;
+    
+    @Autowired
+    private EncryptionUtil encryptionUtil;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Value("${inactivity.webhook.connect-timeout-seconds:5}")
+    private int connectTimeoutSeconds;
+    
+    @Value("${inactivity.webhook.request-timeout-seconds:10}")
+    private int requestTimeoutSeconds;
+    
+    @Value("${inactivity.webhook.max-in-flight:10}")
+    private int maxInFlight;
+    
+    // Development only: lets webhooks reach plain http and local receivers
+    @Value("${inactivity.webhook.allow-local-receivers:false}")
+    private boolean allowLocalReceivers;
+    
+    private CloseableHttpClient httpClient;
+    
+    // Runs the blocking posts, so a batch goes out concurrently
+    private ExecutorService senders;
+    
+    @PostConstruct
+    void init() {
+        PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                        .register("https", SSLConnectionSocketFactory.getSocketFactory())
+                        .build(),
+                null, this::resolveReceiver);
+        connections.setMaxTotal(maxInFlight);
+        connections.setDefaultMaxPerRoute(maxInFlight);
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connections)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout((int) TimeUnit.SECONDS.toMillis(connectTimeoutSeconds))
+                        .setSocketTimeout((int) TimeUnit.SECONDS.toMillis(requestTimeoutSeconds))
+                        .setConnectionRequestTimeout((int) TimeUnit.SECONDS.toMillis(requestTimeoutSeconds))
+                        .build())
+                // A 3xx is a failed delivery; following it would let a receiver point us anywhere
+                .disableRedirectHandling()
+                .disableAutomaticRetries()
+                .build();
+        senders = Executors.newFixedThreadPool(maxInFlight, new CustomizableThreadFactory("webhook-send-"));
+    }
+    
+    @PreDestroy
+    void stop() throws IOException {
+        senders.shutdownNow();
+        httpClient.close();
+    }
+    
+    /**
+     * Checks a webhook URL before it is saved or posted to.
+     * @throws RuntimeException if the URL is not https or its host resolves to a non-public address
+     */
+    public URI checkReceiver(String url) {
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid webhook URL", e);
+        }
+        if (uri.getHost() == null || uri.getUserInfo() != null) {
+            throw new RuntimeException("Invalid webhook URL");
+        }
+        if (allowLocalReceivers) {
+            return uri;
+        }
+        if (!"https".equalsIgnoreCase(uri.getScheme())) {
+            throw new RuntimeException("Webhook URL must use https");
+        }
+        try {
+            resolveReceiver(uri.getHost());
+        } catch (UnknownHostException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+        return uri;
+    }
+    
+    /**
+     * Resolves a receiver's host, failing unless every address is public. The connection manager
+     * resolves through this too, so the addresses connected to are the ones that were checked.
+     */
+    InetAddress[] resolveReceiver(String host) throws UnknownHostException {
+        InetAddress[] addresses;
+        try {
+            addresses = InetAddress.getAllByName(host);
+        } catch (UnknownHostException e) {
+            throw new UnknownHostException("Webhook host cannot be resolved: " + host);
+        }
+        if (!allowLocalReceivers) {
+            for (InetAddress address : addresses) {
+                if (!isPublic(address)) {
+                    throw new UnknownHostException("Webhook host must not resolve to an internal address: " + host);
+                }
+            }
+        }
+        return addresses;
+    }
+    
+    static boolean isPublic(InetAddress address) {
+        if (address.isAnyLocalAddress() || address.isLoopbackAddress() || address.isLinkLocalAddress()
+                || address.isSiteLocalAddress() || address.isMulticastAddress()) {
+            return false;
+        }
+        byte[] bytes = address.getAddress();
+        if (address instanceof Inet6Address) {
+            // Unique local fc00::/7, the IPv6 counterpart of the private ranges
+            if ((bytes[0] & 0xfe) == 0xfc) {
+                return false;
+            }
+            // NAT64 64:ff9b::/96, which a NAT64 gateway translates to any IPv4 address, internal ones included
+            return !Arrays.equals(bytes, 0, 12, NAT64_PREFIX, 0, 12);
+        }
+        int first = bytes[0] & 0xff;
+        int second = bytes[1] & 0xff;
+        // 0.0.0.0/8, carrier-grade NAT 100.64.0.0/10, benchmarking 198.18.0.0/15 and reserved 240.0.0.0/4
+        return first != 0 && !(first == 100 && (second & 0xc0) == 64) && !(first == 198 && (second & 0xfe) == 18)
+                && first < 240;
+    }
+    
+    /**
+     * @return a new random signing secret, encrypted for storage in the notification preferences
+     */
+    public String newSigningSecret() {
+        byte[] secret = new byte[32];
+        RANDOM.nextBytes(secret);
+        return encryptionUtil.encrypt(Base64.getUrlEncoder().withoutPadding().encodeToString(secret));
+    }
+    
+    /**
+     * @return the user's signing secret in plain text, as shown to the user, or null without a webhook
+     */
+    public String signingSecret(NotificationPreference preference) {
+        return preference.getWebhookSecret() == null ? null : encryptionUtil.decrypt(preference.getWebhookSecret());
+    }
+    
+    static String sign(String secret, long timestamp, String body) {
+        try {
+            Mac mac = Mac.getInstance(SIGNATURE_ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), SIGNATURE_ALGORITHM));
+            return "sha256=" + HexFormat.of().formatHex(
+                    mac.doFinal((timestamp + "." + body).getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Failed to sign webhook event", e);
+        }
+    }
+    
+    @Override
+    public OutboxNotification.Channel getChannel() {
+        return OutboxNotification.Channel.WEBHOOK;
+    }
+    
+    public void queueInactivityWarning(User user, String webhookUrl, InactivityMilestone milestone,
+                                       long daysInactive, OutboxNotification.Lane lane) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("event", "INACTIVITY_WARNING");
+        event.put("userId", user.getId());
+        event.put("milestone", milestone.name());
+        event.put("daysInactive", daysInactive);
+        event.put("inactivityPeriodDays", user.getInactivityPeriodDays());
+        event.put("occurredAt", LocalDateTime.now().toString());
+        queue(OutboxNotification.Type.INACTIVITY_WARNING, lane, user.getId(), webhookUrl,
+                INACTIVITY_WARNING_SUBJECT, event);
+    }
+    
+    public void queueVaultReveal(User user, String webhookUrl, int contactsNotified) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("event", "VAULT_REVEAL");
+        event.put("userId", user.getId());
+        event.put("contactsNotified", contactsNotified);
+        event.put("occurredAt", LocalDateTime.now().toString());
+        queue(OutboxNotification.Type.VAULT_REVEAL, OutboxNotification.Lane.REVEAL, user.getId(), webhookUrl,
+                VAULT_REVEAL_SUBJECT, event);
+    }
+    
+    /**
+     * Posts every event of the batch concurrently; anything but a 2xx response counts as a failure,
+     * as does a receiver that no longer passes {@link #checkReceiver} or a user without a signing secret.
+     * Every receiver is a different user's server, so all of these, unreachable receivers included,
+     * are failures of that one recipient and never count toward the webhook channel's circuit.
+     */
+    @Override
+    public Map<Long, Exception> deliver(List<OutboxNotification> notifications, Handover handover) {
+        Map<Long, String> secrets = notificationPreferenceRepository.findByUserIdIn(notifications.stream()
+                        .map(OutboxNotification::getUserId)
+                        .collect(Collectors.toSet())).stream()
+                .filter(preference -> preference.getWebhookSecret() != null)
+                .collect(Collectors.toMap(NotificationPreference::getUserId, this::signingSecret));
+        Map<Long, Exception> failures = new ConcurrentHashMap<>();
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        for (OutboxNotification notification : notifications) {
+            try {
+                String secret = secrets.get(notification.getUserId());
+                if (secret == null) {
+                    throw new RuntimeException("No webhook signing secret for user " + notification.getUserId()
+                            + "; the webhook has to be saved again");
+                }
+                // Checked again: the URL may have been saved under rules that have changed since
+                URI receiver = checkReceiver(notification.getRecipient());
+                long timestamp = Instant.now().getEpochSecond();
+                HttpPost request = new HttpPost(receiver);
+                request.setHeader("X-LifeVault-Event-Id", String.valueOf(notification.getId()));
+                request.setHeader("X-LifeVault-Timestamp", String.valueOf(timestamp));
+                request.setHeader("X-LifeVault-Signature", sign(secret, timestamp, notification.getBody()));
+                request.setEntity(new StringEntity(notification.getBody(), ContentType.APPLICATION_JSON));
+                if (!handover.begin(notification.getId())) {
+                    failures.put(notification.getId(), new ChannelUnavailableException(
+                            "Send stopped before the event was posted", Duration.ZERO));
+                    continue;
+                }
+                pending.add(CompletableFuture.runAsync(() -> post(notification, request, failures), senders));
+            } catch (RuntimeException e) {
+                failures.put(notification.getId(), e);
+            }
+        }
+        
+        // Outcomes are already recorded per event; the connect and request timeouts bound this wait
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).exceptionally(error -> null).join();
+        return failures;
+    }
+    
+    private void post(OutboxNotification notification, HttpPost request, Map<Long, Exception> failures) {
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            EntityUtils.consume(response.getEntity());
+            int status = response.getStatusLine().getStatusCode();
+            if (status / 100 != 2) {
+                failures.put(notification.getId(), new RuntimeException("Webhook responded with HTTP " + status));
+            }
+        } catch (IOException | RuntimeException e) {
+            failures.put(notification.getId(), e);
+        }
+    }
+    
+    private void queue(OutboxNotification.Type type, OutboxNotification.Lane lane, Long userId, String webhookUrl,
+                       String subject, Map<String, Object> event) {
+        OutboxNotification notification = new OutboxNotification();
+        notification.setType(type);
+        notification.setChannel(OutboxNotification.Channel.WEBHOOK);
+        notification.setLane(lane);
+        notification.setUserId(userId);
+        notification.setRecipient(webhookUrl);
+        notification.setSubject(subject);
+        try {
+            notification.setBody(objectMapper.writeValueAsString(event));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize webhook event", e);
+        }
+        outboxRepository.save(notification);
+    }
+}
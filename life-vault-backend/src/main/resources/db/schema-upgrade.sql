@@ -0,0 +1,50 @@
+-- Changes ddl-auto update cannot make on an existing database; every statement must be idempotent.
+-- Runs before Hibernate on every start. PostgreSQL only: the script is sent as a single statement
+-- (see spring.sql.init.separator) so the DO blocks reach the server intact.
+
+-- Contact tokens are stored hashed in verification_token_hash; the old plain-text column is NOT NULL
+-- and would reject every new contact. Hash the tokens already sent first (lowercase hex SHA-256 of the
+-- UTF-8 token, as ContactTokenService.hash) so their links keep working; they get the default
+-- inactivity.contact-token.validity-days from now, since the old tokens never expired.
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_name = 'trusted_contacts' AND column_name = 'verification_token') THEN
+        ALTER TABLE trusted_contacts ADD COLUMN IF NOT EXISTS verification_token_hash char(64);
+        ALTER TABLE trusted_contacts ADD COLUMN IF NOT EXISTS verification_token_expires_at timestamp(6);
+        UPDATE trusted_contacts
+        SET verification_token_hash = encode(sha256(convert_to(verification_token, 'UTF8')), 'hex'),
+            verification_token_expires_at = now() + interval '30 days'
+        WHERE verification_token IS NOT NULL AND verification_token_hash IS NULL;
+    END IF;
+END
+$$;
+
+ALTER TABLE IF EXISTS trusted_contacts DROP COLUMN IF EXISTS verification_token;
+
+-- Activity log ids moved from an identity column to a pooled sequence. Create the sequence here, not through
+-- Hibernate, and keep it max(id) + 50 ahead of the rows already written so no block it hands out can reuse an id.
+-- Never moves the sequence backwards, so a node restarting next to running ones is safe.
+CREATE SEQUENCE IF NOT EXISTS activity_logs_seq START WITH 1 INCREMENT BY 50;
+
+DO $$
+BEGIN
+    IF to_regclass('activity_logs') IS NOT NULL THEN
+        PERFORM setval('activity_logs_seq', logs.max_id + 50)
+        FROM (SELECT COALESCE(MAX(id), 0) AS max_id FROM activity_logs) logs, activity_logs_seq seq
+        WHERE logs.max_id + 50 > seq.last_value;
+    END IF;
+END
+$$;
+
+-- Reveals queued before contact tokens were kept out of the outbox hold the plain token in link and in
+-- their bodies. Sent and dead ones go; pending ones are still sent as queued.
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_name = 'notification_outbox' AND column_name = 'link') THEN
+        DELETE FROM notification_outbox WHERE type = 'VAULT_REVEAL' AND status IN ('SENT', 'DEAD');
+        ALTER TABLE notification_outbox DROP COLUMN link;
+    END IF;
+END
+$$;
@@ -0,0 +1,105 @@
+package com.lifevault.benchmark;
+
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.lifevault.service.MailTransportPool;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Messages per second through JavaMailSender one message at a time (a connection per message, as
+ * EmailService.sendSimpleEmail does) versus MailTransportPool batches, against an embedded GreenMail
+ * server. A local server has no TLS handshake or network latency, so the real-world gap is larger.
+ *
+ * Run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.lifevault.benchmark.MailTransportBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MailTransportBenchmark {
+
+    private static final int BATCH_SIZE = 20;
+
+    private GreenMail greenMail;
+    private JavaMailSenderImpl mailSender;
+    private MailTransportPool transportPool;
+
+    @Setup(Level.Trial)
+    public void startServer() {
+        ServerSetup smtp = ServerSetupTest.SMTP.dynamicPort();
+        greenMail = new GreenMail(smtp).withConfiguration(GreenMailConfiguration.aConfig().withDisabledAuthentication());
+        greenMail.start();
+
+        mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(greenMail.getSmtp().getPort());
+
+        transportPool = new MailTransportPool();
+        ReflectionTestUtils.setField(transportPool, "mailSender", mailSender);
+        ReflectionTestUtils.setField(transportPool, "poolSize", 4);
+        ReflectionTestUtils.setField(transportPool, "maxMessagesPerConnection", 500);
+        ReflectionTestUtils.invokeMethod(transportPool, "init");
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        ReflectionTestUtils.invokeMethod(transportPool, "closeAll");
+        greenMail.stop();
+    }
+
+    @TearDown(Level.Iteration)
+    public void purgeMailboxes() throws Exception {
+        greenMail.purgeEmailFromAllMailboxes();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void connectionPerMessage() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            SimpleMailMessage message = new SimpleMailMessage();
+            message.setFrom("noreply@lifevault.com");
+            message.setTo("user" + i + "@example.com");
+            message.setSubject("Life Vault - Activity Check Required");
+            message.setText("Benchmark body");
+            mailSender.send(message);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void pooledBatch() throws MessagingException {
+        List<MimeMessage> messages = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            MimeMessage message = mailSender.createMimeMessage();
+            MimeMessageHelper helper = new MimeMessageHelper(message, "UTF-8");
+            helper.setFrom("noreply@lifevault.com");
+            helper.setTo("user" + i + "@example.com");
+            helper.setSubject("Life Vault - Activity Check Required");
+            helper.setText("Benchmark body");
+            messages.add(message);
+        }
+        transportPool.send(messages);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MailTransportBenchmark.class.getSimpleName()).build()).run();
+    }
+}
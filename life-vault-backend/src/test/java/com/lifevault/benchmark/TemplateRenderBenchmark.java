@@ -0,0 +1,120 @@
+package com.lifevault.benchmark;
+
+import com.lifevault.entity.User.InactivityMilestone;
+import com.lifevault.service.NotificationTemplates;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-message cost of rendering an inactivity warning: the String.format body EmailService used to
+ * build for every send versus the compiled NotificationTemplates. Runs with the GC profiler, so the
+ * gc.alloc.rate.norm column gives bytes allocated per render.
+ *
+ * Run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.lifevault.benchmark.TemplateRenderBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateRenderBenchmark {
+
+    private static final String APP_URL = "https://lifevault.example.com";
+    private static final String VERIFICATION_URL = APP_URL + "/api/activity/verify/3f8a6c1e-5b7d-4e2a-9c0f-1d2e3f4a5b6c";
+
+    private NotificationTemplates templates;
+
+    @Setup
+    public void compileTemplates() {
+        templates = new NotificationTemplates();
+        templates.compile();
+    }
+
+    @Benchmark
+    public String stringFormat() {
+        return legacyWarningText("Alex", "final week warning", 175, 180);
+    }
+
+    @Benchmark
+    public String compiledText() {
+        return templates.renderWarning(InactivityMilestone.FINAL_WEEK_WARNING,
+                "Alex", 175L, 5L, 19L, VERIFICATION_URL, APP_URL, 180, 14).getText();
+    }
+
+    @Benchmark
+    public NotificationTemplates.RenderedEmail compiledTextAndHtml() {
+        return templates.renderWarning(InactivityMilestone.FINAL_WEEK_WARNING,
+                "Alex", 175L, 5L, 19L, VERIFICATION_URL, APP_URL, 180, 14);
+    }
+
+    // EmailService's warning body before templates were compiled, kept verbatim as the baseline
+    private static String legacyWarningText(String firstName, String type, long daysInactive, int totalPeriod) {
+        String urgency = "";
+        String timeRemaining = "";
+        long daysRemaining = totalPeriod - daysInactive;
+
+        switch (type) {
+            case "50% warning":
+                urgency = "Routine Check-In";
+                timeRemaining = String.format("You have %d days remaining before the next check.", daysRemaining);
+                break;
+            case "75% warning":
+                urgency = "Important Reminder";
+                timeRemaining = String.format("Only %d days remaining before final notifications begin.", daysRemaining);
+                break;
+            case "final week warning":
+                urgency = "URGENT: Final Week Notice";
+                timeRemaining = String.format("Only %d days left! Daily reminders will be sent.", daysRemaining);
+                break;
+            case "grace period warning":
+                urgency = "CRITICAL: Grace Period Active";
+                long graceDaysLeft = 14 - (daysInactive - totalPeriod);
+                timeRemaining = String.format("Your trusted contacts will be notified in %d days if you don't respond!", graceDaysLeft);
+                break;
+            default:
+                urgency = "Activity Check";
+                timeRemaining = "Please log in to confirm you're okay.";
+        }
+
+        return String.format(
+            "Hello %s,\n\n" +
+            "[%s]\n\n" +
+            "It's been %d days since your last activity on Life Vault.\n\n" +
+            "%s\n\n" +
+            "━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━\n" +
+            "CLICK HERE TO CONFIRM YOU'RE ACTIVE:\n" +
+            "%s\n" +
+            "━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━\n\n" +
+            "This one-click link will:\n" +
+            "✓ Instantly reset your activity timer\n" +
+            "✓ No login required\n" +
+            "✓ Valid for 7 days\n\n" +
+            "Alternative: You can also log in at: %s\n\n" +
+            "Remember: Your trusted contacts will only be notified if you don't respond " +
+            "for your full inactivity period (%d days) plus a %d-day grace period.\n\n" +
+            "Best regards,\nLife Vault Team",
+            firstName,
+            urgency,
+            daysInactive,
+            timeRemaining,
+            VERIFICATION_URL,
+            APP_URL,
+            totalPeriod,
+            14
+        );
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TemplateRenderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
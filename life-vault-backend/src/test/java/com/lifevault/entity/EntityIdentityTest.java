@@ -0,0 +1,84 @@
+package com.lifevault.entity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.AbstractSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntityIdentityTest {
+
+    // Stands in for an uninitialized lazy collection: any traversal fails the test
+    private static <T> Set<T> untouchable() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<T> iterator() {
+                throw new AssertionError("collection traversed");
+            }
+
+            @Override
+            public int size() {
+                throw new AssertionError("collection traversed");
+            }
+        };
+    }
+
+    private static User user(Long id) {
+        User user = new User();
+        user.setId(id);
+        user.setEmail("user" + id + "@example.com");
+        user.setPassword("$2a$10$secret-hash");
+        user.setAssets(untouchable());
+        user.setTrustedContacts(untouchable());
+        return user;
+    }
+
+    @Test
+    void user_IdentityAndToStringLeaveAssociationsAlone() {
+        User user = user(1L);
+        User sameRow = user(1L);
+        sameRow.setFirstName("Changed");
+
+        assertEquals(user, sameRow);
+        assertEquals(user.hashCode(), sameRow.hashCode());
+        assertNotEquals(user, user(2L));
+
+        String text = user.toString();
+        assertTrue(text.contains("user1@example.com"));
+        assertFalse(text.contains("secret-hash"));
+    }
+
+    @Test
+    void unsavedEntities_AreOnlyEqualToThemselves() {
+        TrustedContact first = new TrustedContact();
+        TrustedContact second = new TrustedContact();
+        first.setEmail("same@example.com");
+        second.setEmail("same@example.com");
+
+        assertNotEquals(first, second);
+        assertEquals(first, first);
+
+        // Hash stays put when persist assigns the id, so a set still finds the entity
+        Set<TrustedContact> contacts = new HashSet<>(Set.of(first));
+        first.setId(10L);
+        assertTrue(contacts.contains(first));
+    }
+
+    @Test
+    void children_ToStringSkipsTheOwner() {
+        Asset asset = new Asset();
+        asset.setId(5L);
+        asset.setName("Savings");
+        asset.setUser(user(1L));
+        TrustedContact contact = new TrustedContact();
+        contact.setUser(user(1L));
+        contact.setVerificationTokenHash("a".repeat(64));
+
+        assertFalse(asset.toString().contains("user1@example.com"));
+        assertFalse(contact.toString().contains("user1@example.com"));
+        assertFalse(contact.toString().contains("a".repeat(64)));
+    }
+}
@@ -5,6 +5,12 @@ import com.lifevault.dto.LoginRequest;
 import com.lifevault.dto.SignupRequest;
 import com.lifevault.entity.User;
 import com.lifevault.repository.UserRepository;
+import com.lifevault.security.PrincipalCache;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -35,6 +41,15 @@ class AuthenticationIntegrationTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private PrincipalCache principalCache;
+
     @BeforeEach
     void setUp() {
         userRepository.deleteAll();
@@ -217,6 +232,156 @@ class AuthenticationIntegrationTest {
                 .andExpect(jsonPath("$.email").value("protected@example.com"));
     }
 
+    @Test
+    void protectedEndpoint_WarmPrincipalLeavesOneStatementPerRequest() throws Exception {
+        SignupRequest signupRequest = new SignupRequest();
+        signupRequest.setEmail("cached@example.com");
+        signupRequest.setPassword("Password123!");
+        signupRequest.setFirstName("Cached");
+        signupRequest.setLastName("User");
+        mockMvc.perform(post("/api/auth/signup")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(signupRequest)))
+                .andExpect(status().isOk());
+
+        LoginRequest loginReq = new LoginRequest();
+        loginReq.setEmail("cached@example.com");
+        loginReq.setPassword("Password123!");
+        MvcResult loginResult = mockMvc.perform(post("/api/auth/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(loginReq)))
+                .andExpect(status().isOk())
+                .andReturn();
+        String token = objectMapper.readTree(loginResult.getResponse().getContentAsString()).get("token").asText();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        try {
+            principalCache.invalidate("cached@example.com");
+            startFreshRequest(statistics);
+            mockMvc.perform(get("/api/users/profile").header("Authorization", "Bearer " + token))
+                    .andExpect(status().isOk());
+            long coldStatements = statistics.getPrepareStatementCount();
+
+            startFreshRequest(statistics);
+            mockMvc.perform(get("/api/users/profile").header("Authorization", "Bearer " + token))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.email").value("cached@example.com"));
+            long warmStatements = statistics.getPrepareStatementCount();
+
+            startFreshRequest(statistics);
+            mockMvc.perform(get("/api/assets").header("Authorization", "Bearer " + token))
+                    .andExpect(status().isOk());
+            long assetListStatements = statistics.getPrepareStatementCount();
+
+            // Cold, the principal's load also serves the profile's primary-key lookup from the persistence context
+            assertEquals(1, coldStatements);
+            assertEquals(1, warmStatements);
+            // The asset list is queried by the principal's id, with no user lookup in front of it
+            assertEquals(1, assetListStatements);
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+
+    @Test
+    void protectedEndpoint_TokenOfAReplacedAccountIsRejected() throws Exception {
+        String oldToken = signupAndLogin("replaced@example.com");
+        mockMvc.perform(get("/api/users/profile").header("Authorization", "Bearer " + oldToken))
+                .andExpect(status().isOk());
+
+        // The email moves to a new account; the old token still carries the old id
+        User original = userRepository.findByEmail("replaced@example.com").orElseThrow();
+        original.setEmail("retired@example.com");
+        userRepository.saveAndFlush(original);
+        String newToken = signupAndLogin("replaced@example.com");
+        User replacement = userRepository.findByEmail("replaced@example.com").orElseThrow();
+
+        mockMvc.perform(get("/api/users/profile").header("Authorization", "Bearer " + oldToken))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/users/profile").header("Authorization", "Bearer " + newToken))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(replacement.getId()));
+    }
+
+    @Test
+    void actuator_OnlyHealthIsOpenToNonAdmins() throws Exception {
+        String token = signupAndLogin("metrics@example.com");
+
+        // Answers without a token; DOWN here because the test mail server is not running
+        mockMvc.perform(get("/actuator/health"))
+                .andExpect(jsonPath("$.status").exists());
+        mockMvc.perform(get("/actuator/metrics"))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/actuator/metrics")
+                .header("Authorization", "Bearer " + token))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void actuator_AdminCanReadMetrics() throws Exception {
+        String token = signupAndLogin("admin@example.com");
+        mockMvc.perform(get("/actuator/metrics")
+                .header("Authorization", "Bearer " + token))
+                .andExpect(status().isForbidden());
+
+        // The grant evicts the principal cached without the role, so the same token now carries it
+        User admin = userRepository.findByEmail("admin@example.com").orElseThrow();
+        admin.setIsAdmin(true);
+        userRepository.saveAndFlush(admin);
+
+        mockMvc.perform(get("/actuator/metrics")
+                .header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void protectedEndpoint_TokenOfADeactivatedAccountIsRejected() throws Exception {
+        String token = signupAndLogin("deactivated@example.com");
+        mockMvc.perform(get("/api/users/profile").header("Authorization", "Bearer " + token))
+                .andExpect(status().isOk());
+
+        User user = userRepository.findByEmail("deactivated@example.com").orElseThrow();
+        user.setIsActive(false);
+        userRepository.saveAndFlush(user);
+
+        mockMvc.perform(get("/api/users/profile").header("Authorization", "Bearer " + token))
+                .andExpect(status().isUnauthorized());
+    }
+
+    // Requests share the test transaction; flush pending writes and start from an empty persistence context
+    private void startFreshRequest(Statistics statistics) {
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+    }
+
+    private String signupAndLogin(String email) throws Exception {
+        SignupRequest signupRequest = new SignupRequest();
+        signupRequest.setEmail(email);
+        signupRequest.setPassword("Password123!");
+        signupRequest.setFirstName("Test");
+        signupRequest.setLastName("User");
+        mockMvc.perform(post("/api/auth/signup")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(signupRequest)))
+                .andExpect(status().isOk());
+
+        return login(email);
+    }
+
+    private String login(String email) throws Exception {
+        LoginRequest loginReq = new LoginRequest();
+        loginReq.setEmail(email);
+        loginReq.setPassword("Password123!");
+        MvcResult loginResult = mockMvc.perform(post("/api/auth/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(loginReq)))
+                .andExpect(status().isOk())
+                .andReturn();
+        return objectMapper.readTree(loginResult.getResponse().getContentAsString()).get("token").asText();
+    }
+
     @Test
     void cors_PreflightRequest() throws Exception {
         mockMvc.perform(options("/api/auth/signup")
@@ -0,0 +1,202 @@
+package com.lifevault.integration;
+
+import com.lifevault.LifeVaultApplication;
+import com.lifevault.entity.SweepRun;
+import com.lifevault.entity.User;
+import com.lifevault.repository.NotificationLedgerRepository;
+import com.lifevault.repository.SweepRunRepository;
+import com.lifevault.repository.UserRepository;
+import com.lifevault.scheduler.InactivityCheckScheduler;
+import com.lifevault.scheduler.InactivitySweepShardJob;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.quartz.CronTrigger;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.Trigger;
+import org.quartz.TriggerKey;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.quartz.listeners.JobListenerSupport;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two application contexts, each with its own clustered Quartz scheduler, sharing one H2 database
+ * and so one JDBC job store: the closest a single JVM gets to two nodes behind the same Postgres.
+ */
+class ClusteredSweepIntegrationTest {
+
+    private static final String SCHEDULER_NAME = "clusteredSweepTest";
+    private static final String NEVER = "0 0 0 1 1 ? 2099";
+    private static final int USERS = 40;
+    private static final int SHARD_SIZE = 5;
+
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+
+    // Shard job name -> how many times it ran, on either node
+    private static final Map<String, AtomicInteger> executions = new ConcurrentHashMap<>();
+    private static final Map<String, String> executedOn = new ConcurrentHashMap<>();
+    private static final List<Throwable> failures = new ArrayList<>();
+    private static final CountDownLatch nodeBStarted = new CountDownLatch(1);
+
+    @BeforeAll
+    static void startNodes() throws Exception {
+        // The first node creates the schema; the second must not drop it again
+        nodeA = startNode("node-a", "create");
+        nodeB = startNode("node-b", "none");
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        // Both schedulers use the job store data source registered last, node B's, so it closes last
+        if (nodeA != null) {
+            nodeA.close();
+        }
+        if (nodeB != null) {
+            nodeB.close();
+        }
+    }
+
+    private static ConfigurableApplicationContext startNode(String instanceId, String ddlAuto) throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(LifeVaultApplication.class)
+                .profiles("test")
+                // Arguments, not default properties, so they win over application.yml
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:clustered-sweep;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.hibernate.ddl-auto=" + ddlAuto,
+                        "--server.port=0",
+                        // Own scheduler name, so the job store data sources of the cached test contexts are left alone
+                        "--spring.quartz.scheduler-name=" + SCHEDULER_NAME,
+                        "--spring.quartz.properties.org.quartz.scheduler.instanceId=" + instanceId,
+                        "--spring.quartz.properties.org.quartz.scheduler.idleWaitTime=1000",
+                        "--spring.quartz.properties.org.quartz.threadPool.threadCount=2",
+                        "--inactivity.sweep.cron=" + NEVER,
+                        "--inactivity.sweep.shard-size=" + SHARD_SIZE,
+                        "--inactivity.sweep.spread-minutes=0",
+                        "--inactivity.outbox.poll-interval-ms=3600000");
+        Scheduler scheduler = context.getBean(Scheduler.class);
+        scheduler.getListenerManager().addJobListener(new JobListenerSupport() {
+            @Override
+            public String getName() {
+                return "shard-counter-" + instanceId;
+            }
+
+            @Override
+            public void jobToBeExecuted(JobExecutionContext jobContext) {
+                if ("node-b".equals(instanceId)) {
+                    nodeBStarted.countDown();
+                }
+            }
+
+            @Override
+            public void jobWasExecuted(JobExecutionContext jobContext, JobExecutionException jobException) {
+                String shard = jobContext.getJobDetail().getKey().getName();
+                executions.computeIfAbsent(shard, name -> new AtomicInteger()).incrementAndGet();
+                executedOn.put(shard, instanceId);
+                if (jobException != null) {
+                    synchronized (failures) {
+                        failures.add(jobException);
+                    }
+                }
+            }
+        }, GroupMatcher.jobGroupEquals(InactivitySweepShardJob.GROUP));
+        return context;
+    }
+
+    @Test
+    void sweepTrigger_IsRegisteredOnceInTheSharedStore() throws Exception {
+        for (ConfigurableApplicationContext node : List.of(nodeA, nodeB)) {
+            Scheduler scheduler = node.getBean(Scheduler.class);
+            assertTrue(scheduler.getMetaData().isJobStoreClustered());
+
+            Trigger trigger = scheduler.getTrigger(TriggerKey.triggerKey("inactivitySweepTrigger"));
+            assertInstanceOf(CronTrigger.class, trigger);
+            assertEquals(NEVER, ((CronTrigger) trigger).getCronExpression());
+            assertEquals(CronTrigger.MISFIRE_INSTRUCTION_FIRE_ONCE_NOW, trigger.getMisfireInstruction());
+            // Both nodes registered it on start; the shared store holds a single copy
+            assertEquals(1, scheduler.getTriggersOfJob(JobKey.jobKey("inactivitySweep")).size());
+        }
+        assertNotEquals(nodeA.getBean(Scheduler.class).getSchedulerInstanceId(),
+                nodeB.getBean(Scheduler.class).getSchedulerInstanceId());
+    }
+
+    @Test
+    void sweepRun_EachShardRunsExactlyOnceAcrossNodes() throws Exception {
+        UserRepository userRepository = nodeA.getBean(UserRepository.class);
+        LocalDateTime lastActivity = LocalDateTime.now().minusDays(90).minusMinutes(1);
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            User user = new User();
+            user.setEmail("clustered" + i + "@example.com");
+            user.setPassword("encoded");
+            user.setFirstName("Clustered");
+            user.setLastName("User" + i);
+            user.setLastActivityAt(lastActivity);
+            // Day 90 of 180, due a minute ago
+            user.setNextActionAt(lastActivity.plusDays(90));
+            user.setNextActionType(User.InactivityMilestone.HALF_WARNING);
+            users.add(user);
+        }
+        userRepository.saveAll(users);
+
+        // Node A plans the run but cannot lease its shards until node B is working on them,
+        // so the shards are shared between the nodes rather than all run where they were queued
+        Scheduler schedulerA = nodeA.getBean(Scheduler.class);
+        schedulerA.standby();
+        nodeA.getBean(InactivityCheckScheduler.class).checkInactiveUsers();
+        assertTrue(nodeBStarted.await(30, TimeUnit.SECONDS), "Node B never leased a shard queued by node A");
+        schedulerA.start();
+
+        SweepRunRepository sweepRunRepository = nodeB.getBean(SweepRunRepository.class);
+        SweepRun run = awaitFinishedRun(sweepRunRepository);
+        int shards = USERS / SHARD_SIZE;
+        assertEquals(shards, run.getShards());
+        assertEquals(USERS, run.getUsersProcessed());
+        assertNotNull(run.getUsersPerSecond());
+
+        // Long enough for a shard that was wrongly leased twice, or recovered while still running, to show up
+        Thread.sleep(2000);
+        assertTrue(failures.isEmpty(), () -> "Shard jobs failed: " + failures);
+        assertEquals(shards, executions.size());
+        executions.forEach((shard, count) -> assertEquals(1, count.get(), shard + " ran " + count.get() + " times"));
+        assertEquals(shards, executedOn.size());
+        assertTrue(executedOn.containsValue("node-b"));
+        // Non-durable shard jobs are removed from the store once they have run
+        assertTrue(nodeB.getBean(Scheduler.class)
+                .getJobKeys(GroupMatcher.jobGroupEquals(InactivitySweepShardJob.GROUP)).isEmpty());
+
+        // Every user's milestone was recorded and handled once, whichever node ran its shard
+        assertEquals(USERS, nodeB.getBean(NotificationLedgerRepository.class).count());
+        userRepository.findAll().forEach(user ->
+                assertEquals(User.InactivityMilestone.THREE_QUARTERS_WARNING, user.getNextActionType()));
+    }
+
+    private static SweepRun awaitFinishedRun(SweepRunRepository sweepRunRepository) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (System.currentTimeMillis() < deadline) {
+            List<SweepRun> runs = sweepRunRepository.findAll();
+            if (runs.size() == 1 && runs.get(0).getShards() > 0
+                    && runs.get(0).getCompletedShards().equals(runs.get(0).getShards())) {
+                return runs.get(0);
+            }
+            Thread.sleep(200);
+        }
+        fail("Sweep run did not finish: " + sweepRunRepository.findAll());
+        return null;
+    }
+}
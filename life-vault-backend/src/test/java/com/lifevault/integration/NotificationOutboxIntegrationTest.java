@@ -0,0 +1,191 @@
+package com.lifevault.integration;
+
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.lifevault.entity.OutboxNotification;
+import com.lifevault.entity.TrustedContact;
+import com.lifevault.entity.User;
+import com.lifevault.repository.OutboxNotificationRepository;
+import com.lifevault.repository.TrustedContactRepository;
+import com.lifevault.repository.UserRepository;
+import com.lifevault.scheduler.NotificationOutboxPurgeScheduler;
+import com.lifevault.scheduler.NotificationOutboxWorker;
+import com.lifevault.service.EmailService;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class NotificationOutboxIntegrationTest {
+
+    // Listens on the test profile's spring.mail.port (3025)
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP)
+            .withConfiguration(GreenMailConfiguration.aConfig().withDisabledAuthentication());
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private NotificationOutboxWorker outboxWorker;
+
+    @Autowired
+    private OutboxNotificationRepository outboxRepository;
+
+    @Autowired
+    private NotificationOutboxPurgeScheduler outboxPurgeScheduler;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TrustedContactRepository trustedContactRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void tearDown() {
+        outboxRepository.deleteAll();
+        trustedContactRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    private User createUser() {
+        return createUser("outbox@example.com", "Outbox");
+    }
+
+    private User createUser(String email, String firstName) {
+        User user = new User();
+        user.setEmail(email);
+        user.setPassword("encoded");
+        user.setFirstName(firstName);
+        user.setLastName("User");
+        return userRepository.save(user);
+    }
+
+    private TrustedContact createContact(User user, String email) {
+        TrustedContact contact = new TrustedContact();
+        contact.setUser(user);
+        contact.setName("Shared Contact");
+        contact.setEmail(email);
+        contact.setRelationship("Sibling");
+        contact.setIsVerified(true);
+        contact.setVerificationToken("token-" + user.getId());
+        return trustedContactRepository.save(contact);
+    }
+
+    @Test
+    void queuedWarning_IsSentOnlyAfterCommitAndMarkedSent() throws Exception {
+        User user = createUser();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        transactionTemplate.executeWithoutResult(status ->
+                emailService.queueInactivityWarningEmail(user, "50% warning", 90, "token-1"));
+        assertEquals(0, greenMail.getReceivedMessages().length);
+
+        outboxWorker.drain();
+
+        assertTrue(greenMail.waitForIncomingEmail(5000, 1));
+        MimeMessage received = greenMail.getReceivedMessages()[0];
+        assertEquals("Life Vault - Activity Check Required", received.getSubject());
+        assertEquals(1, outboxRepository.countByStatus(OutboxNotification.Status.SENT));
+    }
+
+    @Test
+    void rolledBackTransaction_LeavesNothingToSend() {
+        User user = createUser();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            emailService.queueInactivityWarningEmail(user, "50% warning", 90, "token-2");
+            status.setRollbackOnly();
+        });
+        outboxWorker.drain();
+
+        assertEquals(0, outboxRepository.count());
+        assertEquals(0, greenMail.getReceivedMessages().length);
+    }
+
+    @Test
+    void revealsToTheSameContact_AreSentAsOneDigest() throws Exception {
+        User anna = createUser("anna@example.com", "Anna");
+        User ben = createUser("ben@example.com", "Ben");
+        TrustedContact forAnna = createContact(anna, "family@example.com");
+        TrustedContact forBen = createContact(ben, "family@example.com");
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> {
+            emailService.queueVaultRevealNotification(forAnna, anna);
+            emailService.queueVaultRevealNotification(forBen, ben);
+        });
+
+        // Nothing is due inside the coalescing window
+        outboxWorker.drain();
+        assertEquals(0, greenMail.getReceivedMessages().length);
+
+        // Once the first reveal is due, the second one still in its window joins it
+        List<OutboxNotification> queued = outboxRepository.findAll();
+        OutboxNotification first = queued.get(0);
+        first.setNextAttemptAt(LocalDateTime.now().minusSeconds(1));
+        outboxRepository.save(first);
+        outboxWorker.drain();
+
+        assertTrue(greenMail.waitForIncomingEmail(5000, 1));
+        assertEquals(1, greenMail.getReceivedMessages().length);
+        String digest = GreenMailUtil.getBody(greenMail.getReceivedMessages()[0]);
+        assertTrue(digest.contains("Anna User"));
+        assertTrue(digest.contains("Ben User"));
+        assertTrue(digest.contains("/vault-access/token-" + anna.getId()));
+        assertEquals(2, outboxRepository.countByStatus(OutboxNotification.Status.SENT));
+        // Neither the stored bodies nor the sent rows keep the contacts' tokens
+        for (OutboxNotification sent : outboxRepository.findAll()) {
+            assertFalse(sent.getBody().contains("token-"));
+            assertNull(sent.getLinkToken());
+        }
+    }
+
+    @Test
+    void purge_DeletesOldSentAndDeadRowsOnly() {
+        User user = createUser();
+        OutboxNotification oldSent = saveNotification(user, OutboxNotification.Status.SENT, 10);
+        OutboxNotification oldDead = saveNotification(user, OutboxNotification.Status.DEAD, 10);
+        OutboxNotification oldPending = saveNotification(user, OutboxNotification.Status.PENDING, 10);
+        OutboxNotification recentSent = saveNotification(user, OutboxNotification.Status.SENT, 1);
+
+        outboxPurgeScheduler.purgeFinishedNotifications();
+
+        assertFalse(outboxRepository.existsById(oldSent.getId()));
+        assertFalse(outboxRepository.existsById(oldDead.getId()));
+        assertTrue(outboxRepository.existsById(oldPending.getId()));
+        assertTrue(outboxRepository.existsById(recentSent.getId()));
+    }
+
+    private OutboxNotification saveNotification(User user, OutboxNotification.Status status, int daysAgo) {
+        OutboxNotification notification = new OutboxNotification();
+        notification.setType(OutboxNotification.Type.INACTIVITY_WARNING);
+        notification.setUserId(user.getId());
+        notification.setRecipient(user.getEmail());
+        notification.setSubject("Subject");
+        notification.setBody("Body");
+        notification.setStatus(status);
+        // Pushed far ahead so a concurrent drain never claims it
+        notification.setNextAttemptAt(LocalDateTime.now().plusDays(1));
+        notification = outboxRepository.save(notification);
+        notification.setCreatedAt(LocalDateTime.now().minusDays(daysAgo));
+        return outboxRepository.save(notification);
+    }
+}
@@ -0,0 +1,77 @@
+package com.lifevault.repository;
+
+import com.lifevault.entity.NotificationLedgerEntry;
+import com.lifevault.entity.User.InactivityMilestone;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The test profile's H2 runs in PostgreSQL mode, which the embedded replacement database would not
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+class NotificationLedgerRepositoryTest {
+
+    @Autowired
+    private NotificationLedgerRepository notificationLedgerRepository;
+
+    private final LocalDateTime cycleStart = LocalDateTime.of(2024, 1, 1, 9, 30);
+
+    @Test
+    void insertAllIfAbsent_RecordsEachMilestoneOfACycleOnce() {
+        LocalDateTime now = LocalDateTime.now();
+
+        assertEquals(Set.of(1L, 2L), notificationLedgerRepository.insertAllIfAbsent(List.of(
+                entry(1L, 175, cycleStart, now), entry(2L, 175, cycleStart, now))));
+        // User 1's entry is already there; user 3's is new
+        assertEquals(Set.of(3L), notificationLedgerRepository.insertAllIfAbsent(List.of(
+                entry(1L, 175, cycleStart, now), entry(3L, 175, cycleStart, now))));
+
+        assertEquals(3, notificationLedgerRepository.count());
+    }
+
+    @Test
+    void insertAllIfAbsent_NextDayAndNextCycleAreNewEntries() {
+        LocalDateTime now = LocalDateTime.now();
+        notificationLedgerRepository.insertAllIfAbsent(List.of(entry(1L, 175, cycleStart, now)));
+
+        assertEquals(Set.of(1L), notificationLedgerRepository.insertAllIfAbsent(List.of(
+                entry(1L, 176, cycleStart, now))));
+        assertEquals(Set.of(1L), notificationLedgerRepository.insertAllIfAbsent(List.of(
+                entry(1L, 175, cycleStart.plusDays(30), now))));
+        assertEquals(Set.of(2L), notificationLedgerRepository.insertAllIfAbsent(List.of(
+                entry(2L, 175, cycleStart, now))));
+    }
+
+    @Test
+    void insertSql_OneValuesTuplePerRow() {
+        assertEquals("INSERT INTO notification_ledger (user_id, milestone, cycle_start, cycle_day, created_at) "
+                        + "VALUES (?1, ?2, ?3, ?4, ?5), (?6, ?7, ?8, ?9, ?10) ON CONFLICT DO NOTHING",
+                NotificationLedgerRepositoryCustomImpl.insertSql(2));
+    }
+
+    @Test
+    void purgeCreatedBefore_DeletesOnlyEntriesPastRetention() {
+        LocalDateTime now = LocalDateTime.now();
+        notificationLedgerRepository.insertAllIfAbsent(List.of(entry(1L, 175, cycleStart, now.minusDays(31)),
+                entry(2L, 175, cycleStart, now.minusDays(1))));
+
+        assertEquals(1, notificationLedgerRepository.purgeCreatedBefore(now.minusDays(30)));
+
+        assertEquals(List.of(2L), notificationLedgerRepository.findAll().stream()
+                .map(NotificationLedgerEntry::getUserId).toList());
+    }
+
+    private NotificationLedgerEntry entry(Long userId, int cycleDay, LocalDateTime cycleStart, LocalDateTime createdAt) {
+        return new NotificationLedgerEntry(null, userId, InactivityMilestone.FINAL_WEEK_WARNING, cycleStart,
+                cycleDay, createdAt);
+    }
+}
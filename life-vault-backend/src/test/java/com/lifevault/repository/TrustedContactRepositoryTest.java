@@ -0,0 +1,139 @@
+package com.lifevault.repository;
+
+import com.lifevault.entity.TrustedContact;
+import com.lifevault.entity.User;
+import com.lifevault.service.ContactTokenService;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ActiveProfiles("test")
+class TrustedContactRepositoryTest {
+
+    @Autowired
+    private TrustedContactRepository trustedContactRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private final ContactTokenService contactTokenService = new ContactTokenService();
+
+    private User alice;
+    private User bob;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(contactTokenService, "validityDays", 30);
+        alice = createUser("alice@example.com");
+        bob = createUser("bob@example.com");
+    }
+
+    private User createUser(String email) {
+        User user = new User();
+        user.setEmail(email);
+        user.setPassword("encoded");
+        user.setFirstName("Test");
+        user.setLastName("User");
+        return userRepository.saveAndFlush(user);
+    }
+
+    private TrustedContact createContact(User user, String email, boolean verified, boolean notified) {
+        TrustedContact contact = new TrustedContact();
+        contact.setUser(user);
+        contact.setName("Contact");
+        contact.setEmail(email);
+        contact.setRelationship("Friend");
+        contact.setIsVerified(verified);
+        contact.setIsNotified(notified);
+        return trustedContactRepository.saveAndFlush(contact);
+    }
+
+    @Test
+    void findUserIdsWithNotifiedContacts_ReturnsUsersWithAnyNotifiedContact() {
+        createContact(alice, "a1@example.com", true, true);
+        createContact(alice, "a2@example.com", true, false);
+        createContact(bob, "b1@example.com", true, false);
+        entityManager.clear();
+
+        Set<Long> notified = trustedContactRepository.findUserIdsWithNotifiedContacts(
+                List.of(alice.getId(), bob.getId()));
+
+        assertEquals(Set.of(alice.getId()), notified);
+    }
+
+    @Test
+    void findVerifiedByUserIds_ReturnsOnlyVerifiedContactsOfGivenUsers() {
+        createContact(alice, "a1@example.com", true, false);
+        createContact(alice, "a2@example.com", false, false);
+        createContact(bob, "b1@example.com", true, false);
+        entityManager.clear();
+
+        List<String> verified = trustedContactRepository.findVerifiedByUserIds(List.of(alice.getId())).stream()
+                .map(TrustedContact::getEmail)
+                .toList();
+
+        assertEquals(List.of("a1@example.com"), verified);
+    }
+
+    @Test
+    void markNotified_UpdatesAllGivenContactsInOneStatement() {
+        TrustedContact first = createContact(alice, "a1@example.com", true, false);
+        TrustedContact second = createContact(bob, "b1@example.com", true, false);
+        TrustedContact untouched = createContact(bob, "b2@example.com", true, false);
+        LocalDateTime now = LocalDateTime.now();
+
+        int updated = trustedContactRepository.markNotified(List.of(first.getId(), second.getId()), now);
+        entityManager.clear();
+
+        assertEquals(2, updated);
+        assertTrue(trustedContactRepository.findById(first.getId()).orElseThrow().getIsNotified());
+        assertNotNull(trustedContactRepository.findById(second.getId()).orElseThrow().getNotifiedAt());
+        assertFalse(trustedContactRepository.findById(untouched.getId()).orElseThrow().getIsNotified());
+    }
+
+    @Test
+    void findByVerificationTokenHash_FindsTheContactOfAnIssuedToken() {
+        TrustedContact contact = createContact(alice, "a1@example.com", true, false);
+        String token = contactTokenService.issue(contact, LocalDateTime.now());
+        trustedContactRepository.saveAndFlush(contact);
+        entityManager.clear();
+
+        TrustedContact found = trustedContactRepository.findByVerificationTokenHash(ContactTokenService.hash(token))
+                .orElseThrow();
+        assertEquals(contact.getId(), found.getId());
+        assertNull(found.getVerificationToken());
+        assertTrue(trustedContactRepository.findByVerificationTokenHash(ContactTokenService.hash("other")).isEmpty());
+    }
+
+    @Test
+    void purgeExpiredTokens_ClearsOnlyExpiredHashes() {
+        LocalDateTime now = LocalDateTime.now();
+        TrustedContact expired = createContact(alice, "a1@example.com", true, false);
+        contactTokenService.issue(expired, now.minusDays(31));
+        trustedContactRepository.saveAndFlush(expired);
+        TrustedContact live = createContact(bob, "b1@example.com", true, false);
+        contactTokenService.issue(live, now);
+        trustedContactRepository.saveAndFlush(live);
+        entityManager.clear();
+
+        assertEquals(1, trustedContactRepository.purgeExpiredTokens(now));
+        entityManager.clear();
+
+        assertNull(trustedContactRepository.findById(expired.getId()).orElseThrow().getVerificationTokenHash());
+        assertNotNull(trustedContactRepository.findById(live.getId()).orElseThrow().getVerificationTokenHash());
+    }
+}
@@ -0,0 +1,109 @@
+package com.lifevault.repository;
+
+import com.lifevault.entity.User;
+import com.lifevault.entity.User.InactivityMilestone;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@ActiveProfiles("test")
+class UserRepositoryTest {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private LocalDateTime now;
+
+    @BeforeEach
+    void setUp() {
+        now = LocalDateTime.now();
+    }
+
+    private User createUser(String email, LocalDateTime nextActionAt, InactivityMilestone nextActionType) {
+        User user = new User();
+        user.setEmail(email);
+        user.setPassword("encoded");
+        user.setFirstName("Test");
+        user.setLastName("User");
+        user.setNextActionAt(nextActionAt);
+        user.setNextActionType(nextActionType);
+        return userRepository.saveAndFlush(user);
+    }
+
+    @Test
+    void findDueUserIds_ReturnsOnlyDueActiveUsersInIdOrder() {
+        createUser("later@example.com", now.plusHours(1), InactivityMilestone.HALF_WARNING);
+        User due = createUser("due@example.com", now.minusHours(1), InactivityMilestone.FINAL_WEEK_WARNING);
+        User overdue = createUser("overdue@example.com", now.minusDays(2), InactivityMilestone.HALF_WARNING);
+        createUser("finished@example.com", null, InactivityMilestone.VAULT_REVEAL);
+        User deactivated = createUser("deactivated@example.com", now.minusDays(1), InactivityMilestone.HALF_WARNING);
+        deactivated.setIsActive(false);
+        userRepository.saveAndFlush(deactivated);
+        entityManager.clear();
+
+        assertEquals(List.of(due.getId(), overdue.getId()), userRepository.findDueUserIds(now));
+    }
+
+    @Test
+    void findDueUsersInIdRange_LoadsOnlyDueUsersWithinRange() {
+        User first = createUser("first@example.com", now.minusHours(1), InactivityMilestone.HALF_WARNING);
+        createUser("notDue@example.com", now.plusDays(1), InactivityMilestone.HALF_WARNING);
+        User second = createUser("second@example.com", now.minusDays(1), InactivityMilestone.HALF_WARNING);
+        createUser("outside@example.com", now.minusDays(1), InactivityMilestone.HALF_WARNING);
+        entityManager.clear();
+
+        List<String> chunk = userRepository.findDueUsersInIdRange(now, first.getId(), second.getId()).stream()
+                .map(User::getEmail)
+                .toList();
+
+        assertEquals(List.of("first@example.com", "second@example.com"), chunk);
+    }
+
+    @Test
+    void findSchedulesToResync_PicksUnscheduledAndFutureGraceDependentUsers() {
+        createUser("unscheduled@example.com", null, null);
+        createUser("grace@example.com", now.plusDays(1), InactivityMilestone.GRACE_PERIOD_WARNING);
+        createUser("reveal@example.com", now.plusDays(1), InactivityMilestone.VAULT_REVEAL);
+        createUser("graceDue@example.com", now.minusHours(1), InactivityMilestone.GRACE_PERIOD_WARNING);
+        createUser("finished@example.com", null, InactivityMilestone.VAULT_REVEAL);
+        createUser("half@example.com", now.plusDays(1), InactivityMilestone.HALF_WARNING);
+        entityManager.clear();
+
+        List<String> resync = userRepository.findSchedulesToResync(
+                        EnumSet.of(InactivityMilestone.GRACE_PERIOD_WARNING, InactivityMilestone.VAULT_REVEAL),
+                        now, 0L, PageRequest.of(0, 100)).stream()
+                .map(User::getEmail)
+                .toList();
+
+        assertEquals(List.of("unscheduled@example.com", "grace@example.com", "reveal@example.com"), resync);
+    }
+
+    @Test
+    void consumeActivityToken_MatchesOnlyTheCurrentVersionOnce() {
+        User user = createUser("token@example.com", now.plusDays(90), InactivityMilestone.HALF_WARNING);
+        user.setActivityTokenVersion(3);
+        userRepository.saveAndFlush(user);
+        entityManager.clear();
+
+        assertEquals(0, userRepository.consumeActivityToken(user.getId(), 2));
+        assertEquals(1, userRepository.consumeActivityToken(user.getId(), 3));
+        assertEquals(0, userRepository.consumeActivityToken(user.getId(), 3));
+        entityManager.clear();
+
+        assertEquals(4, userRepository.findById(user.getId()).orElseThrow().getActivityTokenVersion());
+    }
+}
@@ -1,24 +1,48 @@
 package com.lifevault.scheduler;
 
+import com.lifevault.entity.NotificationLedgerEntry;
+import com.lifevault.entity.SweepRun;
 import com.lifevault.entity.TrustedContact;
 import com.lifevault.entity.User;
+import com.lifevault.repository.NotificationLedgerRepository;
+import com.lifevault.repository.NotificationPreferenceRepository;
+import com.lifevault.repository.SweepRunRepository;
 import com.lifevault.repository.TrustedContactRepository;
 import com.lifevault.repository.UserRepository;
 import com.lifevault.service.ActivityLogService;
+import com.lifevault.service.ContactTokenService;
 import com.lifevault.service.EmailService;
+import com.lifevault.service.SmsService;
+import com.lifevault.service.InactivityPolicy;
+import com.lifevault.service.NotificationRouter;
 import com.lifevault.service.UserService;
+import com.lifevault.service.WebhookService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.Trigger;
+import org.springframework.data.domain.Pageable;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -36,15 +60,48 @@ class InactivityCheckSchedulerTest {
     @Mock
     private EmailService emailService;
 
+    @Mock
+    private SmsService smsService;
+
+    @Mock
+    private WebhookService webhookService;
+
+    @Mock
+    private NotificationPreferenceRepository preferenceRepository;
+
     @Mock
     private ActivityLogService activityLogService;
 
     @Mock
     private UserService userService;
 
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private Scheduler quartzScheduler;
+
+    @Mock
+    private SweepRunRepository sweepRunRepository;
+
+    @Mock
+    private NotificationOutboxWorker notificationOutboxWorker;
+
+    @Mock
+    private NotificationLedgerRepository notificationLedgerRepository;
+
+    @Mock
+    private ContactTokenService contactTokenService;
+
     @InjectMocks
     private InactivityCheckScheduler scheduler;
 
+    private static final long RUN_ID = 42L;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private InactivityPolicy inactivityPolicy;
+
     private User activeUser;
     private User inactiveUser50;
     private User inactiveUser75;
@@ -54,8 +111,26 @@ class InactivityCheckSchedulerTest {
 
     @BeforeEach
     void setUp() {
-        // Set grace period
-        ReflectionTestUtils.setField(scheduler, "gracePeriodDays", 14);
+        // Real policy with the default grace period
+        inactivityPolicy = new InactivityPolicy();
+        ReflectionTestUtils.setField(inactivityPolicy, "gracePeriodDays", 14);
+        ReflectionTestUtils.setField(scheduler, "inactivityPolicy", inactivityPolicy);
+        ReflectionTestUtils.setField(scheduler, "pageSize", 100);
+        ReflectionTestUtils.setField(scheduler, "shardSize", 100);
+        meterRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(scheduler, "sweepMetrics", new SweepMetrics(meterRegistry));
+        // Real router over the mocked channels, so the channel calls can be verified directly
+        NotificationRouter notificationRouter = new NotificationRouter();
+        ReflectionTestUtils.setField(notificationRouter, "emailService", emailService);
+        ReflectionTestUtils.setField(notificationRouter, "smsService", smsService);
+        ReflectionTestUtils.setField(notificationRouter, "webhookService", webhookService);
+        ReflectionTestUtils.setField(notificationRouter, "preferenceRepository", preferenceRepository);
+        ReflectionTestUtils.setField(scheduler, "notificationRouter", notificationRouter);
+        // No milestone recorded yet unless a test says otherwise
+        lenient().when(notificationLedgerRepository.insertAllIfAbsent(anyList())).thenAnswer(invocation ->
+                invocation.<List<NotificationLedgerEntry>>getArgument(0).stream()
+                        .map(NotificationLedgerEntry::getUserId)
+                        .collect(Collectors.toSet()));
 
         // Active user - no notification needed
         activeUser = createUser(1L, "active@example.com", LocalDateTime.now().minusDays(30), 180);
@@ -83,85 +158,95 @@ class InactivityCheckSchedulerTest {
         user.setLastActivityAt(lastActivity);
         user.setInactivityPeriodDays(inactivityDays);
         user.setIsActive(true);
+        // Scheduled as the previous sweep, a minute ago, left it: a user with a milestone today is due
+        inactivityPolicy.schedule(user, LocalDateTime.now().minusMinutes(1));
         return user;
     }
 
     @Test
     void checkInactiveUsers_NoNotifications() {
-        when(userRepository.findAll()).thenReturn(Collections.singletonList(activeUser));
+        givenDueUsers(Collections.singletonList(activeUser));
 
-        scheduler.checkInactiveUsers();
+        scheduler.processShard(RUN_ID, 1L, 10L);
 
-        verify(emailService, never()).sendInactivityWarningEmail(any(), any(), anyLong(), any());
-        verify(emailService, never()).sendVaultRevealNotification(any(), any());
+        verify(emailService, never()).queueInactivityWarningEmail(any(), any(), anyLong(), any());
+        verify(emailService, never()).queueVaultRevealNotification(any(), any());
     }
 
     @Test
     void checkInactiveUsers_50PercentWarning() {
-        when(userRepository.findAll()).thenReturn(Collections.singletonList(inactiveUser50));
+        givenDueUsers(Collections.singletonList(inactiveUser50));
         when(userService.generateActivityToken(inactiveUser50)).thenReturn("token-50");
 
-        scheduler.checkInactiveUsers();
+        scheduler.processShard(RUN_ID, 1L, 10L);
 
-        verify(emailService).sendInactivityWarningEmail(eq(inactiveUser50), eq("50% warning"), eq(90L), eq("token-50"));
+        verify(emailService).queueInactivityWarningEmail(eq(inactiveUser50), eq("50% warning"), eq(90L), eq("token-50"));
         verify(activityLogService).logActivity(eq(inactiveUser50), eq("INACTIVITY_CHECK"), 
                 contains("50% warning"));
-        verify(userRepository).save(inactiveUser50);
-        verify(emailService, never()).sendVaultRevealNotification(any(), any());
+        assertNotNull(inactiveUser50.getLastNotificationCheckAt());
+        verify(userRepository, never()).save(any());
+        verify(emailService, never()).queueVaultRevealNotification(any(), any());
     }
 
     @Test
     void checkInactiveUsers_75PercentWarning() {
-        when(userRepository.findAll()).thenReturn(Collections.singletonList(inactiveUser75));
+        givenDueUsers(Collections.singletonList(inactiveUser75));
         when(userService.generateActivityToken(inactiveUser75)).thenReturn("token-75");
 
-        scheduler.checkInactiveUsers();
+        scheduler.processShard(RUN_ID, 1L, 10L);
 
-        verify(emailService).sendInactivityWarningEmail(eq(inactiveUser75), eq("75% warning"), eq(135L), eq("token-75"));
+        verify(emailService).queueInactivityWarningEmail(eq(inactiveUser75), eq("75% warning"), eq(135L), eq("token-75"));
         verify(activityLogService).logActivity(eq(inactiveUser75), eq("INACTIVITY_CHECK"), 
                 contains("75% warning"));
-        verify(userRepository).save(inactiveUser75);
-        verify(emailService, never()).sendVaultRevealNotification(any(), any());
+        assertNotNull(inactiveUser75.getLastNotificationCheckAt());
+        verify(userRepository, never()).save(any());
+        verify(emailService, never()).queueVaultRevealNotification(any(), any());
     }
 
     @Test
     void checkInactiveUsers_LastWeekWarning() {
-        when(userRepository.findAll()).thenReturn(Collections.singletonList(inactiveUserLastWeek));
+        givenDueUsers(Collections.singletonList(inactiveUserLastWeek));
         when(userService.generateActivityToken(inactiveUserLastWeek)).thenReturn("token-week");
 
-        scheduler.checkInactiveUsers();
+        scheduler.processShard(RUN_ID, 1L, 10L);
 
-        verify(emailService).sendInactivityWarningEmail(eq(inactiveUserLastWeek), eq("final week warning"), eq(175L), eq("token-week"));
+        verify(emailService).queueInactivityWarningEmail(eq(inactiveUserLastWeek), eq("final week warning"), eq(175L), eq("token-week"));
         verify(activityLogService).logActivity(eq(inactiveUserLastWeek), eq("INACTIVITY_CHECK"), 
                 contains("final week warning"));
-        verify(userRepository).save(inactiveUserLastWeek);
-        verify(emailService, never()).sendVaultRevealNotification(any(), any());
+        assertNotNull(inactiveUserLastWeek.getLastNotificationCheckAt());
+        verify(userRepository, never()).save(any());
+        verify(emailService, never()).queueVaultRevealNotification(any(), any());
+        verify(smsService, never()).queueGracePeriodWarning(any(), anyLong(), any());
     }
 
     @Test
     void checkInactiveUsers_GracePeriodWarning() {
-        when(userRepository.findAll()).thenReturn(Collections.singletonList(inactiveUserGracePeriod));
+        givenDueUsers(Collections.singletonList(inactiveUserGracePeriod));
+        inactiveUserGracePeriod.setPhoneNumber("+15551234567");
+        when(smsService.isEnabled()).thenReturn(true);
         when(userService.generateActivityToken(inactiveUserGracePeriod)).thenReturn("token-grace");
 
-        scheduler.checkInactiveUsers();
+        scheduler.processShard(RUN_ID, 1L, 10L);
 
-        verify(emailService).sendInactivityWarningEmail(eq(inactiveUserGracePeriod), eq("grace period warning"), eq(182L), eq("token-grace"));
+        verify(emailService).queueInactivityWarningEmail(eq(inactiveUserGracePeriod), eq("grace period warning"), eq(182L), eq("token-grace"));
+        verify(smsService).queueGracePeriodWarning(inactiveUserGracePeriod, 182L, "token-grace");
         verify(activityLogService).logActivity(eq(inactiveUserGracePeriod), eq("INACTIVITY_CHECK"), 
                 contains("grace period warning"));
-        verify(userRepository).save(inactiveUserGracePeriod);
-        verify(emailService, never()).sendVaultRevealNotification(any(), any());
+        assertNotNull(inactiveUserGracePeriod.getLastNotificationCheckAt());
+        verify(userRepository, never()).save(any());
+        verify(emailService, never()).queueVaultRevealNotification(any(), any());
     }
 
     @Test
     void checkInactiveUsers_GracePeriodSkipOddDay() {
         // Day 183 - should skip (odd day in grace period)
         User oddDayUser = createUser(7L, "odd@example.com", LocalDateTime.now().minusDays(183), 180);
-        when(userRepository.findAll()).thenReturn(Collections.singletonList(oddDayUser));
+        givenDueUsers(Collections.singletonList(oddDayUser));
 
-        scheduler.checkInactiveUsers();
+        scheduler.processShard(RUN_ID, 1L, 10L);
 
-        verify(emailService, never()).sendInactivityWarningEmail(any(), any(), anyLong(), any());
-        verify(emailService, never()).sendVaultRevealNotification(any(), any());
+        verify(emailService, never()).queueInactivityWarningEmail(any(), any(), anyLong(), any());
+        verify(emailService, never()).queueVaultRevealNotification(any(), any());
     }
 
     @Test
@@ -174,34 +259,33 @@ class InactivityCheckSchedulerTest {
         contact.setIsNotified(false);
         contact.setUser(inactiveUserExpired);
 
-        when(userRepository.findAll()).thenReturn(Collections.singletonList(inactiveUserExpired));
-        when(trustedContactRepository.findByUserId(inactiveUserExpired.getId()))
-                .thenReturn(Collections.singletonList(contact));
-        when(trustedContactRepository.findByUserIdAndIsVerifiedTrue(inactiveUserExpired.getId()))
+        givenDueUsers(Collections.singletonList(inactiveUserExpired));
+        when(trustedContactRepository.findVerifiedByUserIds(List.of(inactiveUserExpired.getId())))
                 .thenReturn(Collections.singletonList(contact));
 
-        scheduler.checkInactiveUsers();
+        scheduler.processShard(RUN_ID, 1L, 10L);
 
-        verify(emailService).sendVaultRevealNotification(eq(contact), eq(inactiveUserExpired));
-        verify(trustedContactRepository).save(contact);
-        assertTrue(contact.getIsNotified());
-        assertNotNull(contact.getNotifiedAt());
+        // The vault-access token is issued before the links are rendered
+        InOrder inOrder = inOrder(contactTokenService, emailService);
+        inOrder.verify(contactTokenService).issue(eq(contact), any(LocalDateTime.class));
+        inOrder.verify(emailService).queueVaultRevealNotification(eq(contact), eq(inactiveUserExpired));
+        verify(smsService).queueVaultRevealNotification(contact, inactiveUserExpired);
+        // One set-based UPDATE per shard instead of a save per contact
+        verify(trustedContactRepository).markNotified(eq(List.of(1L)), any(LocalDateTime.class));
+        verify(trustedContactRepository, never()).save(any());
         verify(activityLogService).logActivity(eq(inactiveUserExpired), eq("VAULT_REVEALED"), anyString());
     }
 
     @Test
     void checkInactiveUsers_AlreadyNotifiedContacts() {
-        TrustedContact contact = new TrustedContact();
-        contact.setIsNotified(true);
-        contact.setUser(inactiveUserExpired);
+        givenDueUsers(Collections.singletonList(inactiveUserExpired));
+        when(trustedContactRepository.findUserIdsWithNotifiedContacts(List.of(inactiveUserExpired.getId())))
+                .thenReturn(Set.of(inactiveUserExpired.getId()));
 
-        when(userRepository.findAll()).thenReturn(Collections.singletonList(inactiveUserExpired));
-        when(trustedContactRepository.findByUserId(inactiveUserExpired.getId()))
-                .thenReturn(Collections.singletonList(contact));
-
-        scheduler.checkInactiveUsers();
+        scheduler.processShard(RUN_ID, 1L, 10L);
 
-        verify(emailService, never()).sendVaultRevealNotification(any(), any());
+        verify(emailService, never()).queueVaultRevealNotification(any(), any());
+        verify(trustedContactRepository, never()).markNotified(any(), any());
     }
 
     @Test
@@ -209,74 +293,259 @@ class InactivityCheckSchedulerTest {
         List<User> users = Arrays.asList(activeUser, inactiveUser50, inactiveUser75, 
                 inactiveUserLastWeek, inactiveUserExpired);
         
-        when(userRepository.findAll()).thenReturn(users);
+        givenDueUsers(users);
         when(userService.generateActivityToken(any())).thenReturn("test-token");
-        when(trustedContactRepository.findByUserId(inactiveUserExpired.getId()))
-                .thenReturn(Collections.emptyList());
 
-        scheduler.checkInactiveUsers();
+        scheduler.processShard(RUN_ID, 1L, 10L);
 
         // Verify appropriate actions for each user
-        verify(emailService, never()).sendInactivityWarningEmail(eq(activeUser), any(), anyLong(), any());
-        verify(emailService).sendInactivityWarningEmail(eq(inactiveUser50), eq("50% warning"), eq(90L), any());
-        verify(emailService).sendInactivityWarningEmail(eq(inactiveUser75), eq("75% warning"), eq(135L), any());
-        verify(emailService).sendInactivityWarningEmail(eq(inactiveUserLastWeek), eq("final week warning"), eq(175L), any());
-        verify(trustedContactRepository).findByUserId(inactiveUserExpired.getId());
+        verify(emailService, never()).queueInactivityWarningEmail(eq(activeUser), any(), anyLong(), any());
+        verify(emailService).queueInactivityWarningEmail(eq(inactiveUser50), eq("50% warning"), eq(90L), any());
+        verify(emailService).queueInactivityWarningEmail(eq(inactiveUser75), eq("75% warning"), eq(135L), any());
+        verify(emailService).queueInactivityWarningEmail(eq(inactiveUserLastWeek), eq("final week warning"), eq(175L), any());
+        // Every due user's milestone goes to the ledger in one call for the shard
+        verify(notificationLedgerRepository).insertAllIfAbsent(argThat(entries -> entries.size() == 4));
+        // Contact state is only loaded for reveal-due users, in one query for the whole shard
+        verify(trustedContactRepository).findUserIdsWithNotifiedContacts(List.of(inactiveUserExpired.getId()));
+        verify(trustedContactRepository).findVerifiedByUserIds(List.of(inactiveUserExpired.getId()));
+        verify(trustedContactRepository, never()).findByUserId(any());
     }
 
     @Test
     void checkInactiveUsers_CustomInactivityPeriod() {
         User customUser = createUser(8L, "custom@example.com", LocalDateTime.now().minusDays(182), 365);
-        when(userRepository.findAll()).thenReturn(Collections.singletonList(customUser));
+        givenDueUsers(Collections.singletonList(customUser));
         when(userService.generateActivityToken(customUser)).thenReturn("token-custom");
 
-        scheduler.checkInactiveUsers();
+        scheduler.processShard(RUN_ID, 1L, 10L);
 
         // 182 days = 50% of 365 days (182.5, rounded down)
-        verify(emailService).sendInactivityWarningEmail(eq(customUser), eq("50% warning"), eq(182L), eq("token-custom"));
+        verify(emailService).queueInactivityWarningEmail(eq(customUser), eq("50% warning"), eq(182L), eq("token-custom"));
         verify(activityLogService).logActivity(eq(customUser), eq("INACTIVITY_CHECK"), 
                 contains("50% warning"));
     }
 
     @Test
-    void checkInactiveUsers_OnlyActiveUsers() {
-        User inactiveUser = createUser(9L, "inactive@example.com", LocalDateTime.now().minusDays(100), 180);
-        inactiveUser.setIsActive(false);
+    void checkInactiveUsers_OnlyDueUsers() {
+        givenDueUsers(Collections.singletonList(inactiveUser50));
+        when(userService.generateActivityToken(any())).thenReturn("test-token");
 
-        when(userRepository.findAll()).thenReturn(Arrays.asList(activeUser, inactiveUser));
+        scheduler.processShard(RUN_ID, 1L, 10L);
+
+        // Due selection happens in the query, never by loading the whole table
+        verify(userRepository, never()).findAll();
+        verify(userRepository).findDueUsersInIdRange(any(LocalDateTime.class), eq(1L), eq(10L));
+        verify(emailService).queueInactivityWarningEmail(eq(inactiveUser50), eq("50% warning"), eq(90L), any());
+    }
+
+    @Test
+    void checkInactiveUsers_QueuesIdRangeShards() throws Exception {
+        ReflectionTestUtils.setField(scheduler, "shardSize", 2);
+        when(quartzScheduler.getJobKeys(any())).thenReturn(Collections.emptySet());
+        when(userRepository.findDueUserIds(any(LocalDateTime.class))).thenReturn(Arrays.asList(1L, 2L, 5L));
+        when(sweepRunRepository.save(any(SweepRun.class))).thenAnswer(invocation -> {
+            SweepRun run = invocation.getArgument(0);
+            run.setId(RUN_ID);
+            return run;
+        });
 
         scheduler.checkInactiveUsers();
 
-        // Should not process inactive user
-        verify(emailService, never()).sendInactivityWarningEmail(eq(inactiveUser), any(), anyLong(), any());
+        ArgumentCaptor<JobDetail> shards = ArgumentCaptor.forClass(JobDetail.class);
+        verify(quartzScheduler, times(2)).scheduleJob(shards.capture(), any(Trigger.class));
+        JobDataMap first = shards.getAllValues().get(0).getJobDataMap();
+        JobDataMap second = shards.getAllValues().get(1).getJobDataMap();
+        assertEquals(1L, first.getLong(InactivitySweepShardJob.FROM_ID));
+        assertEquals(2L, first.getLong(InactivitySweepShardJob.TO_ID));
+        assertEquals(5L, second.getLong(InactivitySweepShardJob.FROM_ID));
+        assertEquals(5L, second.getLong(InactivitySweepShardJob.TO_ID));
+        assertEquals(RUN_ID, second.getLong(InactivitySweepShardJob.RUN_ID));
+        // A dead node's shard must be re-run by another node
+        assertTrue(shards.getValue().requestsRecovery());
+        verifyNoInteractions(emailService);
     }
 
     @Test
-    void checkInactiveUsers_NoVerifiedContacts() {
-        TrustedContact unverifiedContact = new TrustedContact();
-        unverifiedContact.setIsVerified(false);
-        unverifiedContact.setUser(inactiveUserExpired);
+    void checkInactiveUsers_NoDueUsersRecordsNoRun() throws Exception {
+        when(quartzScheduler.getJobKeys(any())).thenReturn(Collections.emptySet());
+        when(userRepository.findDueUserIds(any(LocalDateTime.class))).thenReturn(Collections.emptyList());
+
+        scheduler.checkInactiveUsers();
+
+        verify(sweepRunRepository, never()).save(any(SweepRun.class));
+        verify(quartzScheduler, never()).scheduleJob(any(JobDetail.class), any(Trigger.class));
+    }
 
-        when(userRepository.findAll()).thenReturn(Collections.singletonList(inactiveUserExpired));
-        when(trustedContactRepository.findByUserId(inactiveUserExpired.getId()))
-                .thenReturn(Collections.singletonList(unverifiedContact));
-        when(trustedContactRepository.findByUserIdAndIsVerifiedTrue(inactiveUserExpired.getId()))
-                .thenReturn(Collections.emptyList());
+    @Test
+    void checkInactiveUsers_SkipsWhilePreviousShardsPending() throws Exception {
+        when(quartzScheduler.getJobKeys(any()))
+                .thenReturn(Collections.singleton(JobKey.jobKey("shard-1-2", InactivitySweepShardJob.GROUP)));
 
         scheduler.checkInactiveUsers();
 
-        verify(emailService, never()).sendVaultRevealNotification(any(), any());
-        verify(activityLogService).logActivity(eq(inactiveUserExpired), eq("VAULT_REVEALED"), anyString());
+        verify(userRepository, never()).findDueUserIds(any());
+        verify(quartzScheduler, never()).scheduleJob(any(JobDetail.class), any(Trigger.class));
+    }
+
+    @Test
+    void checkInactiveUsers_MilestoneAlreadyInLedgerIsNotSentAgain() {
+        givenDueUsers(Collections.singletonList(inactiveUserLastWeek));
+        when(notificationLedgerRepository.insertAllIfAbsent(argThat(entries -> entries.size() == 1
+                && entries.get(0).getUserId() == 4L
+                && entries.get(0).getMilestone() == User.InactivityMilestone.FINAL_WEEK_WARNING
+                && entries.get(0).getCycleStart().equals(inactiveUserLastWeek.getLastActivityAt())
+                && entries.get(0).getCycleDay() == 175))).thenReturn(Set.of());
+
+        scheduler.processShard(RUN_ID, 1L, 10L);
+
+        verify(emailService, never()).queueInactivityWarningEmail(any(), any(), anyLong(), any());
+        verify(userService, never()).generateActivityToken(any());
+        verify(activityLogService, never()).logActivity(any(), any(), any());
+        // Still moves on to the next daily final-week warning
+        assertEquals(inactiveUserLastWeek.getLastActivityAt().plusDays(176), inactiveUserLastWeek.getNextActionAt());
+        assertEquals(1.0, meterRegistry.counter("inactivity.sweep.duplicates.skipped").count());
+    }
+
+    @Test
+    void checkInactiveUsers_ReschedulesToNextMilestone() {
+        givenDueUsers(Collections.singletonList(inactiveUser50));
+        when(userService.generateActivityToken(any())).thenReturn("test-token");
+
+        scheduler.processShard(RUN_ID, 1L, 10L);
+
+        // Day 90 of 180 was handled; the 75% warning on day 135 is next
+        assertEquals(User.InactivityMilestone.THREE_QUARTERS_WARNING, inactiveUser50.getNextActionType());
+        assertEquals(inactiveUser50.getLastActivityAt().plusDays(135), inactiveUser50.getNextActionAt());
     }
 
     @Test
-    void isSchedulerEnabled() {
-        // Test the scheduled method is properly annotated
-        try {
-            InactivityCheckScheduler.class.getMethod("checkInactiveUsers")
-                    .getAnnotation(org.springframework.scheduling.annotation.Scheduled.class);
-        } catch (NoSuchMethodException e) {
-            fail("checkInactiveUsers method should have @Scheduled annotation");
+    void checkInactiveUsers_LateSlotSweptAfterMidnightKeepsItsMilestone() {
+        // A slot late in the day, so the sweep below runs on the next calendar day of lastActivityAt
+        ReflectionTestUtils.setField(inactivityPolicy, "spreadMinutes", 1380);
+        long id = 1L;
+        while (inactivityPolicy.slotOffsetMinutes(id) < 22 * 60) {
+            id++;
         }
+        long offset = inactivityPolicy.slotOffsetMinutes(id);
+        // The 50% warning on day 90 fell due three hours ago
+        LocalDateTime lastActivity = LocalDateTime.now().minusDays(90).minusMinutes(offset).minusHours(3);
+        User lateUser = createUser(id, "late@example.com", lastActivity, 180);
+        inactivityPolicy.schedule(lateUser, lastActivity.plusDays(89));
+        assertEquals(User.InactivityMilestone.HALF_WARNING, lateUser.getNextActionType());
+        assertEquals(91, ChronoUnit.DAYS.between(lastActivity, LocalDateTime.now()));
+        givenDueUsers(Collections.singletonList(lateUser));
+        when(userService.generateActivityToken(lateUser)).thenReturn("token-late");
+
+        scheduler.processShard(RUN_ID, 1L, id);
+
+        ArgumentCaptor<List<NotificationLedgerEntry>> entries = ArgumentCaptor.forClass(List.class);
+        verify(notificationLedgerRepository).insertAllIfAbsent(entries.capture());
+        NotificationLedgerEntry entry = entries.getValue().get(0);
+        assertEquals(User.InactivityMilestone.HALF_WARNING, entry.getMilestone());
+        assertEquals(lastActivity, entry.getCycleStart());
+        assertEquals(90, entry.getCycleDay());
+        verify(emailService).queueInactivityWarningEmail(eq(lateUser), eq("50% warning"), eq(90L), eq("token-late"));
+        assertEquals(User.InactivityMilestone.THREE_QUARTERS_WARNING, lateUser.getNextActionType());
+        assertEquals(lastActivity.plusMinutes(offset).plusDays(135), lateUser.getNextActionAt());
+    }
+
+    @Test
+    void checkInactiveUsers_RevealCompletesCycle() {
+        TrustedContact contact = new TrustedContact();
+        contact.setId(2L);
+        contact.setIsVerified(true);
+        contact.setIsNotified(false);
+        contact.setUser(inactiveUserExpired);
+
+        givenDueUsers(Collections.singletonList(inactiveUserExpired));
+        when(trustedContactRepository.findVerifiedByUserIds(List.of(inactiveUserExpired.getId())))
+                .thenReturn(Collections.singletonList(contact));
+
+        scheduler.processShard(RUN_ID, 1L, 10L);
+
+        assertNull(inactiveUserExpired.getNextActionAt());
+        assertEquals(User.InactivityMilestone.VAULT_REVEAL, inactiveUserExpired.getNextActionType());
+    }
+
+    @Test
+    void processShard_RecordsMetricsAndRunHistory() {
+        SweepRun run = new SweepRun();
+        run.setId(RUN_ID);
+        run.setStartedAt(LocalDateTime.now());
+        run.setShards(1);
+        run.setWorstShardNotifyP99Ms(Double.MAX_VALUE);
+        when(sweepRunRepository.findByIdForUpdate(RUN_ID)).thenReturn(Optional.of(run));
+        givenDueUsers(Arrays.asList(activeUser, inactiveUser50, inactiveUser75));
+        when(userService.generateActivityToken(any())).thenReturn("test-token");
+
+        scheduler.processShard(RUN_ID, 1L, 10L);
+
+        assertEquals(3.0, meterRegistry.counter("inactivity.sweep.users.scanned").count());
+        assertEquals(1.0, meterRegistry.counter("inactivity.sweep.notifications", "type", "half_warning").count());
+        assertEquals(2, meterRegistry.get("inactivity.sweep.phase").tag("phase", "notify").timer().count());
+        assertEquals(1, run.getCompletedShards());
+        assertEquals(3, run.getUsersProcessed());
+        assertEquals(2, run.getWarningsSent());
+        assertNotNull(run.getFinishedAt());
+        assertNotNull(run.getWorstShardDbReadP99Ms());
+        assertNotNull(run.getWorstShardTokenP99Ms());
+        // The run keeps the worst p99 across its shards
+        assertEquals(Double.MAX_VALUE, run.getWorstShardNotifyP99Ms());
+        // Its only shard finished it, so the run-level summary is filled in
+        assertNotNull(run.getWallClockMs());
+        assertEquals(3 * 1000.0 / run.getWallClockMs(), run.getUsersPerSecond(), 0.001);
+    }
+
+    @Test
+    void processShard_LeavesRunSummaryToTheLastShard() {
+        SweepRun run = new SweepRun();
+        run.setId(RUN_ID);
+        run.setStartedAt(LocalDateTime.now().minusSeconds(30));
+        run.setShards(2);
+        when(sweepRunRepository.findByIdForUpdate(RUN_ID)).thenReturn(Optional.of(run));
+        givenDueUsers(Collections.singletonList(activeUser));
+
+        scheduler.processShard(RUN_ID, 1L, 10L);
+        assertNull(run.getWallClockMs());
+        assertNull(run.getUsersPerSecond());
+
+        scheduler.processShard(RUN_ID, 1L, 10L);
+        assertEquals(2, run.getUsersProcessed());
+        // Wall clock runs from planning, not from the start of the last shard
+        assertTrue(run.getWallClockMs() >= 30_000);
+        assertEquals(2 * 1000.0 / run.getWallClockMs(), run.getUsersPerSecond(), 0.001);
+    }
+
+    @Test
+    void resyncSchedules_BackfillsUnscheduledUsers() {
+        when(userRepository.findSchedulesToResync(any(), any(LocalDateTime.class), eq(0L), any(Pageable.class)))
+                .thenReturn(Collections.singletonList(activeUser));
+
+        scheduler.resyncSchedules();
+
+        assertEquals(User.InactivityMilestone.HALF_WARNING, activeUser.getNextActionType());
+        assertEquals(activeUser.getLastActivityAt().plusDays(90), activeUser.getNextActionAt());
+    }
+
+    private void givenDueUsers(List<User> users) {
+        when(userRepository.findDueUsersInIdRange(any(LocalDateTime.class), anyLong(), anyLong()))
+                .thenAnswer(invocation -> {
+                    long fromId = invocation.getArgument(1);
+                    long toId = invocation.getArgument(2);
+                    return users.stream()
+                            .filter(user -> user.getId() >= fromId && user.getId() <= toId)
+                            .toList();
+                });
+    }
+
+    @Test
+    void checkInactiveUsers_NoVerifiedContacts() {
+        // Only unverified contacts: the verified lookup comes back empty
+        givenDueUsers(Collections.singletonList(inactiveUserExpired));
+
+        scheduler.processShard(RUN_ID, 1L, 10L);
+
+        verify(emailService, never()).queueVaultRevealNotification(any(), any());
+        verify(activityLogService).logActivity(eq(inactiveUserExpired), eq("VAULT_REVEALED"), anyString());
     }
 }
\ No newline at end of file
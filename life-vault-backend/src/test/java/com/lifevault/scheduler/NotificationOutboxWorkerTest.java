@@ -0,0 +1,226 @@
+package com.lifevault.scheduler;
+
+import com.lifevault.entity.OutboxNotification;
+import com.lifevault.exception.ChannelUnavailableException;
+import com.lifevault.repository.OutboxNotificationRepository;
+import com.lifevault.service.NotificationRouter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationOutboxWorkerTest {
+
+    @Mock
+    private OutboxNotificationRepository outboxRepository;
+
+    @Mock
+    private NotificationRouter notificationRouter;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private NotificationOutboxWorker worker;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(worker, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(worker, "batchSize", 20);
+        ReflectionTestUtils.setField(worker, "leaseSeconds", 300);
+        ReflectionTestUtils.setField(worker, "maxAttempts", 3);
+        ReflectionTestUtils.setField(worker, "backoffSeconds", 30);
+        ReflectionTestUtils.setField(worker, "maxBackoffSeconds", 3600);
+    }
+
+    private OutboxNotification notification(long id, int attempts) {
+        OutboxNotification notification = new OutboxNotification();
+        notification.setId(id);
+        notification.setType(OutboxNotification.Type.INACTIVITY_WARNING);
+        notification.setRecipient("user" + id + "@example.com");
+        notification.setAttempts(attempts);
+        return notification;
+    }
+
+    @Test
+    void claimBatch_LeasesClaimedRows() {
+        OutboxNotification pending = notification(1L, 0);
+        when(outboxRepository.findClaimable(eq(OutboxNotification.Status.PENDING), eq(OutboxNotification.Lane.ROUTINE),
+                any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(pending));
+
+        List<OutboxNotification> batch = worker.claimBatch(OutboxNotification.Lane.ROUTINE);
+
+        assertEquals(List.of(pending), batch);
+        assertEquals(1, pending.getAttempts());
+        assertTrue(pending.getNextAttemptAt().isAfter(LocalDateTime.now().plusSeconds(290)));
+    }
+
+    @Test
+    void claimBatch_PullsInRevealsToTheSameContactForOneDigest() {
+        OutboxNotification due = notification(1L, 0);
+        due.setType(OutboxNotification.Type.VAULT_REVEAL);
+        due.setLane(OutboxNotification.Lane.REVEAL);
+        OutboxNotification inWindow = notification(2L, 0);
+        inWindow.setType(OutboxNotification.Type.VAULT_REVEAL);
+        inWindow.setRecipient(due.getRecipient());
+        when(outboxRepository.findClaimable(any(), eq(OutboxNotification.Lane.REVEAL), any(), any()))
+                .thenReturn(List.of(due));
+        when(outboxRepository.findCoalescible(eq(OutboxNotification.Status.PENDING),
+                eq(OutboxNotification.Type.VAULT_REVEAL), eq(OutboxNotification.Channel.EMAIL),
+                eq(Set.of("user1@example.com")), eq(List.of(1L)), any(Pageable.class))).thenReturn(List.of(inWindow));
+
+        List<OutboxNotification> batch = worker.claimBatch(OutboxNotification.Lane.REVEAL);
+
+        assertEquals(List.of(due, inWindow), batch);
+        assertEquals(1, inWindow.getAttempts());
+        assertEquals(1.0, meterRegistry.counter("notification.outbox.coalesced").count());
+    }
+
+    @Test
+    void drainLane_OwnLaneFirstThenMostUrgentOtherLane() {
+        OutboxNotification routine = notification(1L, 0);
+        OutboxNotification reveal = notification(2L, 0);
+        reveal.setLane(OutboxNotification.Lane.REVEAL);
+        OutboxNotification grace = notification(3L, 0);
+        grace.setLane(OutboxNotification.Lane.GRACE);
+        when(outboxRepository.findClaimable(any(), eq(OutboxNotification.Lane.ROUTINE), any(), any()))
+                .thenReturn(List.of(routine), List.of());
+        when(outboxRepository.findClaimable(any(), eq(OutboxNotification.Lane.REVEAL), any(), any()))
+                .thenReturn(List.of(reveal), List.of());
+        when(outboxRepository.findClaimable(any(), eq(OutboxNotification.Lane.GRACE), any(), any()))
+                .thenReturn(List.of(grace), List.of());
+
+        int sent = worker.drainLane(OutboxNotification.Lane.ROUTINE);
+
+        assertEquals(3, sent);
+        InOrder inOrder = inOrder(notificationRouter);
+        inOrder.verify(notificationRouter).deliver(List.of(routine));
+        inOrder.verify(notificationRouter).deliver(List.of(reveal));
+        inOrder.verify(notificationRouter).deliver(List.of(grace));
+    }
+
+    @Test
+    void deliver_MarksSentRowsWithOneUpdate() {
+        List<OutboxNotification> batch = List.of(notification(1L, 1), notification(2L, 1));
+
+        int sent = worker.deliver(batch);
+
+        assertEquals(2, sent);
+        verify(notificationRouter).deliver(batch);
+        verify(outboxRepository).markSent(eq(List.of(1L, 2L)), any(LocalDateTime.class));
+        assertEquals(2.0, meterRegistry.counter("notification.outbox.sent").count());
+    }
+
+    @Test
+    void deliver_FailedSendIsRetriedWithBackoff() {
+        OutboxNotification failing = notification(1L, 2);
+        when(notificationRouter.deliver(List.of(failing))).thenReturn(Map.of(1L, new RuntimeException("SMTP unavailable")));
+        OutboxNotification row = notification(1L, 2);
+        when(outboxRepository.findById(1L)).thenReturn(Optional.of(row));
+
+        int sent = worker.deliver(List.of(failing));
+
+        assertEquals(0, sent);
+        verify(outboxRepository, never()).markSent(any(), any());
+        assertEquals(OutboxNotification.Status.PENDING, row.getStatus());
+        assertEquals("SMTP unavailable", row.getLastError());
+        // Second attempt failed: 30s doubled once
+        assertTrue(row.getNextAttemptAt().isAfter(LocalDateTime.now().plusSeconds(50)));
+        assertTrue(row.getNextAttemptAt().isBefore(LocalDateTime.now().plusSeconds(70)));
+    }
+
+    @Test
+    void deliver_LastAttemptMovesRowToDeadLetter() {
+        OutboxNotification failing = notification(1L, 3);
+        when(notificationRouter.deliver(List.of(failing))).thenReturn(Map.of(1L, new RuntimeException("Mailbox unavailable")));
+        OutboxNotification row = notification(1L, 3);
+        row.setLinkToken("encrypted-token");
+        when(outboxRepository.findById(1L)).thenReturn(Optional.of(row));
+
+        worker.deliver(List.of(failing));
+
+        assertEquals(OutboxNotification.Status.DEAD, row.getStatus());
+        assertNull(row.getLinkToken());
+        assertEquals(1.0, meterRegistry.counter("notification.outbox.dead").count());
+    }
+
+    @Test
+    void deliver_RefusedByOpenCircuitIsDeferredWithoutUsingAnAttempt() {
+        OutboxNotification refused = notification(1L, 3);
+        when(notificationRouter.deliver(List.of(refused))).thenReturn(Map.of(1L,
+                new ChannelUnavailableException("EMAIL channel unavailable: circuit_open", Duration.ofSeconds(120))));
+        OutboxNotification row = notification(1L, 3);
+        when(outboxRepository.findById(1L)).thenReturn(Optional.of(row));
+
+        worker.deliver(List.of(refused));
+
+        // Third attempt of three, yet not dead: the claim's attempt is handed back
+        assertEquals(OutboxNotification.Status.PENDING, row.getStatus());
+        assertEquals(2, row.getAttempts());
+        assertTrue(row.getNextAttemptAt().isAfter(LocalDateTime.now().plusSeconds(110)));
+        assertEquals(1.0, meterRegistry.counter("notification.outbox.deferred").count());
+        assertEquals(0.0, meterRegistry.counter("notification.outbox.dead").count());
+    }
+
+    @Test
+    void deliver_PartialFailureMarksTheRestSent() {
+        OutboxNotification sentOk = notification(1L, 1);
+        OutboxNotification rejected = notification(2L, 1);
+        List<OutboxNotification> batch = List.of(sentOk, rejected);
+        when(notificationRouter.deliver(batch)).thenReturn(Map.of(2L, new RuntimeException("Recipient rejected")));
+        OutboxNotification row = notification(2L, 1);
+        when(outboxRepository.findById(2L)).thenReturn(Optional.of(row));
+
+        int sent = worker.deliver(batch);
+
+        assertEquals(1, sent);
+        verify(outboxRepository).markSent(eq(List.of(1L)), any(LocalDateTime.class));
+        assertEquals("Recipient rejected", row.getLastError());
+    }
+
+    @Test
+    void awaitCapacity_ReturnsAtOnceBelowTheLimit() {
+        ReflectionTestUtils.setField(worker, "maxPending", 100L);
+        when(outboxRepository.countByStatus(OutboxNotification.Status.PENDING)).thenReturn(99L);
+
+        worker.awaitCapacity();
+
+        verify(outboxRepository, times(1)).countByStatus(OutboxNotification.Status.PENDING);
+        assertEquals(0, meterRegistry.timer("inactivity.sweep.backpressure").count());
+    }
+
+    @Test
+    void awaitCapacity_HoldsTheSweepUntilTheBacklogDrains() {
+        ReflectionTestUtils.setField(worker, "maxPending", 100L);
+        ReflectionTestUtils.setField(worker, "pollIntervalMs", 1L);
+        ReflectionTestUtils.setField(worker, "backpressureMaxWaitSeconds", 60);
+        when(outboxRepository.countByStatus(OutboxNotification.Status.PENDING)).thenReturn(150L, 120L, 40L);
+
+        worker.awaitCapacity();
+
+        verify(outboxRepository, times(3)).countByStatus(OutboxNotification.Status.PENDING);
+        assertEquals(1, meterRegistry.timer("inactivity.sweep.backpressure").count());
+    }
+}
@@ -0,0 +1,129 @@
+package com.lifevault.security;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtUtilsTest {
+
+    private static final String SECRET = "test-secret-key-for-jwt-that-is-at-least-512-bits-long-for-hs512-algorithm";
+
+    private JwtUtils jwtUtils;
+
+    @BeforeEach
+    void setUp() {
+        jwtUtils = newJwtUtils(SECRET, 10);
+    }
+
+    private static JwtUtils newJwtUtils(String secret, int cacheSize) {
+        JwtUtils utils = new JwtUtils();
+        ReflectionTestUtils.setField(utils, "jwtSecret", secret);
+        ReflectionTestUtils.setField(utils, "jwtExpirationMs", 60_000);
+        ReflectionTestUtils.setField(utils, "verifiedCacheSize", cacheSize);
+        utils.init();
+        return utils;
+    }
+
+    private String token(String subject) {
+        return jwtUtils.generateJwtToken(new UsernamePasswordAuthenticationToken(subject, null));
+    }
+
+    @Test
+    void parse_ReturnsTheFieldsOfAValidToken() {
+        JwtUtils.VerifiedToken verified = jwtUtils.parse(token("test@example.com"));
+
+        assertNotNull(verified);
+        assertEquals("test@example.com", verified.getSubject());
+        assertTrue(verified.getExpiresAt().isAfter(Instant.now()));
+    }
+
+    @Test
+    void generateJwtToken_CarriesTheUserIdOfAUserPrincipal() {
+        UserPrincipal principal = new UserPrincipal(42L, "test@example.com", "hash", true, false);
+        String jwt = jwtUtils.generateJwtToken(new UsernamePasswordAuthenticationToken(principal, null));
+
+        JwtUtils.VerifiedToken verified = jwtUtils.parse(jwt);
+        assertEquals("test@example.com", verified.getSubject());
+        assertEquals(42L, verified.getUserId());
+        assertNull(jwtUtils.parse(token("test@example.com")).getUserId());
+    }
+
+    @Test
+    void parse_ServesRepeatedTokensFromTheCache() {
+        String jwt = token("test@example.com");
+
+        JwtUtils.VerifiedToken first = jwtUtils.parse(jwt);
+        assertSame(first, jwtUtils.parse(jwt));
+    }
+
+    @Test
+    void parse_KeepsTheCacheBounded() {
+        for (int i = 0; i < 50; i++) {
+            assertNotNull(jwtUtils.parse(token("user" + i + "@example.com")));
+        }
+
+        Map<?, ?> cached = (Map<?, ?>) ReflectionTestUtils.getField(jwtUtils, "verifiedTokens");
+        assertTrue(cached.size() <= 10, "cache size " + cached.size());
+    }
+
+    @Test
+    void digest_DistinguishesNonAsciiCharacters() {
+        // Under US-ASCII both would be hashed as "...?", so the second could hit the first's cache entry
+        Object first = ReflectionTestUtils.invokeMethod(JwtUtils.class, "digest", "header.payload.sig\u00e9");
+        Object second = ReflectionTestUtils.invokeMethod(JwtUtils.class, "digest", "header.payload.sig\u00e8");
+
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    void parse_RejectsTokensSignedWithAnotherKey() {
+        JwtUtils other = newJwtUtils("another-secret-key-for-jwt-that-is-at-least-512-bits-long-for-hs512-algo", 10);
+        String foreign = other.generateJwtToken(new UsernamePasswordAuthenticationToken("test@example.com", null));
+
+        assertNull(jwtUtils.parse(foreign));
+        assertNull(jwtUtils.parse("not.a.jwt"));
+        assertNull(jwtUtils.parse(""));
+        assertNull(jwtUtils.parse(null));
+    }
+
+    @Test
+    void parse_RejectsExpiredTokens() {
+        String expired = Jwts.builder()
+                .setSubject("test@example.com")
+                .setExpiration(new Date(System.currentTimeMillis() - 1000))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes()), SignatureAlgorithm.HS512)
+                .compact();
+
+        assertNull(jwtUtils.parse(expired));
+    }
+
+    @Test
+    void parse_ChecksExpiryOfCachedTokens() throws InterruptedException {
+        // JWT expiry has one-second resolution, so this lands 0.5-1.5 seconds ahead
+        ReflectionTestUtils.setField(jwtUtils, "jwtExpirationMs", 1500);
+        String jwt = token("test@example.com");
+        assertNotNull(jwtUtils.parse(jwt));
+
+        Thread.sleep(1600);
+
+        assertNull(jwtUtils.parse(jwt));
+    }
+
+    @Test
+    void getUserNameFromJwtToken_ReadsTheSubject() {
+        String jwt = token("test@example.com");
+
+        assertTrue(jwtUtils.validateJwtToken(jwt));
+        assertEquals("test@example.com", jwtUtils.getUserNameFromJwtToken(jwt));
+    }
+}
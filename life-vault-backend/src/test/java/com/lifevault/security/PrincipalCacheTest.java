@@ -0,0 +1,106 @@
+package com.lifevault.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PrincipalCacheTest {
+
+    @Mock
+    private UserDetailsService userDetailsService;
+
+    @InjectMocks
+    private PrincipalCache principalCache;
+
+    private UserPrincipal alice;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(principalCache, "ttlSeconds", 60);
+        ReflectionTestUtils.setField(principalCache, "maxSize", 2);
+        principalCache.init();
+
+        alice = new UserPrincipal(1L, "alice@example.com", "hash", true, false);
+        lenient().when(userDetailsService.loadUserByUsername("alice@example.com")).thenReturn(alice);
+    }
+
+    @Test
+    void get_LoadsOnceWithinTheTtl() {
+        assertSame(alice, principalCache.get("alice@example.com"));
+        assertSame(alice, principalCache.get("alice@example.com"));
+
+        verify(userDetailsService, times(1)).loadUserByUsername("alice@example.com");
+    }
+
+    @Test
+    void put_ServesThePrincipalWithoutLoading() {
+        UserPrincipal fresh = new UserPrincipal(7L, "alice@example.com", "hash", true, false);
+        principalCache.put(fresh);
+
+        assertSame(fresh, principalCache.get("alice@example.com"));
+        verifyNoInteractions(userDetailsService);
+    }
+
+    @Test
+    void get_ReloadsAfterTheTtl() {
+        ReflectionTestUtils.setField(principalCache, "ttlSeconds", 0);
+
+        principalCache.get("alice@example.com");
+        principalCache.get("alice@example.com");
+
+        verify(userDetailsService, times(2)).loadUserByUsername("alice@example.com");
+    }
+
+    @Test
+    void get_EvictsTheLeastRecentlyUsedBeyondMaxSize() {
+        when(userDetailsService.loadUserByUsername("bob@example.com"))
+                .thenReturn(new UserPrincipal(2L, "bob@example.com", "hash", true, false));
+        when(userDetailsService.loadUserByUsername("carol@example.com"))
+                .thenReturn(new UserPrincipal(3L, "carol@example.com", "hash", true, false));
+
+        principalCache.get("alice@example.com");
+        principalCache.get("bob@example.com");
+        principalCache.get("alice@example.com");
+        principalCache.get("carol@example.com"); // Evicts bob, used less recently than alice
+        principalCache.get("alice@example.com");
+        principalCache.get("bob@example.com");
+
+        verify(userDetailsService, times(1)).loadUserByUsername("alice@example.com");
+        verify(userDetailsService, times(2)).loadUserByUsername("bob@example.com");
+    }
+
+    @Test
+    void invalidate_EvictsNowAndAgainAfterCommit() {
+        principalCache.get("alice@example.com");
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            principalCache.invalidate("alice@example.com");
+            // A request racing the uncommitted change re-caches the old row...
+            principalCache.get("alice@example.com");
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        // ...which the commit evicts again
+        principalCache.get("alice@example.com");
+
+        verify(userDetailsService, times(3)).loadUserByUsername("alice@example.com");
+    }
+
+    @Test
+    void toString_LeavesOutThePasswordHash() {
+        assertFalse(alice.toString().contains("hash"));
+    }
+}
@@ -0,0 +1,108 @@
+package com.lifevault.service;
+
+import com.lifevault.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ActivityTokenServiceTest {
+
+    private ActivityTokenService activityTokenService;
+
+    private User user;
+
+    private Instant now;
+
+    @BeforeEach
+    void setUp() {
+        activityTokenService = new ActivityTokenService();
+        ReflectionTestUtils.setField(activityTokenService, "secret", "test-activity-token-secret");
+        ReflectionTestUtils.setField(activityTokenService, "validityDays", 7);
+        activityTokenService.init();
+
+        user = new User();
+        user.setId(42L);
+        now = Instant.parse("2024-06-01T10:00:00Z");
+    }
+
+    @Test
+    void issue_BumpsTheVersionAndRoundTrips() {
+        String first = activityTokenService.issue(user, now);
+        String second = activityTokenService.issue(user, now);
+
+        assertNotEquals(first, second);
+        assertEquals(2, user.getActivityTokenVersion());
+
+        ActivityTokenService.Claims claims = activityTokenService.verify(second, now.plusSeconds(60));
+        assertNotNull(claims);
+        assertEquals(42L, claims.getUserId());
+        assertEquals(2, claims.getVersion());
+        assertEquals(now, claims.getIssuedAt());
+    }
+
+    @Test
+    void verify_RejectsExpiredTokens() {
+        String token = activityTokenService.issue(user, now);
+
+        assertNotNull(activityTokenService.verify(token, now.plus(Duration.ofDays(7)).minusSeconds(1)));
+        assertNull(activityTokenService.verify(token, now.plus(Duration.ofDays(7))));
+    }
+
+    @Test
+    void verify_RejectsTamperedAndForeignTokens() {
+        String token = activityTokenService.issue(user, now);
+        String signature = token.substring(token.lastIndexOf('.'));
+
+        // Someone else's id under this user's signature
+        assertNull(activityTokenService.verify("43.1." + now.getEpochSecond() + signature, now));
+
+        ActivityTokenService otherKey = new ActivityTokenService();
+        ReflectionTestUtils.setField(otherKey, "secret", "another-secret");
+        ReflectionTestUtils.setField(otherKey, "validityDays", 7);
+        otherKey.init();
+        assertNull(activityTokenService.verify(otherKey.issue(user, now), now));
+    }
+
+    @Test
+    void verify_RejectsMalformedTokens() {
+        assertNull(activityTokenService.verify(null, now));
+        assertNull(activityTokenService.verify("", now));
+        assertNull(activityTokenService.verify("550e8400-e29b-41d4-a716-446655440000", now));
+        assertNull(activityTokenService.verify("a.b.c.d", now));
+        assertNull(activityTokenService.verify("1.1.1.!!!", now));
+    }
+
+    @Test
+    void deriveKey_MatchesRfc5869WithoutSalt() {
+        // RFC 5869 test case 3: zero-length salt and info
+        byte[] secret = new byte[22];
+        Arrays.fill(secret, (byte) 0x0b);
+
+        assertEquals("8da4e775a563c18f715f802a063c5a31b8a11f5c5ee1879ec3454e5f3c738d2d"
+                        + "9d201395faa4b61a96c8",
+                HexFormat.of().formatHex(ActivityTokenService.deriveKey(secret, "", 42)));
+    }
+
+    @Test
+    void verify_RejectsTokensSignedWithTheRawSecret() throws Exception {
+        String payload = "42.1." + now.getEpochSecond();
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec("test-activity-token-secret".getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        String token = payload + "." + Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(mac.doFinal(payload.getBytes(StandardCharsets.US_ASCII)));
+
+        // A JWT-style signature under the shared secret is no activity token
+        assertNull(activityTokenService.verify(token, now));
+    }
+}
@@ -12,6 +12,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
 import java.util.Arrays;
 import java.util.List;
@@ -58,15 +59,15 @@ class AssetServiceTest {
 
     @Test
     void getUserAssets_Success() {
-        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
         when(assetRepository.findByUserIdAndIsActiveTrue(1L)).thenReturn(Arrays.asList(testAsset));
 
-        List<AssetDto> result = assetService.getUserAssets("test@example.com");
+        List<AssetDto> result = assetService.getUserAssets(1L);
 
         assertNotNull(result);
         assertEquals(1, result.size());
         assertEquals("Test Bank Account", result.get(0).getName());
         verify(assetRepository).findByUserIdAndIsActiveTrue(1L);
+        verifyNoInteractions(userRepository);
     }
 
     @Test
@@ -76,7 +77,8 @@ class AssetServiceTest {
         assetDto.setType(Asset.AssetType.INVESTMENT);
         assetDto.setNotes("Private notes");
 
-        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
+        when(userRepository.existsById(1L)).thenReturn(true);
+        when(userRepository.getReferenceById(1L)).thenReturn(testUser);
         when(encryptionUtil.encrypt("Private notes")).thenReturn("encrypted-notes");
         when(assetRepository.save(any(Asset.class))).thenAnswer(invocation -> {
             Asset saved = invocation.getArgument(0);
@@ -84,7 +86,7 @@ class AssetServiceTest {
             return saved;
         });
 
-        AssetDto result = assetService.createAsset("test@example.com", assetDto);
+        AssetDto result = assetService.createAsset(1L, assetDto);
 
         assertNotNull(result);
         assertEquals("New Asset", result.getName());
@@ -94,17 +96,24 @@ class AssetServiceTest {
         verify(activityLogService).logActivity(eq(testUser), eq("ASSET_CREATED"), anyString());
     }
 
+    @Test
+    void createAsset_UserNoLongerExists() {
+        when(userRepository.existsById(1L)).thenReturn(false);
+
+        assertThrows(UsernameNotFoundException.class, () -> assetService.createAsset(1L, new AssetDto()));
+        verify(assetRepository, never()).save(any());
+    }
+
     @Test
     void updateAsset_Success() {
         AssetDto updateDto = new AssetDto();
         updateDto.setName("Updated Asset");
         updateDto.setType(Asset.AssetType.CRYPTO);
 
-        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
         when(assetRepository.findByIdAndUserId(1L, 1L)).thenReturn(Optional.of(testAsset));
         when(assetRepository.save(any(Asset.class))).thenReturn(testAsset);
 
-        AssetDto result = assetService.updateAsset("test@example.com", 1L, updateDto);
+        AssetDto result = assetService.updateAsset(1L, 1L, updateDto);
 
         assertNotNull(result);
         assertEquals("Updated Asset", testAsset.getName());
@@ -115,22 +124,20 @@ class AssetServiceTest {
 
     @Test
     void updateAsset_NotFound() {
-        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
         when(assetRepository.findByIdAndUserId(999L, 1L)).thenReturn(Optional.empty());
 
         AssetDto updateDto = new AssetDto();
         assertThrows(RuntimeException.class, () -> {
-            assetService.updateAsset("test@example.com", 999L, updateDto);
+            assetService.updateAsset(1L, 999L, updateDto);
         });
     }
 
     @Test
     void deleteAsset_Success() {
-        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
         when(assetRepository.findByIdAndUserId(1L, 1L)).thenReturn(Optional.of(testAsset));
         when(assetRepository.save(any(Asset.class))).thenReturn(testAsset);
 
-        assetService.deleteAsset("test@example.com", 1L);
+        assetService.deleteAsset(1L, 1L);
 
         assertFalse(testAsset.getIsActive());
         verify(assetRepository).save(testAsset);
@@ -141,11 +148,10 @@ class AssetServiceTest {
     void encryptionDecryption_Integration() {
         testAsset.setEncryptedNotes("encrypted-data");
         
-        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
         when(assetRepository.findByUserIdAndIsActiveTrue(1L)).thenReturn(Arrays.asList(testAsset));
         when(encryptionUtil.decrypt("encrypted-data")).thenReturn("decrypted notes");
 
-        List<AssetDto> result = assetService.getUserAssets("test@example.com");
+        List<AssetDto> result = assetService.getUserAssets(1L);
 
         assertEquals("decrypted notes", result.get(0).getNotes());
         verify(encryptionUtil).decrypt("encrypted-data");
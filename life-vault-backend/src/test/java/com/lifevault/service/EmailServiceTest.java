@@ -1,7 +1,11 @@
 package com.lifevault.service;
 
+import com.lifevault.entity.OutboxNotification;
 import com.lifevault.entity.TrustedContact;
 import com.lifevault.entity.User;
+import com.lifevault.repository.OutboxNotificationRepository;
+import com.lifevault.repository.TrustedContactRepository;
+import com.lifevault.util.EncryptionUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -9,10 +13,19 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import java.io.ByteArrayOutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -25,9 +38,22 @@ class EmailServiceTest {
     @Mock
     private JavaMailSender mailSender;
 
+    @Mock
+    private OutboxNotificationRepository outboxRepository;
+
+    @Mock
+    private MailTransportPool mailTransportPool;
+
+    @Mock
+    private SendRateLimiter sendRateLimiter;
+
+    @Mock
+    private TrustedContactRepository trustedContactRepository;
+
     @InjectMocks
     private EmailService emailService;
 
+    private VaultLinks vaultLinks;
     private User testUser;
     private TrustedContact testContact;
 
@@ -36,6 +62,18 @@ class EmailServiceTest {
         // Set the required properties
         ReflectionTestUtils.setField(emailService, "fromEmail", "noreply@lifevault.com");
         ReflectionTestUtils.setField(emailService, "appUrl", "http://localhost:3000");
+        NotificationTemplates notificationTemplates = new NotificationTemplates();
+        notificationTemplates.compile();
+        ReflectionTestUtils.setField(emailService, "notificationTemplates", notificationTemplates);
+        InactivityPolicy inactivityPolicy = new InactivityPolicy();
+        ReflectionTestUtils.setField(inactivityPolicy, "gracePeriodDays", 14);
+        ReflectionTestUtils.setField(emailService, "inactivityPolicy", inactivityPolicy);
+        EncryptionUtil encryptionUtil = new EncryptionUtil();
+        ReflectionTestUtils.setField(encryptionUtil, "encryptionKey", "test-encryption-key");
+        vaultLinks = new VaultLinks();
+        ReflectionTestUtils.setField(vaultLinks, "encryptionUtil", encryptionUtil);
+        ReflectionTestUtils.setField(vaultLinks, "appUrl", "http://localhost:3000");
+        ReflectionTestUtils.setField(emailService, "vaultLinks", vaultLinks);
 
         testUser = new User();
         testUser.setId(1L);
@@ -175,4 +213,225 @@ class EmailServiceTest {
         assertTrue(content.contains("http://localhost:3000/api/activity/verify/" + token));
         assertTrue(content.contains("Alternative: You can also log in at: http://localhost:3000"));
     }
+
+    @Test
+    void queueInactivityWarningEmail_WritesOutboxRowInsteadOfSending() {
+        emailService.queueInactivityWarningEmail(testUser, "75% warning", 135, "queued-token");
+
+        ArgumentCaptor<OutboxNotification> captor = ArgumentCaptor.forClass(OutboxNotification.class);
+        verify(outboxRepository).save(captor.capture());
+        verifyNoInteractions(mailSender);
+
+        OutboxNotification queued = captor.getValue();
+        assertEquals(OutboxNotification.Type.INACTIVITY_WARNING, queued.getType());
+        assertEquals(OutboxNotification.Lane.ROUTINE, queued.getLane());
+        assertEquals(testUser.getId(), queued.getUserId());
+        assertEquals("test@example.com", queued.getRecipient());
+        assertEquals("Life Vault - Activity Check Required", queued.getSubject());
+        assertTrue(queued.getBody().contains("Important Reminder"));
+        assertTrue(queued.getBody().contains("/api/activity/verify/queued-token"));
+        assertTrue(queued.getHtmlBody().contains("href=\"http://localhost:3000/api/activity/verify/queued-token\""));
+        assertEquals(OutboxNotification.Status.PENDING, queued.getStatus());
+    }
+
+    @Test
+    void sendInactivityWarningEmail_GracePeriodUsesConfiguredLength() {
+        InactivityPolicy inactivityPolicy = new InactivityPolicy();
+        ReflectionTestUtils.setField(inactivityPolicy, "gracePeriodDays", 21);
+        ReflectionTestUtils.setField(emailService, "inactivityPolicy", inactivityPolicy);
+        EncryptionUtil encryptionUtil = new EncryptionUtil();
+        ReflectionTestUtils.setField(encryptionUtil, "encryptionKey", "test-encryption-key");
+        vaultLinks = new VaultLinks();
+        ReflectionTestUtils.setField(vaultLinks, "encryptionUtil", encryptionUtil);
+        ReflectionTestUtils.setField(vaultLinks, "appUrl", "http://localhost:3000");
+        ReflectionTestUtils.setField(emailService, "vaultLinks", vaultLinks);
+
+        emailService.sendInactivityWarningEmail(testUser, "grace period warning", 185, "token");
+
+        ArgumentCaptor<SimpleMailMessage> messageCaptor = ArgumentCaptor.forClass(SimpleMailMessage.class);
+        verify(mailSender).send(messageCaptor.capture());
+        String text = messageCaptor.getValue().getText();
+        assertTrue(text.contains("notified in 16 days"));
+        assertTrue(text.contains("plus a 21-day grace period"));
+    }
+
+    @Test
+    void deliver_SendsHtmlAlternativeWhenPresent() throws Exception {
+        when(mailSender.createMimeMessage()).thenAnswer(invocation -> new MimeMessage((Session) null));
+        OutboxNotification notification = outboxNotification(1L, "john@example.com");
+        notification.setHtmlBody("<p>Body</p>");
+
+        emailService.deliver(List.of(notification));
+
+        ArgumentCaptor<List<MimeMessage>> captor = ArgumentCaptor.forClass(List.class);
+        verify(mailTransportPool).send(captor.capture(), any());
+        MimeMessage message = captor.getValue().get(0);
+        message.saveChanges();
+        assertTrue(message.getContentType().startsWith("multipart/mixed"));
+    }
+
+    @Test
+    void queueInactivityWarningEmail_GraceAndFinalWeekGetTheirLanes() {
+        emailService.queueInactivityWarningEmail(testUser, "grace period warning", 185, "t1");
+        emailService.queueInactivityWarningEmail(testUser, "final week warning", 175, "t2");
+
+        ArgumentCaptor<OutboxNotification> captor = ArgumentCaptor.forClass(OutboxNotification.class);
+        verify(outboxRepository, times(2)).save(captor.capture());
+        assertEquals(OutboxNotification.Lane.GRACE, captor.getAllValues().get(0).getLane());
+        assertEquals(OutboxNotification.Lane.FINAL_WEEK, captor.getAllValues().get(1).getLane());
+    }
+
+    @Test
+    void queueVaultRevealNotification_AddressesTheContact() {
+        emailService.queueVaultRevealNotification(testContact, testUser);
+
+        ArgumentCaptor<OutboxNotification> captor = ArgumentCaptor.forClass(OutboxNotification.class);
+        verify(outboxRepository).save(captor.capture());
+
+        OutboxNotification queued = captor.getValue();
+        assertEquals(OutboxNotification.Type.VAULT_REVEAL, queued.getType());
+        assertEquals(OutboxNotification.Lane.REVEAL, queued.getLane());
+        assertEquals("john@example.com", queued.getRecipient());
+        // The stored row never holds the plain token, only a placeholder and the encrypted token
+        assertFalse(queued.getBody().contains(testContact.getVerificationToken()));
+        assertFalse(queued.getHtmlBody().contains(testContact.getVerificationToken()));
+        assertTrue(queued.getBody().contains(VaultLinks.PLACEHOLDER));
+        assertNotEquals(testContact.getVerificationToken(), queued.getLinkToken());
+        assertEquals("http://localhost:3000/vault-access/" + testContact.getVerificationToken(), vaultLinks.url(queued));
+    }
+
+    @Test
+    void deliver_RendersTheVaultLinkAtSendTime() throws Exception {
+        when(mailSender.createMimeMessage()).thenAnswer(invocation -> new MimeMessage((Session) null));
+        emailService.queueVaultRevealNotification(testContact, testUser);
+        ArgumentCaptor<OutboxNotification> queued = ArgumentCaptor.forClass(OutboxNotification.class);
+        verify(outboxRepository).save(queued.capture());
+        queued.getValue().setId(1L);
+
+        Map<Long, Exception> failures = emailService.deliver(List.of(queued.getValue()));
+
+        assertTrue(failures.isEmpty());
+        ArgumentCaptor<List<MimeMessage>> captor = ArgumentCaptor.forClass(List.class);
+        verify(mailTransportPool).send(captor.capture(), any());
+        MimeMessage message = captor.getValue().get(0);
+        message.saveChanges();
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        message.writeTo(raw);
+        assertTrue(raw.toString().contains("/vault-access/" + testContact.getVerificationToken()));
+        assertFalse(raw.toString().contains(VaultLinks.PLACEHOLDER));
+    }
+
+    @Test
+    void deliver_SendsBatchThroughTransportPool() throws Exception {
+        when(mailSender.createMimeMessage()).thenAnswer(invocation -> new MimeMessage((Session) null));
+
+        Map<Long, Exception> failures = emailService.deliver(List.of(
+                outboxNotification(1L, "john@example.com"), outboxNotification(2L, "jane@example.com")));
+
+        assertTrue(failures.isEmpty());
+        ArgumentCaptor<List<MimeMessage>> captor = ArgumentCaptor.forClass(List.class);
+        verify(mailTransportPool).send(captor.capture(), any());
+        List<MimeMessage> messages = captor.getValue();
+        assertEquals(2, messages.size());
+        assertEquals("john@example.com", messages.get(0).getAllRecipients()[0].toString());
+        assertEquals("Body", messages.get(1).getContent());
+        verify(mailSender, never()).send(any(SimpleMailMessage.class));
+    }
+
+    @Test
+    void throttle_CountsRevealsToOneContactAsTheirDigest() {
+        when(sendRateLimiter.acquire(2)).thenReturn(true);
+
+        assertTrue(emailService.throttle(List.of(reveal(1L, 1L), reveal(2L, 2L),
+                outboxNotification(3L, "test@example.com"))));
+
+        verify(sendRateLimiter).acquire(2);
+    }
+
+    @Test
+    void deliver_ReportsFailedMessagesByOutboxId() {
+        when(mailSender.createMimeMessage()).thenAnswer(invocation -> new MimeMessage((Session) null));
+        doAnswer(invocation -> {
+            List<MimeMessage> messages = invocation.getArgument(0);
+            Map<Object, Exception> failed = new LinkedHashMap<>();
+            failed.put(messages.get(1), new MessagingException("550 Mailbox unavailable"));
+            throw new MailSendException(failed);
+        }).when(mailTransportPool).send(anyList(), any());
+
+        Map<Long, Exception> failures = emailService.deliver(List.of(
+                outboxNotification(1L, "john@example.com"), outboxNotification(2L, "jane@example.com")));
+
+        assertEquals(Set.of(2L), failures.keySet());
+        assertEquals("550 Mailbox unavailable", failures.get(2L).getMessage());
+    }
+
+    @Test
+    void deliver_CoalescesRevealsToTheSameContactIntoOneDigest() throws Exception {
+        when(mailSender.createMimeMessage()).thenAnswer(invocation -> new MimeMessage((Session) null));
+        User sibling = new User();
+        sibling.setId(2L);
+        sibling.setFirstName("Sibling");
+        sibling.setLastName("User");
+        TrustedContact siblingContact = new TrustedContact();
+        siblingContact.setName("John Doe");
+        siblingContact.setEmail("john@example.com");
+        siblingContact.setUser(sibling);
+        when(trustedContactRepository.findWithUserByEmailsAndUserIds(Set.of("john@example.com"), Set.of(1L, 2L)))
+                .thenReturn(List.of(testContact, siblingContact));
+        OutboxNotification first = reveal(1L, 1L);
+        OutboxNotification second = reveal(2L, 2L);
+        OutboxNotification warning = outboxNotification(3L, "test@example.com");
+
+        Map<Long, Exception> failures = emailService.deliver(List.of(first, warning, second));
+
+        assertTrue(failures.isEmpty());
+        ArgumentCaptor<List<MimeMessage>> captor = ArgumentCaptor.forClass(List.class);
+        verify(mailTransportPool).send(captor.capture(), any());
+        List<MimeMessage> messages = captor.getValue();
+        assertEquals(2, messages.size());
+        MimeMessage digest = messages.get(1);
+        assertEquals("john@example.com", digest.getAllRecipients()[0].toString());
+        digest.saveChanges();
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        digest.writeTo(raw);
+        // Links come from the queued rows' encrypted tokens: the contacts' plain tokens are not stored
+        assertTrue(raw.toString().contains("/vault-access/token-1"));
+        assertTrue(raw.toString().contains("/vault-access/token-2"));
+    }
+
+    @Test
+    void deliver_DigestFailureFailsEveryCoalescedNotification() {
+        when(mailSender.createMimeMessage()).thenAnswer(invocation -> new MimeMessage((Session) null));
+        TrustedContact second = new TrustedContact();
+        second.setEmail("john@example.com");
+        User secondOwner = new User();
+        secondOwner.setId(2L);
+        second.setUser(secondOwner);
+        when(trustedContactRepository.findWithUserByEmailsAndUserIds(anyCollection(), anyCollection()))
+                .thenReturn(List.of(testContact, second));
+        doThrow(new MailSendException("Connection refused")).when(mailTransportPool).send(anyList(), any());
+
+        Map<Long, Exception> failures = emailService.deliver(List.of(reveal(1L, 1L), reveal(2L, 2L)));
+
+        assertEquals(Set.of(1L, 2L), failures.keySet());
+    }
+
+    private OutboxNotification reveal(Long id, Long userId) {
+        OutboxNotification notification = outboxNotification(id, "john@example.com");
+        notification.setType(OutboxNotification.Type.VAULT_REVEAL);
+        notification.setUserId(userId);
+        TrustedContact contact = new TrustedContact();
+        contact.setVerificationToken("token-" + userId);
+        notification.setLinkToken(vaultLinks.seal(contact));
+        return notification;
+    }
+
+    private OutboxNotification outboxNotification(Long id, String recipient) {
+        OutboxNotification notification = new OutboxNotification();
+        notification.setId(id);
+        notification.setRecipient(recipient);
+        notification.setSubject("Subject");
+        notification.setBody("Body");
+        return notification;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,138 @@
+package com.lifevault.service;
+
+import com.lifevault.entity.User;
+import com.lifevault.entity.User.InactivityMilestone;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InactivityPolicyTest {
+
+    private InactivityPolicy inactivityPolicy;
+
+    private User user;
+
+    private LocalDateTime lastActivity;
+
+    @BeforeEach
+    void setUp() {
+        inactivityPolicy = new InactivityPolicy();
+        ReflectionTestUtils.setField(inactivityPolicy, "gracePeriodDays", 14);
+
+        lastActivity = LocalDateTime.of(2024, 1, 1, 9, 30);
+        user = new User();
+        user.setLastActivityAt(lastActivity);
+        user.setInactivityPeriodDays(180);
+    }
+
+    @Test
+    void milestoneOn_MatchesNotificationCadence() {
+        assertNull(inactivityPolicy.milestoneOn(89, 180));
+        assertEquals(InactivityMilestone.HALF_WARNING, inactivityPolicy.milestoneOn(90, 180));
+        assertEquals(InactivityMilestone.THREE_QUARTERS_WARNING, inactivityPolicy.milestoneOn(135, 180));
+        assertNull(inactivityPolicy.milestoneOn(172, 180));
+        assertEquals(InactivityMilestone.FINAL_WEEK_WARNING, inactivityPolicy.milestoneOn(173, 180));
+        assertEquals(InactivityMilestone.FINAL_WEEK_WARNING, inactivityPolicy.milestoneOn(179, 180));
+        assertEquals(InactivityMilestone.GRACE_PERIOD_WARNING, inactivityPolicy.milestoneOn(180, 180));
+        assertNull(inactivityPolicy.milestoneOn(181, 180));
+        assertEquals(InactivityMilestone.GRACE_PERIOD_WARNING, inactivityPolicy.milestoneOn(192, 180));
+        assertEquals(InactivityMilestone.VAULT_REVEAL, inactivityPolicy.milestoneOn(194, 180));
+        assertEquals(InactivityMilestone.VAULT_REVEAL, inactivityPolicy.milestoneOn(400, 180));
+    }
+
+    @Test
+    void schedule_FreshActivityPointsAtHalfWarning() {
+        inactivityPolicy.schedule(user, lastActivity);
+
+        assertEquals(InactivityMilestone.HALF_WARNING, user.getNextActionType());
+        assertEquals(lastActivity.plusDays(90), user.getNextActionAt());
+    }
+
+    @Test
+    void schedule_SkipsToNextMilestoneStrictlyAfterNow() {
+        // Half way through day 173: the final week warning for today is already behind us
+        inactivityPolicy.schedule(user, lastActivity.plusDays(173).plusHours(12));
+
+        assertEquals(InactivityMilestone.FINAL_WEEK_WARNING, user.getNextActionType());
+        assertEquals(lastActivity.plusDays(174), user.getNextActionAt());
+    }
+
+    @Test
+    void schedule_GracePeriodEveryOtherDayThenReveal() {
+        inactivityPolicy.schedule(user, lastActivity.plusDays(180).plusHours(1));
+        assertEquals(InactivityMilestone.GRACE_PERIOD_WARNING, user.getNextActionType());
+        assertEquals(lastActivity.plusDays(182), user.getNextActionAt());
+
+        inactivityPolicy.schedule(user, lastActivity.plusDays(192).plusHours(1));
+        assertEquals(InactivityMilestone.VAULT_REVEAL, user.getNextActionType());
+        assertEquals(lastActivity.plusDays(194), user.getNextActionAt());
+    }
+
+    @Test
+    void schedule_FollowsGracePeriodChanges() {
+        ReflectionTestUtils.setField(inactivityPolicy, "gracePeriodDays", 4);
+
+        inactivityPolicy.schedule(user, lastActivity.plusDays(182).plusHours(1));
+
+        assertEquals(InactivityMilestone.VAULT_REVEAL, user.getNextActionType());
+        assertEquals(lastActivity.plusDays(184), user.getNextActionAt());
+    }
+
+    @Test
+    void scheduledDay_IsTheMilestoneDayWhateverTheSlotOffset() {
+        ReflectionTestUtils.setField(inactivityPolicy, "spreadMinutes", 1380);
+        for (long id = 1; id <= 200; id++) {
+            user.setId(id);
+            inactivityPolicy.schedule(user, lastActivity.plusDays(100));
+
+            assertEquals(135, inactivityPolicy.scheduledDay(user), "user " + id);
+        }
+    }
+
+    @Test
+    void slotOffsetMinutes_IsDeterministicAndWithinTheSpread() {
+        ReflectionTestUtils.setField(inactivityPolicy, "spreadMinutes", 1380);
+
+        Set<Long> offsets = new HashSet<>();
+        for (long id = 1; id <= 1000; id++) {
+            long offset = inactivityPolicy.slotOffsetMinutes(id);
+            assertTrue(offset >= 0 && offset < 1380);
+            assertEquals(offset, inactivityPolicy.slotOffsetMinutes(id));
+            offsets.add(offset);
+        }
+        // Consecutive ids must not pile into a handful of slots
+        assertTrue(offsets.size() > 500);
+        assertEquals(0, inactivityPolicy.slotOffsetMinutes(null));
+    }
+
+    @Test
+    void slotOffsetMinutes_CapsTheSpreadBelowADay() {
+        ReflectionTestUtils.setField(inactivityPolicy, "spreadMinutes", 7 * 24 * 60);
+
+        for (long id = 1; id <= 1000; id++) {
+            assertTrue(inactivityPolicy.slotOffsetMinutes(id) < InactivityPolicy.MAX_SPREAD_MINUTES);
+        }
+    }
+
+    @Test
+    void schedule_AppliesTheUsersSlotAndKeepsTodaysPendingMilestone() {
+        ReflectionTestUtils.setField(inactivityPolicy, "spreadMinutes", 1380);
+        user.setId(42L);
+        long offset = inactivityPolicy.slotOffsetMinutes(42L);
+        assertTrue(offset > 0);
+
+        inactivityPolicy.schedule(user, lastActivity);
+        assertEquals(lastActivity.plusDays(90).plusMinutes(offset), user.getNextActionAt());
+
+        // Day 173 has begun but the user's slot has not come round yet: today's warning is still due
+        inactivityPolicy.schedule(user, lastActivity.plusDays(173));
+        assertEquals(InactivityMilestone.FINAL_WEEK_WARNING, user.getNextActionType());
+        assertEquals(lastActivity.plusDays(173).plusMinutes(offset), user.getNextActionAt());
+    }
+}
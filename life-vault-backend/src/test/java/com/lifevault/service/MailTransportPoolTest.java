@@ -0,0 +1,148 @@
+package com.lifevault.service;
+
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.lifevault.exception.ChannelUnavailableException;
+import jakarta.mail.MessagingException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MailTransportPoolTest {
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP.dynamicPort())
+            .withConfiguration(GreenMailConfiguration.aConfig().withDisabledAuthentication());
+
+    private JavaMailSenderImpl mailSender;
+    private MailTransportPool transportPool;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(greenMail.getSmtp().getPort());
+
+        meterRegistry = new SimpleMeterRegistry();
+        transportPool = new MailTransportPool();
+        ReflectionTestUtils.setField(transportPool, "mailSender", mailSender);
+        ReflectionTestUtils.setField(transportPool, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(transportPool, "poolSize", 2);
+        ReflectionTestUtils.setField(transportPool, "maxMessagesPerConnection", 5);
+        transportPool.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        transportPool.closeAll();
+    }
+
+    private List<MimeMessage> messages(int count) throws MessagingException {
+        List<MimeMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            MimeMessage message = mailSender.createMimeMessage();
+            MimeMessageHelper helper = new MimeMessageHelper(message, "UTF-8");
+            helper.setFrom("noreply@lifevault.com");
+            helper.setTo("user" + i + "@example.com");
+            helper.setSubject("Subject " + i);
+            helper.setText("Body " + i);
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    @Test
+    void send_ReusesConnectionAcrossBatches() throws Exception {
+        transportPool.send(messages(2));
+        transportPool.send(messages(2));
+
+        assertEquals(4, greenMail.getReceivedMessages().length);
+        assertEquals(1, transportPool.idleConnections());
+    }
+
+    @Test
+    void send_RetiresConnectionAfterMaxMessages() throws Exception {
+        transportPool.send(messages(5));
+
+        assertEquals(5, greenMail.getReceivedMessages().length);
+        assertEquals(0, transportPool.idleConnections());
+    }
+
+    @Test
+    void send_ReconnectsWhenServerDroppedIdleConnection() throws Exception {
+        transportPool.send(messages(1));
+        // Restarting drops the pooled connection; the dynamic port changes with it
+        greenMail.reset();
+        mailSender.setPort(greenMail.getSmtp().getPort());
+
+        transportPool.send(messages(1));
+
+        assertEquals(1, greenMail.getReceivedMessages().length);
+    }
+
+    @Test
+    void send_HungServerFailsTheWholeBatchWithinOneTimeout() throws Exception {
+        // Accepts connections but never sends the SMTP greeting
+        try (ServerSocket hungServer = new ServerSocket(0)) {
+            Properties properties = new Properties();
+            properties.setProperty("mail.smtp.connectiontimeout", "500");
+            properties.setProperty("mail.smtp.timeout", "500");
+            mailSender.setJavaMailProperties(properties);
+            mailSender.setPort(hungServer.getLocalPort());
+            List<MimeMessage> batch = messages(3);
+
+            long start = System.nanoTime();
+            MailSendException failure = assertThrows(MailSendException.class, () -> transportPool.send(batch));
+
+            assertTrue(System.nanoTime() - start < 1_500_000_000L);
+            assertEquals(3, failure.getFailedMessages().size());
+            // The server, not the recipients, failed: reported as the channel being unavailable
+            failure.getFailedMessages().values().forEach(cause -> assertInstanceOf(ChannelUnavailableException.class, cause));
+            assertEquals(1.0, meterRegistry.counter("notification.mail.timeouts").count());
+        }
+    }
+
+    @Test
+    void send_StopsOnceTheHandoverIsRefused() throws Exception {
+        List<MimeMessage> batch = messages(3);
+        AtomicInteger offered = new AtomicInteger();
+
+        MailSendException failure = assertThrows(MailSendException.class,
+                () -> transportPool.send(batch, message -> offered.incrementAndGet() <= 1));
+
+        assertEquals(1, greenMail.getReceivedMessages().length);
+        assertEquals(2, failure.getFailedMessages().size());
+        assertTrue(((ChannelUnavailableException) failure.getFailedMessages().get(batch.get(1))).isDeferred());
+    }
+
+    @Test
+    void send_SendsNothingOnceInterrupted() throws Exception {
+        List<MimeMessage> batch = messages(2);
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(MailSendException.class, () -> transportPool.send(batch));
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertEquals(0, greenMail.getReceivedMessages().length);
+    }
+}
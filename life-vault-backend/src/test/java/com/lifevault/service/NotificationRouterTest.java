@@ -0,0 +1,280 @@
+package com.lifevault.service;
+
+import com.lifevault.entity.NotificationPreference;
+import com.lifevault.entity.OutboxNotification;
+import com.lifevault.entity.TrustedContact;
+import com.lifevault.entity.User;
+import com.lifevault.entity.User.InactivityMilestone;
+import com.lifevault.exception.ChannelUnavailableException;
+import com.lifevault.repository.NotificationPreferenceRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationRouterTest {
+
+    @Mock
+    private EmailService emailService;
+
+    @Mock
+    private SmsService smsService;
+
+    @Mock
+    private WebhookService webhookService;
+
+    @Mock
+    private NotificationPreferenceRepository preferenceRepository;
+
+    @InjectMocks
+    private NotificationRouter router;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(emailService.getChannel()).thenReturn(OutboxNotification.Channel.EMAIL);
+        lenient().when(smsService.getChannel()).thenReturn(OutboxNotification.Channel.SMS);
+        lenient().when(webhookService.getChannel()).thenReturn(OutboxNotification.Channel.WEBHOOK);
+        lenient().when(emailService.throttle(anyList())).thenReturn(true);
+        lenient().when(smsService.throttle(anyList())).thenReturn(true);
+        lenient().when(webhookService.throttle(anyList())).thenReturn(true);
+        meterRegistry = new SimpleMeterRegistry();
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("inactivity.channels.email.failure-threshold", "2")
+                .withProperty("inactivity.channels.sms.timeout-seconds", "1");
+        ReflectionTestUtils.setField(router, "channels", List.of(emailService, smsService, webhookService));
+        ReflectionTestUtils.setField(router, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(router, "environment", environment);
+        router.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        router.stop();
+    }
+
+    private OutboxNotification notification(long id, OutboxNotification.Channel channel) {
+        OutboxNotification notification = new OutboxNotification();
+        notification.setId(id);
+        notification.setChannel(channel);
+        return notification;
+    }
+
+    private User user() {
+        User user = new User();
+        user.setId(1L);
+        user.setPhoneNumber("+15551234567");
+        return user;
+    }
+
+    @Test
+    void deliver_SendsEachChannelsShareOnItsOwnChannel() {
+        OutboxNotification email = notification(1L, OutboxNotification.Channel.EMAIL);
+        OutboxNotification sms = notification(2L, OutboxNotification.Channel.SMS);
+        OutboxNotification webhook = notification(3L, OutboxNotification.Channel.WEBHOOK);
+
+        Map<Long, Exception> failures = router.deliver(List.of(email, sms, webhook));
+
+        assertTrue(failures.isEmpty());
+        verify(emailService).deliver(eq(List.of(email)), any(Handover.class));
+        verify(smsService).deliver(eq(List.of(sms)), any(Handover.class));
+        verify(webhookService).deliver(eq(List.of(webhook)), any(Handover.class));
+    }
+
+    @Test
+    void deliver_OpenCircuitFailsFastWithoutCallingTheChannel() {
+        OutboxNotification email = notification(1L, OutboxNotification.Channel.EMAIL);
+        when(emailService.deliver(anyList(), any())).thenThrow(new RuntimeException("SMTP down"));
+        router.deliver(List.of(email));
+        router.deliver(List.of(email));
+        assertEquals(CircuitBreaker.State.OPEN, router.circuitState(OutboxNotification.Channel.EMAIL));
+
+        OutboxNotification sms = notification(2L, OutboxNotification.Channel.SMS);
+        Map<Long, Exception> failures = router.deliver(List.of(email, sms));
+
+        verify(emailService, times(2)).deliver(anyList(), any());
+        ChannelUnavailableException refused = assertInstanceOf(ChannelUnavailableException.class, failures.get(1L));
+        assertTrue(refused.isDeferred());
+        assertTrue(refused.getRetryAfter().toSeconds() > 50);
+        assertFalse(failures.containsKey(2L));
+        assertEquals(1.0, meterRegistry.counter("notification.channel.rejected",
+                "channel", "email", "reason", "circuit_open").count());
+    }
+
+    @Test
+    void deliver_SlowChannelTimesOutWithoutHoldingUpTheOthers() {
+        CountDownLatch release = new CountDownLatch(1);
+        when(smsService.deliver(anyList(), any())).thenAnswer(invocation -> {
+            release.await();
+            return Map.of();
+        });
+        OutboxNotification email = notification(1L, OutboxNotification.Channel.EMAIL);
+        OutboxNotification sms = notification(2L, OutboxNotification.Channel.SMS);
+
+        long start = System.nanoTime();
+        Map<Long, Exception> failures = router.deliver(List.of(email, sms));
+        release.countDown();
+
+        assertTrue(System.nanoTime() - start < 5_000_000_000L);
+        // Never handed to the provider, so it is retried without using up an attempt
+        ChannelUnavailableException timedOut = assertInstanceOf(ChannelUnavailableException.class, failures.get(2L));
+        assertTrue(timedOut.isDeferred());
+        assertFalse(failures.containsKey(1L));
+        assertEquals(1.0, meterRegistry.counter("notification.channel.rejected",
+                "channel", "sms", "reason", "timeout").count());
+    }
+
+    @Test
+    void deliver_TimeoutCountsWhatWasHandedOverAsSentAndStopsTheRest() throws InterruptedException {
+        AtomicReference<Boolean> laterHandover = new AtomicReference<>();
+        CountDownLatch finished = new CountDownLatch(1);
+        when(smsService.deliver(anyList(), any())).thenAnswer(invocation -> {
+            Handover handover = invocation.getArgument(1);
+            handover.begin(1L);
+            try {
+                new CountDownLatch(1).await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                // Cut off by the router
+            }
+            laterHandover.set(handover.begin(2L));
+            finished.countDown();
+            return Map.of();
+        });
+
+        Map<Long, Exception> failures = router.deliver(List.of(notification(1L, OutboxNotification.Channel.SMS),
+                notification(2L, OutboxNotification.Channel.SMS)));
+
+        assertFalse(failures.containsKey(1L));
+        assertTrue(assertInstanceOf(ChannelUnavailableException.class, failures.get(2L)).isDeferred());
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertFalse(laterHandover.get());
+    }
+
+    @Test
+    void deliver_ThrottlingDoesNotCountAgainstTheTimeout() {
+        when(smsService.throttle(anyList())).thenAnswer(invocation -> {
+            Thread.sleep(1500);
+            return true;
+        });
+
+        Map<Long, Exception> failures = router.deliver(List.of(notification(1L, OutboxNotification.Channel.SMS)));
+
+        assertTrue(failures.isEmpty());
+        verify(smsService).deliver(anyList(), any());
+    }
+
+    @Test
+    void deliver_InterruptedThrottleSendsNothing() {
+        when(emailService.throttle(anyList())).thenReturn(false);
+
+        Map<Long, Exception> failures = router.deliver(List.of(notification(1L, OutboxNotification.Channel.EMAIL)));
+
+        assertTrue(assertInstanceOf(ChannelUnavailableException.class, failures.get(1L)).isDeferred());
+        verify(emailService, never()).deliver(anyList(), any());
+    }
+
+    @Test
+    void deliver_RejectedRecipientsDoNotOpenTheCircuit() {
+        when(emailService.deliver(anyList(), any())).thenReturn(Map.of(1L, new RuntimeException("550 No such user")));
+        OutboxNotification email = notification(1L, OutboxNotification.Channel.EMAIL);
+
+        router.deliver(List.of(email));
+        router.deliver(List.of(email));
+        router.deliver(List.of(email));
+
+        assertEquals(CircuitBreaker.State.CLOSED, router.circuitState(OutboxNotification.Channel.EMAIL));
+    }
+
+    @Test
+    void deliver_ConnectionFailuresOpenTheCircuit() {
+        when(emailService.deliver(anyList(), any())).thenReturn(Map.of(1L,
+                new ChannelUnavailableException("SMTP connection failed", new RuntimeException("Connection refused"))));
+        OutboxNotification email = notification(1L, OutboxNotification.Channel.EMAIL);
+
+        router.deliver(List.of(email));
+        router.deliver(List.of(email));
+
+        assertEquals(CircuitBreaker.State.OPEN, router.circuitState(OutboxNotification.Channel.EMAIL));
+    }
+
+    @Test
+    void queueInactivityWarning_DefaultsToEmailPlusGraceSms() {
+        when(preferenceRepository.findByUserIdIn(List.of(1L))).thenReturn(List.of());
+        when(smsService.isEnabled()).thenReturn(true);
+        User user = user();
+        NotificationPreference preference = router.resolvePreferences(List.of(1L)).forUser(1L);
+
+        router.queueInactivityWarning(user, InactivityMilestone.GRACE_PERIOD_WARNING, 182, "token", preference);
+
+        verify(emailService).queueInactivityWarningEmail(user, "grace period warning", 182, "token");
+        verify(smsService).queueGracePeriodWarning(user, 182, "token");
+        verify(webhookService, never()).queueInactivityWarning(any(), any(), any(), anyLong(), any());
+    }
+
+    @Test
+    void queueInactivityWarning_HonoursOptOutsAndWebhook() {
+        NotificationPreference stored = new NotificationPreference();
+        stored.setUserId(1L);
+        stored.setEmail(false);
+        stored.setWebhookUrl("https://hooks.example.com/lifevault");
+        when(preferenceRepository.findByUserIdIn(List.of(1L))).thenReturn(List.of(stored));
+        User user = user();
+
+        router.queueInactivityWarning(user, InactivityMilestone.FINAL_WEEK_WARNING, 175, "token",
+                router.resolvePreferences(List.of(1L)).forUser(1L));
+
+        verify(emailService, never()).queueInactivityWarningEmail(any(), any(), anyLong(), any());
+        verify(webhookService).queueInactivityWarning(user, "https://hooks.example.com/lifevault",
+                InactivityMilestone.FINAL_WEEK_WARNING, 175, OutboxNotification.Lane.FINAL_WEEK);
+    }
+
+    @Test
+    void queueInactivityWarning_FallsBackToEmailWhenNoChannelIsLeft() {
+        NotificationPreference preference = new NotificationPreference();
+        preference.setEmail(false);
+        preference.setSms(false);
+        User user = user();
+
+        router.queueInactivityWarning(user, InactivityMilestone.GRACE_PERIOD_WARNING, 182, "token", preference);
+
+        verify(emailService).queueInactivityWarningEmail(user, "grace period warning", 182, "token");
+        verify(smsService, never()).queueGracePeriodWarning(any(), anyLong(), any());
+    }
+
+    @Test
+    void queueVaultReveal_EmailsEveryContactAndSendsOneWebhookEvent() {
+        NotificationPreference preference = new NotificationPreference();
+        preference.setSms(false);
+        preference.setWebhookUrl("https://hooks.example.com/lifevault");
+        TrustedContact first = new TrustedContact();
+        first.setEmail("first@example.com");
+        TrustedContact second = new TrustedContact();
+        second.setEmail("second@example.com");
+        User user = user();
+
+        router.queueVaultReveal(user, List.of(first, second), preference);
+
+        verify(emailService).queueVaultRevealNotification(first, user);
+        verify(emailService).queueVaultRevealNotification(second, user);
+        verify(smsService, never()).queueVaultRevealNotification(any(), any());
+        verify(webhookService).queueVaultReveal(user, "https://hooks.example.com/lifevault", 2);
+    }
+}
@@ -0,0 +1,71 @@
+package com.lifevault.service;
+
+import com.lifevault.entity.User.InactivityMilestone;
+import com.lifevault.service.NotificationTemplates.RenderedEmail;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NotificationTemplatesTest {
+
+    private NotificationTemplates templates;
+
+    @BeforeEach
+    void setUp() {
+        templates = new NotificationTemplates();
+        templates.compile();
+    }
+
+    @Test
+    void compile_RejectsUnknownVariable() {
+        assertThrows(IllegalArgumentException.class,
+                () -> NotificationTemplate.compile("Hello {{nickname}}", false, "firstName"));
+    }
+
+    @Test
+    void renderTo_SubstitutesVariablesByPosition() {
+        NotificationTemplate template = NotificationTemplate.compile("{{a}}-{{b}}-{{a}}", false, "a", "b");
+        StringBuilder out = new StringBuilder();
+
+        template.renderTo(out, "x", 42L);
+
+        assertEquals("x-42-x", out.toString());
+    }
+
+    @Test
+    void renderWarning_FoldsMilestoneTextIntoBothParts() {
+        RenderedEmail email = templates.renderWarning(InactivityMilestone.FINAL_WEEK_WARNING,
+                "Test", 175L, 5L, 19L, "http://app/api/activity/verify/t", "http://app", 180, 14);
+
+        assertTrue(email.getText().startsWith("Hello Test,\n\n[URGENT: Final Week Notice]"));
+        assertTrue(email.getText().contains("Only 5 days left!"));
+        assertTrue(email.getText().endsWith("Best regards,\nLife Vault Team"));
+        assertTrue(email.getHtml().contains("Only 5 days left!"));
+        assertTrue(email.getHtml().contains("href=\"http://app/api/activity/verify/t\""));
+    }
+
+    @Test
+    void render_EscapesValuesInHtmlOnly() {
+        RenderedEmail email = templates.render(NotificationTemplates.Kind.VAULT_REVEAL,
+                "<b>Jo</b>", "Test", "User", "http://app/vault-access/t");
+
+        assertTrue(email.getText().contains("Hello <b>Jo</b>,"));
+        assertTrue(email.getHtml().contains("Hello &lt;b&gt;Jo&lt;/b&gt;,"));
+    }
+
+    @Test
+    void renderVaultRevealDigest_RepeatsTheVaultSectionPerOwner() {
+        RenderedEmail email = templates.renderVaultRevealDigest("Sam", List.of(
+                new Object[]{"Anna", "Smith", "http://app/vault-access/a"},
+                new Object[]{"Ben", "<Smith>", "http://app/vault-access/b"}));
+
+        assertTrue(email.getText().startsWith("Hello Sam,\n\n2 people who named you"));
+        assertTrue(email.getText().contains("- Anna Smith: http://app/vault-access/a\n- Ben <Smith>: http://app/vault-access/b\n\n"));
+        assertTrue(email.getText().endsWith("Life Vault Team"));
+        assertTrue(email.getHtml().contains("Ben &lt;Smith&gt;: <a href=\"http://app/vault-access/b\""));
+        assertFalse(email.getHtml().contains("{{"));
+    }
+}
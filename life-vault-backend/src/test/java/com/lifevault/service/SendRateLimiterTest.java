@@ -0,0 +1,83 @@
+package com.lifevault.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SendRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private SendRateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        rateLimiter = new SendRateLimiter();
+        ReflectionTestUtils.setField(rateLimiter, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(rateLimiter, "messagesPerSecond", 10.0);
+        ReflectionTestUtils.setField(rateLimiter, "burst", 20);
+        ReflectionTestUtils.setField(rateLimiter, "nodes", 1);
+        rateLimiter.init();
+        ReflectionTestUtils.setField(rateLimiter, "refilledAt", 0L);
+    }
+
+    @Test
+    void reserve_BurstIsFree() {
+        assertEquals(0, rateLimiter.reserve(20, 0));
+    }
+
+    @Test
+    void reserve_OverdrawnBucketWaitsForRefill() {
+        rateLimiter.reserve(20, 0);
+
+        // 5 more at 10/s: half a second
+        assertEquals(SECOND / 2, rateLimiter.reserve(5, 0));
+        // The next caller queues behind that debt
+        assertEquals(SECOND, rateLimiter.reserve(5, 0));
+    }
+
+    @Test
+    void reserve_RefillIsCappedAtBurst() {
+        rateLimiter.reserve(20, 0);
+
+        assertEquals(0, rateLimiter.reserve(20, 60 * SECOND));
+        assertTrue(rateLimiter.reserve(1, 60 * SECOND) > 0);
+    }
+
+    @Test
+    void reserve_RateAndBurstAreSplitAcrossNodes() {
+        ReflectionTestUtils.setField(rateLimiter, "nodes", 2);
+        rateLimiter.init();
+        ReflectionTestUtils.setField(rateLimiter, "refilledAt", 0L);
+
+        // Half of the burst, then half of the rate: 5 more at 5/s take a second
+        assertEquals(0, rateLimiter.reserve(10, 0));
+        assertEquals(SECOND, rateLimiter.reserve(5, 0));
+    }
+
+    @Test
+    void acquire_ReportsAnInterruptedWait() {
+        rateLimiter.init();
+        rateLimiter.acquire(20);
+
+        Thread.currentThread().interrupt();
+        try {
+            assertFalse(rateLimiter.acquire(10));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    void init_RejectsZeroNodes() {
+        ReflectionTestUtils.setField(rateLimiter, "nodes", 0);
+
+        assertThrows(IllegalStateException.class, rateLimiter::init);
+    }
+}
@@ -0,0 +1,217 @@
+package com.lifevault.service;
+
+import com.lifevault.entity.OutboxNotification;
+import com.lifevault.entity.TrustedContact;
+import com.lifevault.entity.User;
+import com.lifevault.repository.OutboxNotificationRepository;
+import com.lifevault.util.EncryptionUtil;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sns.SnsAsyncClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs the real async SNS client against a stub HTTP server standing in for the SNS endpoint.
+ */
+@ExtendWith(MockitoExtension.class)
+class SmsServiceTest {
+
+    private static final String REJECTED_NUMBER = "+15550000000";
+
+    @Mock
+    private OutboxNotificationRepository outboxRepository;
+
+    @InjectMocks
+    private SmsService smsService;
+
+    private HttpServer snsStub;
+    private SnsAsyncClient snsClient;
+    private final List<String> publishedNumbers = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> publishedMessages = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        snsStub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        snsStub.createContext("/", this::publish);
+        snsStub.setExecutor(Executors.newFixedThreadPool(8));
+        snsStub.start();
+
+        snsClient = SnsAsyncClient.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test")))
+                .endpointOverride(URI.create("http://localhost:" + snsStub.getAddress().getPort()))
+                .build();
+
+        InactivityPolicy inactivityPolicy = new InactivityPolicy();
+        ReflectionTestUtils.setField(inactivityPolicy, "gracePeriodDays", 14);
+        ReflectionTestUtils.setField(smsService, "snsClient", snsClient);
+        ReflectionTestUtils.setField(smsService, "inactivityPolicy", inactivityPolicy);
+        ReflectionTestUtils.setField(smsService, "appUrl", "http://localhost:3000");
+        EncryptionUtil encryptionUtil = new EncryptionUtil();
+        ReflectionTestUtils.setField(encryptionUtil, "encryptionKey", "test-encryption-key");
+        VaultLinks vaultLinks = new VaultLinks();
+        ReflectionTestUtils.setField(vaultLinks, "encryptionUtil", encryptionUtil);
+        ReflectionTestUtils.setField(vaultLinks, "appUrl", "http://localhost:3000");
+        ReflectionTestUtils.setField(smsService, "vaultLinks", vaultLinks);
+        ReflectionTestUtils.setField(smsService, "maxInFlight", 2);
+        smsService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        snsClient.close();
+        snsStub.stop(0);
+    }
+
+    // Answers SNS Publish (query protocol) like the real service, slowly enough for requests to overlap
+    private void publish(HttpExchange exchange) throws IOException {
+        int concurrent = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(concurrent, Math::max);
+        try {
+            String form = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            String phoneNumber = "";
+            for (String pair : form.split("&")) {
+                if (pair.startsWith("PhoneNumber=")) {
+                    phoneNumber = URLDecoder.decode(pair.substring("PhoneNumber=".length()), StandardCharsets.UTF_8);
+                } else if (pair.startsWith("Message=")) {
+                    publishedMessages.add(URLDecoder.decode(pair.substring("Message=".length()), StandardCharsets.UTF_8));
+                }
+            }
+            publishedNumbers.add(phoneNumber);
+            Thread.sleep(50);
+
+            boolean rejected = REJECTED_NUMBER.equals(phoneNumber);
+            String body = rejected
+                    ? "<ErrorResponse xmlns=\"http://sns.amazonaws.com/doc/2010-03-31/\"><Error><Type>Sender</Type>" +
+                      "<Code>InvalidParameter</Code><Message>Invalid parameter: PhoneNumber</Message></Error>" +
+                      "<RequestId>req</RequestId></ErrorResponse>"
+                    : "<PublishResponse xmlns=\"http://sns.amazonaws.com/doc/2010-03-31/\"><PublishResult>" +
+                      "<MessageId>msg</MessageId></PublishResult><ResponseMetadata><RequestId>req</RequestId>" +
+                      "</ResponseMetadata></PublishResponse>";
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/xml");
+            exchange.sendResponseHeaders(rejected ? 400 : 200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private OutboxNotification sms(long id, String phoneNumber) {
+        OutboxNotification notification = new OutboxNotification();
+        notification.setId(id);
+        notification.setChannel(OutboxNotification.Channel.SMS);
+        notification.setRecipient(phoneNumber);
+        notification.setBody("Life Vault test");
+        return notification;
+    }
+
+    @Test
+    void deliver_PublishesEveryMessageWithinTheInFlightCap() {
+        List<OutboxNotification> batch = new ArrayList<>();
+        for (long id = 1; id <= 6; id++) {
+            batch.add(sms(id, "+1555000000" + id));
+        }
+
+        Map<Long, Exception> failures = smsService.deliver(batch);
+
+        assertTrue(failures.isEmpty());
+        assertEquals(6, publishedNumbers.size());
+        assertTrue(publishedNumbers.contains("+15550000006"));
+        assertTrue(maxInFlight.get() <= 2);
+    }
+
+    @Test
+    void deliver_ReportsRejectedNumbersByOutboxId() {
+        Map<Long, Exception> failures = smsService.deliver(List.of(sms(1L, "+15550000001"), sms(2L, REJECTED_NUMBER)));
+
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(2L).getMessage().contains("Invalid parameter"));
+    }
+
+    @Test
+    void queueGracePeriodWarning_QueuesSmsOnTheGraceLane() {
+        User user = new User();
+        user.setId(1L);
+        user.setPhoneNumber("+15551234567");
+        user.setInactivityPeriodDays(180);
+
+        smsService.queueGracePeriodWarning(user, 182, "token-grace");
+
+        ArgumentCaptor<OutboxNotification> captor = ArgumentCaptor.forClass(OutboxNotification.class);
+        verify(outboxRepository).save(captor.capture());
+        OutboxNotification queued = captor.getValue();
+        assertEquals(OutboxNotification.Channel.SMS, queued.getChannel());
+        assertEquals(OutboxNotification.Lane.GRACE, queued.getLane());
+        assertEquals("+15551234567", queued.getRecipient());
+        assertTrue(queued.getBody().contains("notified in 12 days"));
+        assertTrue(queued.getBody().contains("/api/activity/verify/token-grace"));
+    }
+
+    @Test
+    void queueVaultRevealNotification_StoresTheTokenEncryptedAndSendsTheLink() {
+        TrustedContact contact = new TrustedContact();
+        contact.setPhoneNumber("+15551234567");
+        contact.setVerificationToken("token-reveal");
+        User user = new User();
+        user.setId(1L);
+        user.setFirstName("Test");
+        user.setLastName("User");
+
+        smsService.queueVaultRevealNotification(contact, user);
+
+        ArgumentCaptor<OutboxNotification> captor = ArgumentCaptor.forClass(OutboxNotification.class);
+        verify(outboxRepository).save(captor.capture());
+        OutboxNotification queued = captor.getValue();
+        assertFalse(queued.getBody().contains("token-reveal"));
+        assertFalse(queued.getLinkToken().contains("token-reveal"));
+
+        queued.setId(1L);
+        assertTrue(smsService.deliver(List.of(queued)).isEmpty());
+        assertEquals(1, publishedMessages.size());
+        assertTrue(publishedMessages.get(0).endsWith("http://localhost:3000/vault-access/token-reveal"));
+    }
+
+    @Test
+    void queueVaultRevealNotification_SkipsContactsWithoutPhone() {
+        TrustedContact contact = new TrustedContact();
+        contact.setVerificationToken("token");
+
+        smsService.queueVaultRevealNotification(contact, new User());
+
+        verifyNoInteractions(outboxRepository);
+    }
+}
@@ -8,9 +8,13 @@ import com.lifevault.repository.UserRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
@@ -36,6 +40,9 @@ class TrustedContactServiceTest {
     @Mock
     private ActivityLogService activityLogService;
 
+    @Spy
+    private ContactTokenService contactTokenService = new ContactTokenService();
+
     @InjectMocks
     private TrustedContactService trustedContactService;
 
@@ -44,6 +51,8 @@ class TrustedContactServiceTest {
 
     @BeforeEach
     void setUp() {
+        ReflectionTestUtils.setField(contactTokenService, "validityDays", 30);
+
         testUser = new User();
         testUser.setId(1L);
         testUser.setEmail("test@example.com");
@@ -62,10 +71,9 @@ class TrustedContactServiceTest {
 
     @Test
     void getUserContacts_Success() {
-        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
         when(trustedContactRepository.findByUserId(1L)).thenReturn(Arrays.asList(testContact));
 
-        List<TrustedContactDto> result = trustedContactService.getUserContacts("test@example.com");
+        List<TrustedContactDto> result = trustedContactService.getUserContacts(1L);
 
         assertNotNull(result);
         assertEquals(1, result.size());
@@ -73,6 +81,7 @@ class TrustedContactServiceTest {
         assertEquals("john@example.com", result.get(0).getEmail());
         assertTrue(result.get(0).getIsVerified());
         verify(trustedContactRepository).findByUserId(1L);
+        verifyNoInteractions(userRepository);
     }
 
     @Test
@@ -84,8 +93,9 @@ class TrustedContactServiceTest {
         contactDto.setAddress("456 Oak Ave, Town, State 67890");
         contactDto.setRelationship("Sister");
 
-        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
         when(trustedContactRepository.existsByUserIdAndEmail(1L, "jane@example.com")).thenReturn(false);
+        when(userRepository.existsById(1L)).thenReturn(true);
+        when(userRepository.getReferenceById(1L)).thenReturn(testUser);
         when(trustedContactRepository.save(any(TrustedContact.class))).thenAnswer(invocation -> {
             TrustedContact saved = invocation.getArgument(0);
             saved.setId(2L);
@@ -93,7 +103,7 @@ class TrustedContactServiceTest {
             return saved;
         });
 
-        TrustedContactDto result = trustedContactService.addContact("test@example.com", contactDto);
+        TrustedContactDto result = trustedContactService.addContact(1L, contactDto);
 
         assertNotNull(result);
         assertEquals("Jane Smith", result.getName());
@@ -102,21 +112,33 @@ class TrustedContactServiceTest {
         assertEquals("Sister", result.getRelationship());
         assertTrue(result.getIsVerified()); // Should be verified immediately
         assertNotNull(result.getVerifiedAt());
-        verify(trustedContactRepository).save(any(TrustedContact.class));
+        ArgumentCaptor<TrustedContact> saved = ArgumentCaptor.forClass(TrustedContact.class);
+        verify(trustedContactRepository).save(saved.capture());
+        // Only the hash of the issued token is persisted
+        assertEquals(ContactTokenService.hash(saved.getValue().getVerificationToken()),
+                saved.getValue().getVerificationTokenHash());
+        assertEquals(64, saved.getValue().getVerificationTokenHash().length());
         verify(activityLogService).logActivity(eq(testUser), eq("CONTACT_ADDED"), anyString());
     }
 
+    @Test
+    void addContact_UserNoLongerExists() {
+        when(userRepository.existsById(1L)).thenReturn(false);
+
+        assertThrows(UsernameNotFoundException.class, () -> trustedContactService.addContact(1L, new TrustedContactDto()));
+        verify(trustedContactRepository, never()).save(any());
+    }
+
     @Test
     void addContact_DuplicateEmail() {
         TrustedContactDto contactDto = new TrustedContactDto();
         contactDto.setName("Duplicate Contact");
         contactDto.setEmail("john@example.com");
 
-        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
         when(trustedContactRepository.existsByUserIdAndEmail(1L, "john@example.com")).thenReturn(true);
 
         assertThrows(RuntimeException.class, () -> {
-            trustedContactService.addContact("test@example.com", contactDto);
+            trustedContactService.addContact(1L, contactDto);
         });
 
         verify(trustedContactRepository, never()).save(any());
@@ -124,10 +146,9 @@ class TrustedContactServiceTest {
 
     @Test
     void removeContact_Success() {
-        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
         when(trustedContactRepository.findByIdAndUserId(1L, 1L)).thenReturn(Optional.of(testContact));
 
-        trustedContactService.removeContact("test@example.com", 1L);
+        trustedContactService.removeContact(1L, 1L);
 
         verify(trustedContactRepository).delete(testContact);
         verify(activityLogService).logActivity(eq(testUser), eq("CONTACT_REMOVED"), anyString());
@@ -135,11 +156,10 @@ class TrustedContactServiceTest {
 
     @Test
     void removeContact_NotFound() {
-        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
         when(trustedContactRepository.findByIdAndUserId(999L, 1L)).thenReturn(Optional.empty());
 
         assertThrows(RuntimeException.class, () -> {
-            trustedContactService.removeContact("test@example.com", 999L);
+            trustedContactService.removeContact(1L, 999L);
         });
 
         verify(trustedContactRepository, never()).delete(any());
@@ -147,11 +167,11 @@ class TrustedContactServiceTest {
 
     @Test
     void verifyContact_Success() {
-        String token = "verification-token";
         testContact.setIsVerified(false);
-        testContact.setVerificationToken(token);
+        String token = contactTokenService.issue(testContact, LocalDateTime.now());
 
-        when(trustedContactRepository.findByVerificationToken(token)).thenReturn(Optional.of(testContact));
+        when(trustedContactRepository.findByVerificationTokenHash(ContactTokenService.hash(token)))
+                .thenReturn(Optional.of(testContact));
         when(trustedContactRepository.save(any(TrustedContact.class))).thenReturn(testContact);
 
         boolean result = trustedContactService.verifyContact(token);
@@ -165,11 +185,11 @@ class TrustedContactServiceTest {
 
     @Test
     void verifyContact_AlreadyVerified() {
-        String token = "verification-token";
         testContact.setIsVerified(true);
-        testContact.setVerificationToken(token);
+        String token = contactTokenService.issue(testContact, LocalDateTime.now());
 
-        when(trustedContactRepository.findByVerificationToken(token)).thenReturn(Optional.of(testContact));
+        when(trustedContactRepository.findByVerificationTokenHash(ContactTokenService.hash(token)))
+                .thenReturn(Optional.of(testContact));
 
         boolean result = trustedContactService.verifyContact(token);
 
@@ -178,29 +198,33 @@ class TrustedContactServiceTest {
     }
 
     @Test
-    void verifyContact_InvalidToken() {
-        when(trustedContactRepository.findByVerificationToken("invalid-token")).thenReturn(Optional.empty());
+    void verifyContact_ExpiredToken() {
+        testContact.setIsVerified(false);
+        String token = contactTokenService.issue(testContact, LocalDateTime.now().minusDays(31));
 
-        assertThrows(RuntimeException.class, () -> {
-            trustedContactService.verifyContact("invalid-token");
-        });
+        when(trustedContactRepository.findByVerificationTokenHash(ContactTokenService.hash(token)))
+                .thenReturn(Optional.of(testContact));
+
+        assertThrows(RuntimeException.class, () -> trustedContactService.verifyContact(token));
+        assertFalse(testContact.getIsVerified());
+        verify(trustedContactRepository, never()).save(any());
     }
 
     @Test
-    void getUserContacts_UserNotFound() {
-        when(userRepository.findByEmail("notfound@example.com")).thenReturn(Optional.empty());
+    void verifyContact_InvalidToken() {
+        when(trustedContactRepository.findByVerificationTokenHash(ContactTokenService.hash("invalid-token")))
+                .thenReturn(Optional.empty());
 
         assertThrows(RuntimeException.class, () -> {
-            trustedContactService.getUserContacts("notfound@example.com");
+            trustedContactService.verifyContact("invalid-token");
         });
     }
 
     @Test
     void getUserContacts_EmptyList() {
-        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
         when(trustedContactRepository.findByUserId(1L)).thenReturn(Arrays.asList());
 
-        List<TrustedContactDto> result = trustedContactService.getUserContacts("test@example.com");
+        List<TrustedContactDto> result = trustedContactService.getUserContacts(1L);
 
         assertNotNull(result);
         assertTrue(result.isEmpty());
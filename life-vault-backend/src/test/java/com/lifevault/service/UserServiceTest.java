@@ -1,25 +1,34 @@
 package com.lifevault.service;
 
 import com.lifevault.dto.ChangePasswordRequest;
+import com.lifevault.dto.NotificationPreferencesRequest;
 import com.lifevault.dto.UpdateProfileRequest;
 import com.lifevault.dto.UserSettingsRequest;
+import com.lifevault.entity.NotificationPreference;
 import com.lifevault.entity.User;
+import com.lifevault.repository.NotificationPreferenceRepository;
 import com.lifevault.repository.UserRepository;
+import com.lifevault.security.PrincipalCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -34,6 +43,21 @@ class UserServiceTest {
     @Mock
     private ActivityLogService activityLogService;
 
+    @Mock
+    private InactivityPolicy inactivityPolicy;
+
+    @Mock
+    private PrincipalCache principalCache;
+
+    @Mock
+    private NotificationPreferenceRepository notificationPreferenceRepository;
+
+    @Mock
+    private WebhookService webhookService;
+
+    @Spy
+    private ActivityTokenService activityTokenService = new ActivityTokenService();
+
     @InjectMocks
     private UserService userService;
 
@@ -41,6 +65,10 @@ class UserServiceTest {
 
     @BeforeEach
     void setUp() {
+        ReflectionTestUtils.setField(activityTokenService, "secret", "test-activity-token-secret");
+        ReflectionTestUtils.setField(activityTokenService, "validityDays", 7);
+        activityTokenService.init();
+
         testUser = new User();
         testUser.setId(1L);
         testUser.setEmail("test@example.com");
@@ -72,6 +100,13 @@ class UserServiceTest {
         });
     }
 
+    @Test
+    void getUser_NotFound() {
+        when(userRepository.findById(99L)).thenReturn(Optional.empty());
+
+        assertThrows(UsernameNotFoundException.class, () -> userService.getUser(99L));
+    }
+
     @Test
     void updateProfile_Success() {
         UpdateProfileRequest request = new UpdateProfileRequest();
@@ -79,15 +114,16 @@ class UserServiceTest {
         request.setLastName("Name");
         request.setPhoneNumber("+1234567890");
 
-        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
+        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
         when(userRepository.save(any(User.class))).thenReturn(testUser);
 
-        userService.updateProfile("test@example.com", request);
+        userService.updateProfile(1L, request);
 
         assertEquals("Updated", testUser.getFirstName());
         assertEquals("Name", testUser.getLastName());
         assertEquals("+1234567890", testUser.getPhoneNumber());
         verify(userRepository).save(testUser);
+        verify(principalCache).invalidate("test@example.com");
         verify(activityLogService).logActivity(testUser, "SETTINGS_UPDATED", "Profile information updated");
     }
 
@@ -97,15 +133,16 @@ class UserServiceTest {
         request.setCurrentPassword("oldPassword");
         request.setNewPassword("newPassword123");
 
-        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
+        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
         when(passwordEncoder.matches("oldPassword", "encodedPassword")).thenReturn(true);
         when(passwordEncoder.encode("newPassword123")).thenReturn("newEncodedPassword");
         when(userRepository.save(any(User.class))).thenReturn(testUser);
 
-        userService.changePassword("test@example.com", request);
+        userService.changePassword(1L, request);
 
         verify(passwordEncoder).encode("newPassword123");
         verify(userRepository).save(testUser);
+        verify(principalCache).invalidate("test@example.com");
         verify(activityLogService).logActivity(testUser, "SETTINGS_UPDATED", "Password changed");
     }
 
@@ -115,15 +152,16 @@ class UserServiceTest {
         request.setCurrentPassword("wrongPassword");
         request.setNewPassword("newPassword123");
 
-        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
+        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
         when(passwordEncoder.matches("wrongPassword", "encodedPassword")).thenReturn(false);
 
         assertThrows(RuntimeException.class, () -> {
-            userService.changePassword("test@example.com", request);
+            userService.changePassword(1L, request);
         });
 
         verify(passwordEncoder, never()).encode(anyString());
         verify(userRepository, never()).save(any());
+        verifyNoInteractions(principalCache);
     }
 
     @Test
@@ -131,12 +169,13 @@ class UserServiceTest {
         UserSettingsRequest request = new UserSettingsRequest();
         request.setInactivityPeriodDays(365);
 
-        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
+        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
         when(userRepository.save(any(User.class))).thenReturn(testUser);
 
-        userService.updateSettings("test@example.com", request);
+        userService.updateSettings(1L, request);
 
         assertEquals(365, testUser.getInactivityPeriodDays());
+        verify(inactivityPolicy).schedule(eq(testUser), any(LocalDateTime.class));
         verify(userRepository).save(testUser);
         verify(activityLogService).logActivity(testUser, "SETTINGS_UPDATED", 
                 "Inactivity period updated to 365 days");
@@ -144,57 +183,103 @@ class UserServiceTest {
 
     @Test
     void generateActivityToken_Success() {
-        when(userRepository.save(any(User.class))).thenReturn(testUser);
-
         String token = userService.generateActivityToken(testUser);
 
         assertNotNull(token);
-        assertNotNull(testUser.getActivityVerificationToken());
-        assertNotNull(testUser.getTokenExpiryDate());
-        assertTrue(testUser.getTokenExpiryDate().isAfter(LocalDateTime.now()));
-        verify(userRepository).save(testUser);
+        assertTrue(token.startsWith("1.1."));
+        assertEquals(1, testUser.getActivityTokenVersion());
+        // Persisted by the caller's transaction, not by a separate save
+        verify(userRepository, never()).save(any());
     }
 
     @Test
     void verifyUserActivity_ValidToken() {
-        String token = "valid-token";
-        testUser.setActivityVerificationToken(token);
-        testUser.setTokenExpiryDate(LocalDateTime.now().plusDays(1));
+        String token = userService.generateActivityToken(testUser);
 
-        when(userRepository.findAll()).thenReturn(java.util.Arrays.asList(testUser));
+        when(userRepository.consumeActivityToken(1L, 1)).thenReturn(1);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(testUser));
         when(userRepository.save(any(User.class))).thenReturn(testUser);
 
         boolean result = userService.verifyUserActivity(token);
 
         assertTrue(result);
-        assertNull(testUser.getActivityVerificationToken());
-        assertNull(testUser.getTokenExpiryDate());
+        verify(inactivityPolicy).schedule(eq(testUser), any(LocalDateTime.class));
         verify(userRepository).save(testUser);
+        verify(userRepository, never()).findAll();
         verify(activityLogService).logActivity(testUser, "INACTIVITY_CHECK", 
                 "User confirmed activity via email link");
     }
 
     @Test
-    void verifyUserActivity_ExpiredToken() {
-        String token = "expired-token";
-        testUser.setActivityVerificationToken(token);
-        testUser.setTokenExpiryDate(LocalDateTime.now().minusDays(1));
+    void verifyUserActivity_UsedOrSupersededToken() {
+        String token = userService.generateActivityToken(testUser);
 
-        when(userRepository.findAll()).thenReturn(java.util.Arrays.asList(testUser));
+        // Already consumed, or a newer token has been issued since
+        when(userRepository.consumeActivityToken(1L, 1)).thenReturn(0);
 
         boolean result = userService.verifyUserActivity(token);
 
         assertFalse(result);
+        verify(userRepository, never()).findById(any());
         verify(userRepository, never()).save(any());
     }
 
     @Test
-    void verifyUserActivity_InvalidToken() {
-        when(userRepository.findAll()).thenReturn(java.util.Arrays.asList(testUser));
+    void verifyUserActivity_ExpiredToken() {
+        String token = activityTokenService.issue(testUser, Instant.now().minus(Duration.ofDays(8)));
 
+        boolean result = userService.verifyUserActivity(token);
+
+        assertFalse(result);
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void verifyUserActivity_InvalidToken() {
         boolean result = userService.verifyUserActivity("invalid-token");
 
         assertFalse(result);
-        verify(userRepository, never()).save(any());
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void updateNotificationPreferences_NewWebhookIsCheckedAndGetsASecret() {
+        NotificationPreference preference = new NotificationPreference();
+        preference.setUserId(1L);
+        when(notificationPreferenceRepository.findByUserId(1L)).thenReturn(Optional.of(preference));
+        when(webhookService.newSigningSecret()).thenReturn("encrypted-secret", "rotated-secret");
+
+        userService.updateNotificationPreferences(1L, preferences("https://hooks.example.com/a"));
+        assertEquals("encrypted-secret", preference.getWebhookSecret());
+        verify(webhookService).checkReceiver("https://hooks.example.com/a");
+
+        // Same URL keeps its secret; a new one rotates it
+        userService.updateNotificationPreferences(1L, preferences("https://hooks.example.com/a"));
+        assertEquals("encrypted-secret", preference.getWebhookSecret());
+        userService.updateNotificationPreferences(1L, preferences("https://hooks.example.com/b"));
+        assertEquals("rotated-secret", preference.getWebhookSecret());
+
+        userService.updateNotificationPreferences(1L, preferences(""));
+        assertNull(preference.getWebhookUrl());
+        assertNull(preference.getWebhookSecret());
+    }
+
+    @Test
+    void updateNotificationPreferences_RejectedReceiverIsNotSaved() {
+        when(notificationPreferenceRepository.findByUserId(1L)).thenReturn(Optional.empty());
+        when(webhookService.checkReceiver("https://internal.example.com/"))
+                .thenThrow(new RuntimeException("Webhook host must not resolve to an internal address"));
+
+        assertThrows(RuntimeException.class, () ->
+                userService.updateNotificationPreferences(1L, preferences("https://internal.example.com/")));
+        verify(notificationPreferenceRepository, never()).save(any());
+    }
+
+    private NotificationPreferencesRequest preferences(String webhookUrl) {
+        NotificationPreferencesRequest request = new NotificationPreferencesRequest();
+        request.setEmail(true);
+        request.setSms(false);
+        request.setWebhookUrl(webhookUrl);
+        return request;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,224 @@
+package com.lifevault.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lifevault.entity.NotificationPreference;
+import com.lifevault.entity.OutboxNotification;
+import com.lifevault.entity.User;
+import com.lifevault.entity.User.InactivityMilestone;
+import com.lifevault.repository.NotificationPreferenceRepository;
+import com.lifevault.repository.OutboxNotificationRepository;
+import com.lifevault.util.EncryptionUtil;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WebhookServiceTest {
+
+    @Mock
+    private OutboxNotificationRepository outboxRepository;
+
+    @Mock
+    private NotificationPreferenceRepository notificationPreferenceRepository;
+
+    @Mock
+    private EncryptionUtil encryptionUtil;
+
+    @InjectMocks
+    private WebhookService webhookService;
+
+    private HttpServer receiver;
+    private String baseUrl;
+    private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+    private final List<Headers> receivedHeaders = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() throws IOException {
+        receiver = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        receiver.createContext("/ok", exchange -> {
+            received.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            receivedHeaders.add(exchange.getRequestHeaders());
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        receiver.createContext("/broken", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        receiver.createContext("/moved", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Location", "/ok");
+            exchange.sendResponseHeaders(307, -1);
+            exchange.close();
+        });
+        receiver.start();
+        baseUrl = "http://localhost:" + receiver.getAddress().getPort();
+
+        ReflectionTestUtils.setField(webhookService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(webhookService, "connectTimeoutSeconds", 2);
+        ReflectionTestUtils.setField(webhookService, "requestTimeoutSeconds", 2);
+        ReflectionTestUtils.setField(webhookService, "maxInFlight", 4);
+        // The receiver below listens on localhost over plain http
+        ReflectionTestUtils.setField(webhookService, "allowLocalReceivers", true);
+        webhookService.init();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        receiver.stop(0);
+        webhookService.stop();
+    }
+
+    private OutboxNotification event(long id, String url) {
+        OutboxNotification notification = new OutboxNotification();
+        notification.setId(id);
+        notification.setUserId(7L);
+        notification.setChannel(OutboxNotification.Channel.WEBHOOK);
+        notification.setRecipient(url);
+        notification.setBody("{\"event\":\"VAULT_REVEAL\"}");
+        return notification;
+    }
+
+    private void givenSigningSecret(String secret) {
+        NotificationPreference preference = new NotificationPreference();
+        preference.setUserId(7L);
+        preference.setWebhookSecret("encrypted");
+        when(notificationPreferenceRepository.findByUserIdIn(any())).thenReturn(List.of(preference));
+        when(encryptionUtil.decrypt("encrypted")).thenReturn(secret);
+    }
+
+    @Test
+    void deliver_PostsEventsAndReportsNon2xxResponses() {
+        givenSigningSecret("user-secret");
+
+        Map<Long, Exception> failures = webhookService.deliver(List.of(event(1L, baseUrl + "/ok"),
+                event(2L, baseUrl + "/broken")));
+
+        assertEquals(List.of("{\"event\":\"VAULT_REVEAL\"}"), received);
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(2L).getMessage().contains("HTTP 500"));
+    }
+
+    @Test
+    void deliver_SignsTimestampAndBodyWithTheUsersSecret() {
+        givenSigningSecret("user-secret");
+
+        assertTrue(webhookService.deliver(List.of(event(1L, baseUrl + "/ok"))).isEmpty());
+
+        Headers headers = receivedHeaders.get(0);
+        long timestamp = Long.parseLong(headers.getFirst("X-LifeVault-Timestamp"));
+        assertTrue(Math.abs(Instant.now().getEpochSecond() - timestamp) < 60);
+        assertEquals(WebhookService.sign("user-secret", timestamp, "{\"event\":\"VAULT_REVEAL\"}"),
+                headers.getFirst("X-LifeVault-Signature"));
+        assertNotEquals(WebhookService.sign("other-secret", timestamp, "{\"event\":\"VAULT_REVEAL\"}"),
+                headers.getFirst("X-LifeVault-Signature"));
+    }
+
+    @Test
+    void deliver_DoesNotFollowRedirects() {
+        givenSigningSecret("user-secret");
+
+        Map<Long, Exception> failures = webhookService.deliver(List.of(event(1L, baseUrl + "/moved")));
+
+        assertTrue(failures.get(1L).getMessage().contains("HTTP 307"));
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    void deliver_WithoutSigningSecretFailsUnsent() {
+        when(notificationPreferenceRepository.findByUserIdIn(any())).thenReturn(List.of());
+
+        Map<Long, Exception> failures = webhookService.deliver(List.of(event(1L, baseUrl + "/ok")));
+
+        assertTrue(failures.containsKey(1L));
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    void deliver_RechecksTheReceiverBeforeSending() {
+        ReflectionTestUtils.setField(webhookService, "allowLocalReceivers", false);
+        givenSigningSecret("user-secret");
+
+        Map<Long, Exception> failures = webhookService.deliver(List.of(event(1L, "https://127.0.0.1:"
+                + receiver.getAddress().getPort() + "/ok")));
+
+        assertTrue(failures.get(1L).getMessage().contains("internal address"));
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    void deliver_ChecksTheAddressesItConnectsTo() throws Exception {
+        ReflectionTestUtils.setField(webhookService, "allowLocalReceivers", false);
+        givenSigningSecret("user-secret");
+        // The name passes the check as a public address, then resolves to loopback when connecting
+        WebhookService rebound = spy(webhookService);
+        doReturn(new InetAddress[] {InetAddress.getByName("93.184.216.34")})
+                .doCallRealMethod()
+                .when(rebound).resolveReceiver("localhost");
+        rebound.init();
+
+        Map<Long, Exception> failures = rebound.deliver(List.of(event(1L, "https://localhost:"
+                + receiver.getAddress().getPort() + "/ok")));
+
+        assertTrue(failures.get(1L).getMessage().contains("internal address"));
+        assertTrue(received.isEmpty());
+        verify(rebound, times(2)).resolveReceiver("localhost");
+        rebound.stop();
+    }
+
+    @Test
+    void checkReceiver_RejectsInternalAddressesAndPlainHttp() {
+        ReflectionTestUtils.setField(webhookService, "allowLocalReceivers", false);
+
+        for (String url : List.of("https://127.0.0.1/hook", "https://localhost/hook", "https://10.1.2.3/hook",
+                "https://192.168.0.10/hook", "https://172.16.5.4/hook", "https://169.254.169.254/latest/meta-data",
+                "https://[::1]/hook", "https://[fd00:ec2::254]/hook", "https://0.0.0.0/hook",
+                "https://100.64.0.1/hook", "https://198.18.0.1/hook", "https://198.19.255.255/hook",
+                "https://240.0.0.1/hook", "https://255.255.255.255/hook", "https://[64:ff9b::a00:1]/hook")) {
+            assertThrows(RuntimeException.class, () -> webhookService.checkReceiver(url), url);
+        }
+        assertThrows(RuntimeException.class, () -> webhookService.checkReceiver("http://93.184.216.34/hook"));
+        assertThrows(RuntimeException.class, () -> webhookService.checkReceiver("https://user@93.184.216.34/hook"));
+        assertEquals("93.184.216.34", webhookService.checkReceiver("https://93.184.216.34/hook").getHost());
+    }
+
+    @Test
+    void queueInactivityWarning_WritesJsonEventWithoutActivityToken() {
+        User user = new User();
+        user.setId(7L);
+        user.setInactivityPeriodDays(180);
+
+        webhookService.queueInactivityWarning(user, baseUrl + "/ok", InactivityMilestone.GRACE_PERIOD_WARNING,
+                182, OutboxNotification.Lane.GRACE);
+
+        ArgumentCaptor<OutboxNotification> captor = ArgumentCaptor.forClass(OutboxNotification.class);
+        verify(outboxRepository).save(captor.capture());
+        OutboxNotification queued = captor.getValue();
+        assertEquals(OutboxNotification.Channel.WEBHOOK, queued.getChannel());
+        assertEquals(OutboxNotification.Lane.GRACE, queued.getLane());
+        assertTrue(queued.getBody().contains("\"milestone\":\"GRACE_PERIOD_WARNING\""));
+        assertFalse(queued.getBody().contains("verify"));
+    }
+}